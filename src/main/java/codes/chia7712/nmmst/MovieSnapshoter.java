@@ -27,7 +27,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import codes.chia7712.nmmst.media.Frame;
 import codes.chia7712.nmmst.media.MovieStream;
-import codes.chia7712.nmmst.media.Sample;
 
 /**
  * Captures the frame of movie.
@@ -108,26 +107,9 @@ public class MovieSnapshoter extends JFrame implements WindowListener {
           for (int index = 0; index != files.size(); ++index) {
             try (MovieStream stream = new MovieStream(
                     files.get(index), index)) {
-              boolean end = false;
-              while (!end) {
-                switch (stream.readNextType()) {
-                  case VIDEO:
-                    Optional<Frame> frame
-                            = stream.getFrame();
-                    if (frame.isPresent()
-                            && frame.get().getTimestamp()
-                            >= getTime()) {
-                      save(frame.get().getImage(),
-                              index);
-                      end = true;
-                    }
-                    break;
-                  case AUDIO:
-                    Optional<Sample> sample
-                            = stream.getSample();
-                  default:
-                    break;
-                }
+              Optional<Frame> frame = stream.seek(getTime());
+              if (frame.isPresent()) {
+                save(frame.get().getImage(), index);
               }
             }
           }
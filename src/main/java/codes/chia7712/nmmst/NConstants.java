@@ -26,6 +26,21 @@ public final class NConstants {
    * The default width of frame.
    */
   public static final String FRAME_WIDTH = "frame.width";
+  /**
+   * Indicates whether the video node draws the frames by active rendering.
+   *
+   * @see codes.chia7712.nmmst.media.BasePanel
+   */
+  public static final String PANEL_ACTIVE_RENDERING
+          = "panel.active.rendering";
+  /**
+   * Indicates whether the decoded frames are converted to the screen format
+   * at the size drawn by panel. It is ignored if the {@link #FRAME_FORMAT} is
+   * YUV420.
+   *
+   * @see codes.chia7712.nmmst.processor.ScreenImageProcessor
+   */
+  public static final String FRAME_PRESCALE = "frame.prescale";
   /**
    * The default height of frame.
    */
@@ -44,6 +59,13 @@ public final class NConstants {
    * The selectable movie index and it's selected index.
    */
   public static final String MOVIE_SELECT = "movie.select";
+  /**
+   * The file caching the duration and audio format of movies. The empty
+   * value disables the cache.
+   *
+   * @see codes.chia7712.nmmst.media.MovieInfo
+   */
+  public static final String MOVIE_METADATA_CACHE = "movie.metadata.cache";
   /**
    * The node information includes fusion nodes, control node, master node and
    * projectors.
@@ -107,12 +129,185 @@ public final class NConstants {
    */
   public static final String GENERATED_IMAGE_HEIGHT
           = "generated.image.height";
+  /**
+   * The media role of nodes. The value is a list of location and role, such as
+   * "LU:FULL,RU:VIDEO". The node without role plays video and audio.
+   *
+   * @see codes.chia7712.nmmst.NodeInformation.MediaRole
+   */
+  public static final String MEDIA_ROLE = "media.role";
   /**
    * The max size for buffering decoded frame.
    *
    * @see codes.chia7712.nmmst.media.BufferFactory
    */
   public static final String FRAME_QUEUE_SIZE = "frame.queue.size";
+  /**
+   * The max number of idle images kept for recycling the decoded frame.
+   *
+   * @see codes.chia7712.nmmst.media.FramePool
+   */
+  public static final String FRAME_POOL_SIZE = "frame.pool.size";
+  /**
+   * The max bytes of buffered frames and samples. It replaces the
+   * {@link #FRAME_QUEUE_SIZE} if it is positive, and it is limited by the JVM
+   * max heap. The zero disables it. The RING buffer can't be created if it
+   * is positive.
+   *
+   * @see codes.chia7712.nmmst.media.BufferFactory
+   */
+  public static final String BUFFER_BYTE_BUDGET = "buffer.byte.budget";
+  /**
+   * The max bytes of direct memory which keep the pixels of queued frames.
+   * The zero keeps the frames on heap.
+   *
+   * @see codes.chia7712.nmmst.media.FramePool
+   */
+  public static final String FRAME_ARENA_SIZE = "frame.arena.size";
+  /**
+   * The pixel format of queued frames. It is BGR or YUV420.
+   *
+   * @see codes.chia7712.nmmst.media.FramePool.Format
+   */
+  public static final String FRAME_FORMAT = "frame.format";
+  /**
+   * The implementation of movie buffer. It is BASE or RING.
+   *
+   * @see codes.chia7712.nmmst.media.BufferFactory.BufferType
+   */
+  public static final String BUFFER_TYPE = "buffer.type";
+  /**
+   * The max number of idle arrays kept for recycling the decoded audio.
+   *
+   * @see codes.chia7712.nmmst.media.SamplePool
+   */
+  public static final String SAMPLE_POOL_SIZE = "sample.pool.size";
+  /**
+   * The number of threads for converting the decoded pictures. The zero means
+   * decoding by single thread.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String DECODE_WORKER_NUMBER = "decode.worker.number";
+  /**
+   * The max bytes of compressed packets read ahead of decoding. It works with
+   * the decode pipeline only. The zero bounds the packets by number.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String PACKET_BUFFER_SIZE = "packet.buffer.size";
+  /**
+   * The directory of frame caches built by
+   * {@link codes.chia7712.nmmst.app.FrameCacheBuilder}. The movies are played
+   * from the caches if all of them are cached for the node. The empty value
+   * disables the cache.
+   *
+   * @see codes.chia7712.nmmst.media.FrameCache
+   */
+  public static final String FRAME_CACHE_DIR = "frame.cache.dir";
+  /**
+   * The lateness to drop a frame instead of painting it. The zero disables
+   * the drop.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String FRAME_DROP_MICROTIME = "frame.drop.microtime";
+  /**
+   * The microtime to spin before a frame is due. The OS sleep may overshoot
+   * by milliseconds, so the last part of wait is spun. The zero disables the
+   * spin.
+   *
+   * @see codes.chia7712.nmmst.media.Sleeper
+   */
+  public static final String CLOCK_SPIN_MICROTIME = "clock.spin.microtime";
+  /**
+   * Presents the video by the frame position of audio line. It works with the
+   * node which plays both the audio and video.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String AV_SYNC_ENABLE = "av.sync.enable";
+  /**
+   * The length of audio line buffer. The line is opened once for the show,
+   * so the buffer covers the movie changes and decoding stalls.
+   *
+   * @see codes.chia7712.nmmst.media.Speaker
+   */
+  public static final String SPEAKER_BUFFER_MICROTIME
+          = "speaker.buffer.microtime";
+  /**
+   * The sample rate of audio line. All movies are converted to it, so a
+   * single line plays the whole show.
+   *
+   * @see codes.chia7712.nmmst.media.Speaker
+   */
+  public static final String SPEAKER_SAMPLE_RATE = "speaker.sample.rate";
+  /**
+   * The number of channels of audio line. All movies are converted to it.
+   *
+   * @see codes.chia7712.nmmst.media.Speaker
+   */
+  public static final String SPEAKER_CHANNELS = "speaker.channels";
+  /**
+   * Synchronizes the clock of video node with the master node, so the nodes
+   * present the frames by the same clock. If it is disabled, the START
+   * request has no cluster time and the nodes start when they receive it.
+   *
+   * @see codes.chia7712.nmmst.utils.ClockUtil
+   */
+  public static final String CLOCK_SYNC_ENABLE = "clock.sync.enable";
+  /**
+   * The period in milliseconds to probe the clock of master node.
+   *
+   * @see codes.chia7712.nmmst.utils.ClockUtil
+   */
+  public static final String CLOCK_SYNC_PERIOD = "clock.sync.period";
+  /**
+   * The microtime between sending the START and presenting the first frame.
+   * It should cover the request delivery of all nodes.
+   *
+   * @see codes.chia7712.nmmst.views.StartFlow
+   */
+  public static final String START_LEAD_MICROTIME = "start.lead.microtime";
+  /**
+   * The skew of a video node to correct while the show runs. The zero
+   * disables the correction, and so does the {@link #AV_SYNC_ENABLE}.
+   *
+   * @see codes.chia7712.nmmst.utils.RegisterUtil#getClusterSkew(java.util.Map)
+   */
+  public static final String DRIFT_CORRECTION_MICROTIME
+          = "drift.correction.microtime";
+  /**
+   * The number of frames decoded in advance for next movie. The zero disables
+   * the lookahead.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String LOOKAHEAD_FRAME_NUMBER = "lookahead.frame.number";
+  /**
+   * The remaining microtime of current movie to start the lookahead. It is
+   * measured at the presented frame, so it is the time before the cut.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String LOOKAHEAD_MICROTIME = "lookahead.microtime";
+  /**
+   * The number of frames decoded in advance for each selected movie. The
+   * lookahead starts when the presented frame of selectable movie enters the
+   * {@link #WHEEL_ENABLE_MAX_MICROTIME_PERIOD}. The zero disables it.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String LOOKAHEAD_BRANCH_FRAME_NUMBER
+          = "lookahead.branch.frame.number";
+  /**
+   * The max bytes of frames and samples decoded in advance for next and
+   * selected movies. They are held outside the movie buffer, so they aren't
+   * bounded by {@link #BUFFER_BYTE_BUDGET}. The zero means no limit.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  public static final String LOOKAHEAD_BYTE_LIMIT = "lookahead.byte.limit";
   /**
    * The lower limit of frame buffer for starting play.
    *
@@ -121,6 +316,18 @@ public final class NConstants {
    */
   public static final String FRAME_BUFFER_LOWERLIMIT
           = "frame.buffer.lowerLimit";
+  /**
+   * The buffer occupancy to fire the high watermark event.
+   *
+   * @see codes.chia7712.nmmst.media.BufferListener
+   */
+  public static final String BUFFER_WATERMARK_HIGH = "buffer.watermark.high";
+  /**
+   * The buffer occupancy to fire the low watermark event.
+   *
+   * @see codes.chia7712.nmmst.media.BufferListener
+   */
+  public static final String BUFFER_WATERMARK_LOW = "buffer.watermark.low";
   /**
    * Indicates whether we enable the wheel trigger.
    */
@@ -15,6 +15,7 @@ import javafx.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import codes.chia7712.nmmst.NodeInformation.Location;
+import codes.chia7712.nmmst.NodeInformation.MediaRole;
 
 /**
  * Provides access to configuration parameters.
@@ -60,6 +61,20 @@ public class NProperties {
    * The default width of frame.
    */
   private static final int FRAME_WIDTH = -1;
+  /**
+   * The active rendering takes the screen exclusively, so it is disabled by
+   * default.
+   *
+   * @see codes.chia7712.nmmst.media.BasePanel
+   */
+  private static final boolean PANEL_ACTIVE_RENDERING = false;
+  /**
+   * The screen image takes 4 bytes per pixel at the panel size, so it is
+   * disabled by default.
+   *
+   * @see codes.chia7712.nmmst.processor.ScreenImageProcessor
+   */
+  private static final boolean FRAME_PRESCALE = false;
   /**
    * The default height of frame.
    */
@@ -113,6 +128,13 @@ public class NProperties {
                   new File(MOVIE_ROOT_PATH, "5A.mpg"),
                   new File(MOVIE_ROOT_PATH, "6B.mpg"),
                   new File(MOVIE_ROOT_PATH, "7.mpg"));
+  /**
+   * The file caching the duration and audio format of movies.
+   *
+   * @see codes.chia7712.nmmst.media.MovieInfo
+   */
+  private static final String MOVIE_METADATA_CACHE
+          = new File(MOVIE_ROOT_PATH, "movie.metadata").getPath();
   /**
    * The default order for playing movie.
    */
@@ -201,12 +223,180 @@ public class NProperties {
                           "192.168.100.14",
                           "00-0B-AB-67-4E-7F",
                           -1, -1));
+  /**
+   * The media role of nodes. All nodes play video and audio by default. The
+   * deployment which wires only the left-up node to the theatre audio sets
+   * the other fusion nodes to {@link MediaRole#VIDEO}, such as
+   * "RU:VIDEO,LD:VIDEO,RD:VIDEO".
+   */
+  private static final Map<Location, MediaRole> MEDIA_ROLE
+          = new TreeMap<>();
+
+  static {
+    MEDIA_ROLE.put(Location.LU, MediaRole.FULL);
+    MEDIA_ROLE.put(Location.RU, MediaRole.FULL);
+    MEDIA_ROLE.put(Location.LD, MediaRole.FULL);
+    MEDIA_ROLE.put(Location.RD, MediaRole.FULL);
+    MEDIA_ROLE.put(Location.CONTROLLER, MediaRole.FULL);
+  }
   /**
    * The max size for buffering decoded frame.
    *
    * @see codes.chia7712.nmmst.media.BufferFactory
    */
   private static final int FRAME_QUEUE_SIZE = 85;
+  /**
+   * The max number of idle images kept for recycling the decoded frame. It
+   * covers the frame queue, the frame being decoded and the frames being
+   * painted.
+   *
+   * @see codes.chia7712.nmmst.media.FramePool
+   */
+  private static final int FRAME_POOL_SIZE = FRAME_QUEUE_SIZE + 5;
+  /**
+   * The max number of idle arrays kept for recycling the decoded audio. It
+   * covers the samples decoded ahead of the buffered frames.
+   *
+   * @see codes.chia7712.nmmst.media.SamplePool
+   */
+  private static final int SAMPLE_POOL_SIZE = 256;
+  /**
+   * The max bytes of buffered frames and samples. It is disabled by default,
+   * so the frames are bounded by {@link #FRAME_QUEUE_SIZE}.
+   *
+   * @see codes.chia7712.nmmst.media.BufferFactory
+   */
+  private static final long BUFFER_BYTE_BUDGET = 0;
+  /**
+   * The max bytes of direct memory for queued frames. It is disabled by
+   * default. The JVM option -XX:MaxDirectMemorySize should cover it.
+   *
+   * @see codes.chia7712.nmmst.media.FramePool
+   */
+  private static final long FRAME_ARENA_SIZE = 0;
+  /**
+   * The pixel format of queued frames. The YUV420 halves the buffer memory
+   * but the conversion to BGR is moved to the paint thread.
+   *
+   * @see codes.chia7712.nmmst.media.FramePool.Format
+   */
+  private static final String FRAME_FORMAT = "BGR";
+  /**
+   * The implementation of movie buffer.
+   *
+   * @see codes.chia7712.nmmst.media.BufferFactory.BufferType
+   */
+  private static final String BUFFER_TYPE = "BASE";
+  /**
+   * The number of threads for converting the decoded pictures.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final int DECODE_WORKER_NUMBER = 3;
+  /**
+   * The max bytes of compressed packets read ahead of decoding. The 32MB
+   * keeps a few minutes of movie, so the frame queue may be reduced.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final long PACKET_BUFFER_SIZE = 32L * 1024 * 1024;
+  /**
+   * The directory of frame caches. It is disabled by default because the
+   * caches should be built offline.
+   *
+   * @see codes.chia7712.nmmst.media.FrameCache
+   */
+  private static final String FRAME_CACHE_DIR = "";
+  /**
+   * The lateness to drop a frame. It is about three frames of 30 fps.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final long FRAME_DROP_MICROTIME = 100 * 1000;
+  /**
+   * The microtime to spin before a frame is due. It covers the usual
+   * overshoot of sleep and costs a little cpu per frame.
+   *
+   * @see codes.chia7712.nmmst.media.Sleeper
+   */
+  private static final long CLOCK_SPIN_MICROTIME = 2 * 1000;
+  /**
+   * The video is presented by the local clock by default.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final boolean AV_SYNC_ENABLE = false;
+  /**
+   * The audio line buffers 200 ms.
+   *
+   * @see codes.chia7712.nmmst.media.Speaker
+   */
+  private static final long SPEAKER_BUFFER_MICROTIME = 200 * 1000;
+  /**
+   * The audio line plays 48 kHz.
+   *
+   * @see codes.chia7712.nmmst.media.Speaker
+   */
+  private static final int SPEAKER_SAMPLE_RATE = 48000;
+  /**
+   * The audio line plays stereo.
+   *
+   * @see codes.chia7712.nmmst.media.Speaker
+   */
+  private static final int SPEAKER_CHANNELS = 2;
+  /**
+   * The clock is synchronized if there is a master node.
+   *
+   * @see codes.chia7712.nmmst.utils.ClockUtil
+   */
+  private static final boolean CLOCK_SYNC_ENABLE = true;
+  /**
+   * The period to probe the clock of master node. The probe is small, so the
+   * drift of crystals is followed closely.
+   *
+   * @see codes.chia7712.nmmst.utils.ClockUtil
+   */
+  private static final int CLOCK_SYNC_PERIOD = 1000;
+  /**
+   * The microtime between sending the START and presenting the first frame.
+   * The warm-up and delivery usually take tens of milliseconds.
+   *
+   * @see codes.chia7712.nmmst.views.StartFlow
+   */
+  private static final long START_LEAD_MICROTIME = 500 * 1000;
+  /**
+   * The skew of a video node to correct. It is a quarter frame of 30 fps, so
+   * the nodes stay within one frame.
+   *
+   * @see codes.chia7712.nmmst.utils.RegisterUtil#getClusterSkew(java.util.Map)
+   */
+  private static final long DRIFT_CORRECTION_MICROTIME = 8 * 1000;
+  /**
+   * The number of frames decoded in advance for next movie.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final int LOOKAHEAD_FRAME_NUMBER = 15;
+  /**
+   * The remaining microtime of current movie to start the lookahead. It is
+   * smaller than {@link #WHEEL_ENABLE_MIN_MICROTIME_PERIOD}, so the next movie
+   * has been selected when the lookahead starts.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final long LOOKAHEAD_MICROTIME = 3 * 1000 * 1000;
+  /**
+   * The number of frames decoded in advance for each selected movie.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final int LOOKAHEAD_BRANCH_FRAME_NUMBER = 30;
+  /**
+   * The lookahead holds 256 MB at most. It is about 40 BGR frames of 1080p.
+   *
+   * @see codes.chia7712.nmmst.media.MediaWorker
+   */
+  private static final long LOOKAHEAD_BYTE_LIMIT = 256L * 1024 * 1024;
   /**
    * The lower limit of frame buffer for starting play.
    *
@@ -214,6 +404,20 @@ public class NProperties {
    * @see codes.chia7712.nmmst.utils.RegisterUtil.Watcher#isBufferInsufficient()
    */
   private static final double FRAME_BUFFER_LOWERLIMIT = 0.9f;
+  /**
+   * The buffer occupancy to fire the high watermark event. It is same as
+   * the lower limit for starting play, so the master is told as soon as the
+   * node is ready.
+   *
+   * @see codes.chia7712.nmmst.media.BufferListener
+   */
+  private static final double BUFFER_WATERMARK_HIGH = 0.9;
+  /**
+   * The buffer occupancy to fire the low watermark event.
+   *
+   * @see codes.chia7712.nmmst.media.BufferListener
+   */
+  private static final double BUFFER_WATERMARK_LOW = 0.3;
   /**
    * Indicates whether we enable the wheel trigger.
    */
@@ -531,6 +735,12 @@ public class NProperties {
     setIfAbsent(
             NConstants.ELAPSED_INIT_SUBMARINE,
             String.valueOf(ELAPSED_INIT_SUBMARINE));
+    setIfAbsent(
+            NConstants.PANEL_ACTIVE_RENDERING,
+            String.valueOf(PANEL_ACTIVE_RENDERING));
+    setIfAbsent(
+            NConstants.FRAME_PRESCALE,
+            String.valueOf(FRAME_PRESCALE));
     setIfAbsent(
             NConstants.FRAME_WIDTH,
             String.valueOf(FRAME_WIDTH));
@@ -540,6 +750,9 @@ public class NProperties {
     setIfAbsent(
             NConstants.MOVIE_PATH,
             moviesToString(MOVIE_PATH));
+    setIfAbsent(
+            NConstants.MOVIE_METADATA_CACHE,
+            MOVIE_METADATA_CACHE);
     setIfAbsent(
             NConstants.MOVIE_ORDER,
             orderToString(MOVIE_ORDER));
@@ -549,6 +762,9 @@ public class NProperties {
     setIfAbsent(
             NConstants.NODE_INFORMATION,
             nodesToString(NODE_INFORMATION));
+    setIfAbsent(
+            NConstants.MEDIA_ROLE,
+            mediaRolesToString(MEDIA_ROLE));
     setIfAbsent(
             NConstants.IMAGE_CONTROL_DASHBOARD,
             new File(IMAGE_ROOT_DIR, "dashboard.jpg").getAbsolutePath());
@@ -583,9 +799,82 @@ public class NProperties {
     setIfAbsent(
             NConstants.FRAME_QUEUE_SIZE,
             String.valueOf(FRAME_QUEUE_SIZE));
+    setIfAbsent(
+            NConstants.FRAME_POOL_SIZE,
+            String.valueOf(FRAME_POOL_SIZE));
+    setIfAbsent(
+            NConstants.SAMPLE_POOL_SIZE,
+            String.valueOf(SAMPLE_POOL_SIZE));
+    setIfAbsent(
+            NConstants.BUFFER_BYTE_BUDGET,
+            String.valueOf(BUFFER_BYTE_BUDGET));
+    setIfAbsent(
+            NConstants.FRAME_ARENA_SIZE,
+            String.valueOf(FRAME_ARENA_SIZE));
+    setIfAbsent(
+            NConstants.FRAME_FORMAT,
+            FRAME_FORMAT);
+    setIfAbsent(
+            NConstants.BUFFER_TYPE,
+            BUFFER_TYPE);
+    setIfAbsent(
+            NConstants.DECODE_WORKER_NUMBER,
+            String.valueOf(DECODE_WORKER_NUMBER));
+    setIfAbsent(
+            NConstants.PACKET_BUFFER_SIZE,
+            String.valueOf(PACKET_BUFFER_SIZE));
+    setIfAbsent(
+            NConstants.FRAME_CACHE_DIR,
+            FRAME_CACHE_DIR);
+    setIfAbsent(
+            NConstants.FRAME_DROP_MICROTIME,
+            String.valueOf(FRAME_DROP_MICROTIME));
+    setIfAbsent(
+            NConstants.CLOCK_SPIN_MICROTIME,
+            String.valueOf(CLOCK_SPIN_MICROTIME));
+    setIfAbsent(
+            NConstants.AV_SYNC_ENABLE,
+            String.valueOf(AV_SYNC_ENABLE));
+    setIfAbsent(
+            NConstants.SPEAKER_BUFFER_MICROTIME,
+            String.valueOf(SPEAKER_BUFFER_MICROTIME));
+    setIfAbsent(
+            NConstants.SPEAKER_SAMPLE_RATE,
+            String.valueOf(SPEAKER_SAMPLE_RATE));
+    setIfAbsent(
+            NConstants.SPEAKER_CHANNELS,
+            String.valueOf(SPEAKER_CHANNELS));
+    setIfAbsent(
+            NConstants.CLOCK_SYNC_ENABLE,
+            String.valueOf(CLOCK_SYNC_ENABLE));
+    setIfAbsent(
+            NConstants.CLOCK_SYNC_PERIOD,
+            String.valueOf(CLOCK_SYNC_PERIOD));
+    setIfAbsent(
+            NConstants.START_LEAD_MICROTIME,
+            String.valueOf(START_LEAD_MICROTIME));
+    setIfAbsent(
+            NConstants.DRIFT_CORRECTION_MICROTIME,
+            String.valueOf(DRIFT_CORRECTION_MICROTIME));
+    setIfAbsent(
+            NConstants.LOOKAHEAD_FRAME_NUMBER,
+            String.valueOf(LOOKAHEAD_FRAME_NUMBER));
+    setIfAbsent(
+            NConstants.LOOKAHEAD_MICROTIME,
+            String.valueOf(LOOKAHEAD_MICROTIME));
+    setIfAbsent(
+            NConstants.LOOKAHEAD_BRANCH_FRAME_NUMBER,
+            String.valueOf(LOOKAHEAD_BRANCH_FRAME_NUMBER));
+    setIfAbsent(
+            NConstants.LOOKAHEAD_BYTE_LIMIT,
+            String.valueOf(LOOKAHEAD_BYTE_LIMIT));
     setIfAbsent(
             NConstants.FRAME_BUFFER_LOWERLIMIT,
             String.valueOf(FRAME_BUFFER_LOWERLIMIT));
+    setIfAbsent(NConstants.BUFFER_WATERMARK_HIGH,
+            String.valueOf(BUFFER_WATERMARK_HIGH));
+    setIfAbsent(NConstants.BUFFER_WATERMARK_LOW,
+            String.valueOf(BUFFER_WATERMARK_LOW));
     setIfAbsent(NConstants.WHEEL_ENABLE,
             String.valueOf(WHEEL_ENABLE));
     setIfAbsent(NConstants.WHEEL_ENABLE_MAX_MICROTIME_PERIOD,
@@ -723,6 +1012,49 @@ public class NProperties {
     return nodes;
   }
 
+  /**
+   * Converts a {@code string} to a map of node location and media role.
+   *
+   * @param str The {@code string} to convert
+   * @return A map of node location and media role
+   */
+  public static Map<Location, MediaRole> stringToMediaRoles(
+          final String str) {
+    Map<Location, MediaRole> roles = new TreeMap<>();
+    final int locationIndex = 0;
+    final int roleIndex = 1;
+    for (String s : str.split(DIVIDER_FIRST)) {
+      String[] args = s.split(DIVIDER_SECOND);
+      if (args.length <= roleIndex) {
+        continue;
+      }
+      Location.match(args[locationIndex]).ifPresent(location -> {
+        MediaRole.match(args[roleIndex]).ifPresent(role -> {
+          roles.put(location, role);
+        });
+      });
+    }
+    return roles;
+  }
+
+  /**
+   * Converts a map of node location and media role to a {@code string}.
+   *
+   * @param roles A map of node location and media role
+   * @return A {@code string} is created by the map
+   */
+  public static String mediaRolesToString(
+          final Map<Location, MediaRole> roles) {
+    StringBuilder builder = new StringBuilder(DEFAULT_BUILD_LENGTH);
+    roles.entrySet().stream().forEach(entry -> {
+      builder.append(entry.getKey().name())
+              .append(DIVIDER_SECOND)
+              .append(entry.getValue().name())
+              .append(DIVIDER_FIRST);
+    });
+    return builder.toString();
+  }
+
   /**
    * Converts a list of {@link NodeInformation} to a {@code string}.
    *
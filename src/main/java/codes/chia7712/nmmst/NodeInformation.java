@@ -167,6 +167,72 @@ public class NodeInformation implements Comparable<NodeInformation> {
       return Optional.empty();
     }
   };
+
+  /**
+   * Enumerates the media outputs of a node.
+   */
+  public enum MediaRole {
+    /**
+     * Plays the video and audio.
+     */
+    FULL(true, true),
+    /**
+     * Plays the video only.
+     */
+    VIDEO(true, false),
+    /**
+     * Plays the audio only.
+     */
+    AUDIO(false, true);
+    /**
+     * Indicates whether the video is played.
+     */
+    private final boolean video;
+    /**
+     * Indicates whether the audio is played.
+     */
+    private final boolean audio;
+
+    /**
+     * @param video True if the video is played
+     * @param audio True if the audio is played
+     */
+    MediaRole(final boolean video, final boolean audio) {
+      this.video = video;
+      this.audio = audio;
+    }
+
+    /**
+     * @return {@code true} if the video should be decoded and played
+     */
+    public boolean hasVideo() {
+      return video;
+    }
+
+    /**
+     * @return {@code true} if the audio should be decoded and played
+     */
+    public boolean hasAudio() {
+      return audio;
+    }
+
+    /**
+     * Picks up a role for specified str by comparing the role name with
+     * argument.
+     *
+     * @param name The name to compare
+     * @return The role is equal with str. Oterwise, a empty optaional class
+     * returns.
+     */
+    public static Optional<MediaRole> match(final String name) {
+      for (MediaRole role : MediaRole.values()) {
+        if (role.name().compareToIgnoreCase(name) == 0) {
+          return Optional.of(role);
+        }
+      }
+      return Optional.empty();
+    }
+  };
   /**
    * The node location.
    */
@@ -244,6 +310,21 @@ public class NodeInformation implements Comparable<NodeInformation> {
             + builder.toString());
   }
 
+  /**
+   * Retrieves the media role for specified location. The default role is
+   * {@link MediaRole#FULL}.
+   *
+   * @param properties NProperties
+   * @param location The node location
+   * @return The media role
+   */
+  public static MediaRole getMediaRole(final NProperties properties,
+          final Location location) {
+    MediaRole role = NProperties.stringToMediaRoles(
+            properties.getString(NConstants.MEDIA_ROLE)).get(location);
+    return role == null ? MediaRole.FULL : role;
+  }
+
   /**
    * Retrieves all selectable node information.
    *
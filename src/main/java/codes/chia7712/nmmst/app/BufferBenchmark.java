@@ -0,0 +1,101 @@
+package codes.chia7712.nmmst.app;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NProperties;
+import codes.chia7712.nmmst.media.BufferFactory;
+import codes.chia7712.nmmst.media.Frame;
+import codes.chia7712.nmmst.media.MovieBuffer;
+
+/**
+ * Compares the frame handoff of movie buffers. The paced run writes a frame
+ * after the reader has parked, so it measures the latency of waking up the
+ * reader. The burst run writes the frames as fast as possible, so it measures
+ * the throughput.
+ */
+public class BufferBenchmark {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(BufferBenchmark.class);
+  /**
+   * The default number of frames to hand off.
+   */
+  private static final int DEFAULT_FRAME_NUMBER = 100 * 1000;
+  /**
+   * The nanotime to wait before writing next frame in paced run.
+   */
+  private static final long PACE_NANOTIME = 20 * 1000;
+
+  public static void main(String[] args) throws InterruptedException {
+    final int number = args.length > 0
+            ? Integer.valueOf(args[0]) : DEFAULT_FRAME_NUMBER;
+    NProperties properties = new NProperties();
+    for (BufferFactory.BufferType type : BufferFactory.BufferType.values()) {
+      run(BufferFactory.createMovieBuffer(properties, type), number / 10,
+              true);
+      long[] latencies = run(
+              BufferFactory.createMovieBuffer(properties, type), number, true);
+      LOG.info(type + " paced handoff(ns) avg/p50/p99/max : "
+              + Arrays.stream(latencies).sum() / latencies.length + "/"
+              + latencies[latencies.length / 2] + "/"
+              + latencies[latencies.length * 99 / 100] + "/"
+              + latencies[latencies.length - 1]);
+      final long startTime = System.nanoTime();
+      run(BufferFactory.createMovieBuffer(properties, type), number, false);
+      final long elapsed = System.nanoTime() - startTime;
+      LOG.info(type + " burst handoff(frames/s) : "
+              + number * TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+  }
+
+  /**
+   * Hands off the frames from a writer thread to a reader thread.
+   *
+   * @param buffer The buffer to test
+   * @param number The number of frames
+   * @param paced {@code true} if the writer waits for the reader to park
+   * @return The sorted latencies in nanotime
+   * @throws InterruptedException If interrupted while waiting
+   */
+  private static long[] run(final MovieBuffer buffer, final int number,
+          final boolean paced) throws InterruptedException {
+    final BufferedImage image
+            = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+    buffer.setPause(false);
+    Thread writer = new Thread(() -> {
+      try {
+        for (int i = 0; i != number; ++i) {
+          if (paced) {
+            while (buffer.getFrameNumber() != 0) {
+              Thread.yield();
+            }
+            LockSupport.parkNanos(PACE_NANOTIME);
+          }
+          buffer.writeFrame(new Frame(null, System.nanoTime(), image));
+        }
+        buffer.writeEof();
+      } catch (InterruptedException e) {
+        LOG.error(e);
+      }
+    });
+    long[] latencies = new long[number];
+    int count = 0;
+    writer.start();
+    Optional<Frame> frame;
+    while ((frame = buffer.readFrame()).isPresent()) {
+      latencies[count++] = System.nanoTime() - frame.get().getTimestamp();
+    }
+    writer.join();
+    latencies = Arrays.copyOf(latencies, count);
+    Arrays.sort(latencies);
+    return latencies;
+  }
+}
@@ -0,0 +1,58 @@
+package codes.chia7712.nmmst.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.NProperties;
+import codes.chia7712.nmmst.NodeInformation;
+import codes.chia7712.nmmst.media.FrameCache;
+import codes.chia7712.nmmst.media.Speaker;
+import codes.chia7712.nmmst.processor.FrameProcessor;
+import codes.chia7712.nmmst.processor.ProcessorFactory;
+
+/**
+ * Builds the frame caches of all movies for a node. The caches are saved in
+ * the {@link NConstants#FRAME_CACHE_DIR}.
+ */
+public class FrameCacheBuilder {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(FrameCacheBuilder.class);
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      LOG.info("Usage: <LU/RU/LD/RD> [blend]");
+      System.exit(0);
+    }
+    NProperties properties = new NProperties();
+    String dir = properties.getString(NConstants.FRAME_CACHE_DIR);
+    if (dir == null || dir.trim().isEmpty()) {
+      LOG.info("No " + NConstants.FRAME_CACHE_DIR + " is set");
+      System.exit(0);
+    }
+    File cacheDir = new File(dir.trim());
+    if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+      throw new IOException("Failed to create " + cacheDir);
+    }
+    NodeInformation.Location location
+            = NodeInformation.Location.valueOf(args[0].toUpperCase());
+    FrameProcessor processor = null;
+    if (args.length == 2 && args[1].equalsIgnoreCase("blend")) {
+      processor = ProcessorFactory.createFrameProcessor(location);
+      processor.init();
+    }
+    List<String> movies = properties.getStrings(NConstants.MOVIE_PATH);
+    for (int index = 0; index != movies.size(); ++index) {
+      File cacheFile = FrameCache.build(cacheDir, new File(movies.get(index)),
+              index, location, processor,
+              Speaker.getOutputFormat(properties));
+      LOG.info("Save the frame cache to " + cacheFile);
+    }
+  }
+}
@@ -27,7 +27,9 @@ public class LittleMovie implements Iterable<Frame> {
     final long startTime = TimeUnit.MICROSECONDS.convert(start, timeUnit);
     final long endTime = TimeUnit.MICROSECONDS.convert(end, timeUnit);
     try (MovieStream stream = new MovieStream(file, 0)) {
-      boolean over = false;
+      stream.seek(startTime, scale).ifPresent(v -> images.add(v));
+      boolean over = images.isEmpty()
+              || images.get(0).getTimestamp() >= endTime;
       while (!over) {
         switch (stream.readNextType()) {
           case VIDEO:
@@ -29,7 +29,9 @@ import codes.chia7712.nmmst.NConstants;
 import codes.chia7712.nmmst.NProperties;
 import codes.chia7712.nmmst.NodeInformation;
 import codes.chia7712.nmmst.controller.DirectionDetector.Trend;
+import codes.chia7712.nmmst.media.BufferListener;
 import codes.chia7712.nmmst.media.BufferMetrics;
+import codes.chia7712.nmmst.media.MovieBuffer;
 import codes.chia7712.nmmst.processor.FrameProcessor;
 import codes.chia7712.nmmst.utils.RequestUtil.SelectRequest;
 import codes.chia7712.nmmst.utils.SerialStream;
@@ -37,9 +39,11 @@ import codes.chia7712.nmmst.utils.SerialStream;
 /**
  * A wheel trigger captures the wheel event and caluculate the change of wheel
  * direction. Any wheel direction may decide the next movie if the moment of
- * change is valid.
+ * change is valid. The movie indexes are updated by the buffer events, and
+ * the selection is checked for each painted frame.
  */
-public final class WheelTrigger implements ControllerFactory.Trigger, FrameProcessor {
+public final class WheelTrigger implements ControllerFactory.Trigger,
+        FrameProcessor, BufferListener {
 
   private static final int DESC_SIZE = 100;
   private static final int LINE_SIZE = 15;
@@ -71,6 +75,19 @@ public final class WheelTrigger implements ControllerFactory.Trigger, FrameProce
   private final BufferMetrics buffer;
 
   private final Set<Integer> hasSelectedIndex = new TreeSet<>();
+  /**
+   * The select requests to send to master node.
+   */
+  private final BlockingQueue<SelectRequest> selectQueue
+          = new LinkedBlockingQueue<>();
+  /**
+   * The movie index of the frame being presented.
+   */
+  private volatile int readIndex = -1;
+  /**
+   * The movie index of the frame written by decoder.
+   */
+  private volatile int writeIndex = -1;
 
   private volatile Trend currentTrend = Trend.SMALLER;
 
@@ -84,7 +101,7 @@ public final class WheelTrigger implements ControllerFactory.Trigger, FrameProce
   public WheelTrigger(
           final NProperties properties,
           final Closer closer,
-          final BufferMetrics buffer) {
+          final MovieBuffer buffer) {
     this.detector = new DirectionDetector(
             new Pair<>(properties.getDouble(NConstants.WHEEL_MAX_VALUE),
                     properties.getDouble(NConstants.WHEEL_MIN_VALUE)),
@@ -133,40 +150,72 @@ public final class WheelTrigger implements ControllerFactory.Trigger, FrameProce
     NodeInformation masterInfo = NodeInformation.getMasterNode(properties).get();
     closer.invokeNewThread(() -> {
       try {
-        final int currentIndex = buffer.getCurrentMovieIndex();
-        final int lastIndex = buffer.getLastMovieIndex();
-        if (currentIndex != lastIndex) {
-          return;
-        }
-        Pair<Integer, Integer> selectableIndexes = selectable.get(currentIndex);
-        if (selectableIndexes == null) {
-          return;
-        }
-        final long currentTimestamp = buffer.getCurrentTimestamp();
-        final long currentDuration = buffer.getCurrentDuration();
-        final long diffTime = currentDuration - currentTimestamp;
-        if (diffTime >= 0 && diffTime < selectablePeriod.getKey()
-                && !hasSelectedIndex.contains(currentIndex)) {
-          hasSelectedIndex.add(currentIndex);
-          SelectRequest request = null;
-          switch (currentTrend) {
-            case SMALLER:
-              request = new SelectRequest(selectableIndexes.getKey());
-              break;
-            case LARGER:
-              request = new SelectRequest(selectableIndexes.getValue());
-              break;
-            default:
-              break;
-          }
-          if (request != null) {
-            SerialStream.send(masterInfo, request);
-          }
-        }
+        SerialStream.send(masterInfo, selectQueue.take());
       } catch (InterruptedException | IOException e) {
         LOG.error(e);
       }
-    }, () -> TimeUnit.SECONDS.sleep(1));
+    }, null);
+    buffer.addListener(this);
+  }
+
+  @Override
+  public void onWriteIndexChanged(final int index) {
+    writeIndex = index;
+  }
+
+  @Override
+  public void onReadIndexChanged(final int index) {
+    readIndex = index;
+  }
+
+  /**
+   * Selects the next movie by current trend if the presented frame is in the
+   * selectable period. The decoder must not have moved to next movie, or the
+   * selection can't change the play flow. The request is sent by other
+   * thread.
+   */
+  private void checkSelect() {
+    final int currentIndex = readIndex;
+    if (currentIndex != writeIndex) {
+      return;
+    }
+    Pair<Integer, Integer> selectableIndexes = selectable.get(currentIndex);
+    if (selectableIndexes == null) {
+      return;
+    }
+    final long currentTimestamp = buffer.getCurrentTimestamp();
+    final long currentDuration = buffer.getCurrentDuration();
+    final long diffTime = currentDuration - currentTimestamp;
+    if (diffTime >= 0 && diffTime < selectablePeriod.getKey()
+            && !hasSelectedIndex.contains(currentIndex)) {
+      hasSelectedIndex.add(currentIndex);
+      switch (currentTrend) {
+        case SMALLER:
+          selectQueue.offer(createSelect(selectableIndexes.getKey()));
+          break;
+        case LARGER:
+          selectQueue.offer(createSelect(selectableIndexes.getValue()));
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Creates the request for selecting next movie. The first frame of next
+   * movie is scheduled at the end of current movie on the cluster clock, so
+   * all nodes switch the movie at the same time.
+   *
+   * @param index The next movie index
+   * @return The select request
+   */
+  private SelectRequest createSelect(final int index) {
+    final long origin = buffer.getClusterOriginMicrotime();
+    if (origin == 0) {
+      return new SelectRequest(index);
+    }
+    return new SelectRequest(index, origin + buffer.getCurrentDuration());
   }
 
   /**
@@ -210,7 +259,8 @@ public final class WheelTrigger implements ControllerFactory.Trigger, FrameProce
 
   @Override
   public Optional<BufferedImage> prePrintPanel(BufferedImage image) {
-    Pair<LittleMovie, LittleMovie> movies = selectableLittleMovie.get(buffer.getCurrentMovieIndex());
+    checkSelect();
+    Pair<LittleMovie, LittleMovie> movies = selectableLittleMovie.get(readIndex);
     if (movies == null || image == null) {
       return Optional.ofNullable(image);
     }
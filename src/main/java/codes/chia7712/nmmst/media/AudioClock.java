@@ -0,0 +1,133 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.OptionalLong;
+
+/**
+ * Maps the frame position of speaker to the movie timestamp, so the video can
+ * be presented by the audio which is being heard. The speaker thread marks
+ * the timestamp of each sample before writing it, and the panel thread reads
+ * the current audio time. The clock is unavailable if the line is starved,
+ * because the frame position stops moving.
+ */
+final class AudioClock {
+
+  /**
+   * The max number of marks which aren't played yet.
+   */
+  private static final int MAX_MARKS = 1024;
+  /**
+   * Scales up the time from second to micro.
+   */
+  private static final double SECOND_TO_MICRO = 1000 * 1000;
+
+  /**
+   * The timestamp of a sample and its position in line.
+   */
+  private static final class Mark {
+
+    /**
+     * The movie index of sample.
+     */
+    private final int index;
+    /**
+     * The micro timestamp of sample.
+     */
+    private final long timestamp;
+    /**
+     * The frame position of sample in line.
+     */
+    private final long position;
+
+    /**
+     * @param index The movie index of sample
+     * @param timestamp The micro timestamp of sample
+     * @param position The frame position of sample in line
+     */
+    Mark(final int index, final long timestamp, final long position) {
+      this.index = index;
+      this.timestamp = timestamp;
+      this.position = position;
+    }
+  }
+  /**
+   * The marks which aren't played yet.
+   */
+  private final Deque<Mark> pending = new ArrayDeque<>();
+  /**
+   * The mark being played.
+   */
+  private Mark current;
+  /**
+   * The speaker which plays the marked samples.
+   */
+  private Speaker speaker;
+  /**
+   * The audio frames per second of speaker.
+   */
+  private double frameRate;
+
+  /**
+   * Changes the speaker. The marks of previous speaker are discarded because
+   * the frame position of new line starts from zero.
+   *
+   * @param spk The new speaker
+   */
+  synchronized void setSpeaker(final Speaker spk) {
+    clear();
+    speaker = spk;
+    frameRate = spk.getAudioFormat().getFrameRate();
+  }
+
+  /**
+   * Marks the sample which will be written to speaker next.
+   *
+   * @param sample The sample to write
+   */
+  synchronized void mark(final Sample sample) {
+    if (speaker == null) {
+      return;
+    }
+    pending.addLast(new Mark(sample.getMovieAttribute().getIndex(),
+            sample.getTimestamp(), speaker.getWrittenFrames()));
+    while (pending.size() > MAX_MARKS) {
+      pending.removeFirst();
+    }
+  }
+
+  /**
+   * Discards the speaker and marks.
+   */
+  synchronized void clear() {
+    speaker = null;
+    current = null;
+    pending.clear();
+  }
+
+  /**
+   * Retrieves the timestamp of audio which is being heard.
+   *
+   * @param index The movie index of presented frame
+   * @return The micro timestamp of audio, or empty if the audio of specified
+   * movie isn't being played
+   */
+  synchronized OptionalLong getTime(final int index) {
+    if (speaker == null || frameRate <= 0) {
+      return OptionalLong.empty();
+    }
+    final long position = speaker.getFramePosition();
+    if (position >= speaker.getWrittenFrames()) {
+      return OptionalLong.empty();
+    }
+    while (!pending.isEmpty() && pending.peekFirst().position <= position) {
+      current = pending.removeFirst();
+    }
+    if (current == null || current.index != index) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(current.timestamp
+            + (long) ((position - current.position)
+                    * SECOND_TO_MICRO / frameRate));
+  }
+}
@@ -3,13 +3,17 @@ package codes.chia7712.nmmst.media;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.LineUnavailableException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NodeInformation.MediaRole;
 import codes.chia7712.nmmst.processor.FrameProcessor;
 import codes.chia7712.nmmst.threads.AtomicCloser;
 import codes.chia7712.nmmst.threads.Closer;
@@ -33,6 +37,14 @@ class BaseMediaWorker implements MediaWorker {
    * Includes audio output, video output and decoder.
    */
   private static final int THREAD_NUMBER = 3;
+  /**
+   * The max microtime between now and a scheduled time.
+   */
+  private static final long MAX_SCHEDULE_MICROTIME = 5 * 1000 * 1000;
+  /**
+   * Scales up the time from nano to micro.
+   */
+  private static final long NANO_TO_MICRO = 1000;
   /**
    * Initial image is drawn in the beginning of this media.
    */
@@ -57,6 +69,59 @@ class BaseMediaWorker implements MediaWorker {
    * Working flag.
    */
   private final AtomicBoolean working = new AtomicBoolean(false);
+  /**
+   * The number of converting workers for decode pipeline. The zero means
+   * decoding by single thread.
+   */
+  private final int decodeWorkerNumber;
+  /**
+   * The setting of decoding the next movies in advance.
+   */
+  private final MovieOpener.Setting lookahead;
+  /**
+   * The media to decode and play.
+   */
+  private final MediaRole role;
+  /**
+   * Finds the frame caches of movies.
+   */
+  private final FrameCache.Finder frameCache;
+  /**
+   * The lateness to drop a frame. The zero disables the drop.
+   */
+  private final long dropMicrotime;
+  /**
+   * The max bytes of compressed packets read ahead by decode pipeline.
+   */
+  private final long packetBufferSize;
+  /**
+   * The microtime to spin before a frame is due.
+   */
+  private final long clockSpinMicrotime;
+  /**
+   * Indicates whether the video is presented by the audio clock.
+   */
+  private final boolean avSync;
+  /**
+   * The length of audio line buffer.
+   */
+  private final long speakerBufferMicrotime;
+  /**
+   * The format of decoded samples and audio line.
+   */
+  private final AudioFormat audioFormat;
+  /**
+   * Provides the time shared by all nodes.
+   */
+  private final ClusterClock clusterClock;
+  /**
+   * The armed start of show and next movie.
+   */
+  private final StartSchedule schedule = new StartSchedule();
+  /**
+   * The pending microtime to move the presentation clock.
+   */
+  private final AtomicLong adjustment = new AtomicLong();
   /**
    * Thread pool.
    */
@@ -81,11 +146,43 @@ class BaseMediaWorker implements MediaWorker {
    * @param processor Process the decoded frame
    * @param panel The panel to draw the frame
    * @param initImage The initial image drawed on the panel
+   * @param decodeWorkerNumber The number of converting workers
+   * @param lookahead The setting of decoding the next movies in advance
+   * @param role The media to decode and play
+   * @param frameCache Finds the frame caches of movies
+   * @param dropMicrotime The lateness to drop a frame. The zero disables the
+   * drop
+   * @param packetBufferSize The max bytes of compressed packets read ahead by
+   * decode pipeline. The zero bounds the packets by number
+   * @param clockSpinMicrotime The microtime to spin before a frame is due.
+   * The zero disables the spin
+   * @param avSync {@code true} if the video is presented by the audio clock
+   * @param speakerBufferMicrotime The length of audio line buffer. The zero
+   * uses the default buffer of line
+   * @param audioFormat The format of decoded samples and audio line
+   * @param clusterClock The clock to present the frames
    */
   BaseMediaWorker(final MovieInfo movieInfo, final MovieBuffer buffer,
           final Closer closer, final FrameProcessor processor,
-          final BasePanel panel, final BufferedImage initImage) {
+          final BasePanel panel, final BufferedImage initImage,
+          final int decodeWorkerNumber, final MovieOpener.Setting lookahead,
+          final MediaRole role, final FrameCache.Finder frameCache,
+          final long dropMicrotime, final long packetBufferSize,
+          final long clockSpinMicrotime, final boolean avSync,
+          final long speakerBufferMicrotime, final AudioFormat audioFormat,
+          final ClusterClock clusterClock) {
     this.movieInfo = movieInfo;
+    this.audioFormat = audioFormat;
+    this.clusterClock = clusterClock;
+    this.avSync = avSync;
+    this.speakerBufferMicrotime = speakerBufferMicrotime;
+    this.clockSpinMicrotime = clockSpinMicrotime;
+    this.dropMicrotime = dropMicrotime;
+    this.packetBufferSize = packetBufferSize;
+    this.role = role;
+    this.frameCache = frameCache;
+    this.decodeWorkerNumber = decodeWorkerNumber;
+    this.lookahead = lookahead;
     this.buffer = buffer;
     this.processor = processor;
     this.buffer.setPause(true);
@@ -138,6 +235,50 @@ class BaseMediaWorker implements MediaWorker {
     buffer.setPause(enable);
   }
 
+  @Override
+  public void scheduleStart(final long clusterMicrotime) {
+    adjustment.set(0);
+    if (isSchedulable(clusterMicrotime)) {
+      schedule.armStart(clusterMicrotime);
+    }
+  }
+
+  @Override
+  public void scheduleNextMovie(final long clusterMicrotime) {
+    if (isSchedulable(clusterMicrotime)) {
+      schedule.armNextMovie(clusterMicrotime);
+    }
+  }
+
+  /**
+   * Checks whether the scheduled time can be armed. The time sent by master
+   * makes no sense before the cluster clock is synchronized, and the time
+   * which is too far away would drop the whole movie or block the panel.
+   *
+   * @param clusterMicrotime The cluster time in microseconds
+   * @return {@code true} if the time can be armed
+   */
+  private boolean isSchedulable(final long clusterMicrotime) {
+    if (!clusterClock.isSynced()) {
+      LOG.warn("Ignore the scheduled time " + clusterMicrotime
+              + " because the cluster clock isn't synchronized");
+      return false;
+    }
+    final long distance = clusterMicrotime
+            - clusterClock.nanoTime() / NANO_TO_MICRO;
+    if (Math.abs(distance) > MAX_SCHEDULE_MICROTIME) {
+      LOG.warn("Ignore the scheduled time " + clusterMicrotime
+              + " which is " + distance + "us away");
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void adjustClock(final long microtime) {
+    adjustment.addAndGet(microtime);
+  }
+
   @Override
   public final void stopAsync() {
     if (working.compareAndSet(true, false)) {
@@ -154,11 +295,21 @@ class BaseMediaWorker implements MediaWorker {
       service = Executors.newFixedThreadPool(THREAD_NUMBER);
       curCloser = new AtomicCloser();
       reader = new MovieReader(
-              curCloser, buffer, movieInfo, processor);
+              curCloser, buffer, movieInfo, processor, decodeWorkerNumber,
+              lookahead, role, frameCache, packetBufferSize, audioFormat);
       service.execute(reader);
-      service.execute(new PanelThread(curCloser, buffer, panel,
-              processor));
-      service.execute(new SpeakerThread(curCloser, buffer));
+      Optional<AudioClock> audioClock = avSync && role.hasAudio()
+              ? Optional.of(new AudioClock()) : Optional.empty();
+      if (role.hasVideo()) {
+        service.execute(new PanelThread(curCloser, buffer, panel,
+                processor, dropMicrotime, clockSpinMicrotime, audioClock,
+                clusterClock, schedule, adjustment));
+      }
+      if (role.hasAudio()) {
+        service.execute(new SpeakerThread(curCloser, buffer, audioClock,
+                clusterClock, schedule, speakerBufferMicrotime,
+                audioFormat));
+      }
       processor.init();
       service.shutdown();
     }
@@ -170,7 +321,9 @@ class BaseMediaWorker implements MediaWorker {
   }
 
   /**
-   * A thread for decoding the media.
+   * A thread for decoding the media. It reads the {@link FrameCache} if all
+   * movies are cached, and it delegates the decoding to
+   * {@link DecodePipeline} if the number of converting workers is positive.
    */
   private static class MovieReader implements Runnable {
 
@@ -190,6 +343,30 @@ class BaseMediaWorker implements MediaWorker {
      * A play flow.
      */
     private final MovieInfo.PlayFlow playFlow;
+    /**
+     * The number of converting workers.
+     */
+    private final int workerNumber;
+    /**
+     * Opens the movies of play flow.
+     */
+    private final MovieOpener opener;
+    /**
+     * Movie info provides all movies.
+     */
+    private final MovieInfo movieInfo;
+    /**
+     * The media to read.
+     */
+    private final MediaRole role;
+    /**
+     * Finds the frame caches of movies.
+     */
+    private final FrameCache.Finder frameCache;
+    /**
+     * The max bytes of compressed packets read ahead.
+     */
+    private final long packetBufferSize;
 
     /**
      * Constructs a reader for decoding a list of media.
@@ -198,15 +375,35 @@ class BaseMediaWorker implements MediaWorker {
      * @param buffer Movie buffer
      * @param movieInfo Movie info provides the play order
      * @param processor Frame processor
+     * @param workerNumber The number of converting workers
+     * @param lookahead The setting of decoding the next movies in advance
+     * @param role The media to decode
+     * @param frameCache Finds the frame caches of movies
+     * @param packetBufferSize The max bytes of compressed packets read ahead
+     * @param audioFormat The format of decoded samples
      */
     MovieReader(final AtomicCloser closer,
             final MovieBuffer buffer,
             final MovieInfo movieInfo,
-            final FrameProcessor processor) {
+            final FrameProcessor processor,
+            final int workerNumber,
+            final MovieOpener.Setting lookahead,
+            final MediaRole role,
+            final FrameCache.Finder frameCache,
+            final long packetBufferSize,
+            final AudioFormat audioFormat) {
       this.closer = closer;
+      this.packetBufferSize = packetBufferSize;
+      this.movieInfo = movieInfo;
+      this.role = role;
+      this.frameCache = frameCache;
+      this.workerNumber = workerNumber;
       this.buffer = buffer;
       this.processor = processor;
       this.playFlow = movieInfo.createPlayFlow();
+      this.opener = new MovieOpener(closer, playFlow, buffer.getFramePool(),
+              buffer.getSamplePool(), lookahead, role, audioFormat,
+              role.hasVideo() ? Optional.of(buffer) : Optional.empty());
     }
 
     /**
@@ -216,27 +413,44 @@ class BaseMediaWorker implements MediaWorker {
      */
     void setNextFlow(final int movieIndex) {
       playFlow.setNextFlow(movieIndex);
+      opener.select(movieIndex);
     }
 
     @Override
     public void run() {
       try {
+        if (frameCache.containsAll(movieInfo)) {
+          readCache();
+          return;
+        }
+        if (workerNumber > 0) {
+          new DecodePipeline(closer, buffer, playFlow, opener, processor,
+                  workerNumber, packetBufferSize).run();
+          return;
+        }
         while (playFlow.hasNext()) {
-          MovieAttribute attribute = playFlow.next();
-          try (MovieStream stream = new MovieStream(
-                  attribute.getFile(), attribute.getIndex())) {
-            boolean eof = false;
+          MovieOpener.Prefetch prefetch = opener.open(playFlow.next());
+          try (MovieStream stream = prefetch.getStream()) {
+            for (Sample sample : prefetch.getSamples()) {
+              buffer.writeSample(sample);
+            }
+            for (Frame decoded : prefetch.getFrames()) {
+              writeFrame(decoded);
+            }
+            boolean eof = prefetch.isEof();
             while (!eof) {
               if (closer.isClosed() || Thread.interrupted()) {
                 return;
               }
               MovieStream.Type type = stream.readNextType();
+              if (type != MovieStream.Type.EOF) {
+                opener.onProgress(stream, stream.getPacketTimestamp());
+              }
               switch (type) {
                 case VIDEO:
-                  Optional<Frame> frame = stream.getFrame()
-                          .flatMap(f -> processor.postDecodeFrame(f));
-                  if (frame.isPresent()) {
-                    buffer.writeFrame(frame.get());
+                  Optional<Frame> decoded = stream.getFrame();
+                  if (decoded.isPresent()) {
+                    writeFrame(decoded.get());
                   }
                   break;
                 case AUDIO:
@@ -256,19 +470,115 @@ class BaseMediaWorker implements MediaWorker {
         buffer.writeEof();
       } catch (InterruptedException | IOException e) {
         LOG.error("MovieReader is interrupted", e);
+      } finally {
+        opener.close();
+      }
+    }
+
+    /**
+     * Reads the frames and samples from the frame caches instead of decoding
+     * the movies.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     * @throws IOException If failed to read cache
+     */
+    private void readCache() throws InterruptedException, IOException {
+      while (playFlow.hasNext()) {
+        MovieAttribute attribute = playFlow.next();
+        Optional<FrameCache> cache = frameCache.open(attribute);
+        if (!cache.isPresent()) {
+          throw new IOException("No frame cache for " + attribute.getFile());
+        }
+        try (FrameCache frames = cache.get()) {
+          for (int i = 0; i != frames.size(); ++i) {
+            if (closer.isClosed() || Thread.interrupted()) {
+              return;
+            }
+            switch (frames.getType(i)) {
+              case VIDEO:
+                if (role.hasVideo()) {
+                  Optional<Frame> frame = frames.readFrame(i, attribute,
+                          buffer.getFramePool());
+                  if (frame.isPresent()) {
+                    writeFrame(frame.get());
+                  }
+                }
+                break;
+              case AUDIO:
+                if (role.hasAudio()) {
+                  Optional<Sample> sample = frames.readSample(i, attribute,
+                          buffer.getSamplePool());
+                  if (sample.isPresent()) {
+                    buffer.writeSample(sample.get());
+                  }
+                }
+                break;
+              default:
+                break;
+            }
+          }
+        }
+      }
+      buffer.writeEof();
+    }
+
+    /**
+     * Processes the decoded frame and writes it to buffer. The frame is
+     * released if the processor drops it.
+     *
+     * @param decoded The decoded frame
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void writeFrame(final Frame decoded) throws InterruptedException {
+      Optional<Frame> frame = processor.postDecodeFrame(decoded);
+      if (frame.isPresent()) {
+        buffer.writeFrame(frame.get());
+      } else {
+        decoded.release();
       }
     }
   }
 
   /**
-   * A thread for writing frame data.
+   * A thread for writing frame data. The frame is dropped if it is later than
+   * the drop threshold, so a slow node catches up with other nodes. If the
+   * audio clock is given, the presentation clock follows the heard audio.
    */
   private static class PanelThread implements Runnable {
 
+    /**
+     * The frame is counted as late if it is behind the presentation clock by
+     * more than this microtime.
+     */
+    private static final long LATE_MICROTIME = 1000;
+    /**
+     * The presentation clock is moved to the audio clock if the A/V offset is
+     * larger than this microtime. A half of offset is moved at a time, so the
+     * video doesn't jump.
+     */
+    private static final long AV_SYNC_MICROTIME = 5 * 1000;
+
     /**
      * Controls the sleep period for play video regularly.
      */
-    private final Sleeper sleeper = new Sleeper(0);
+    private final Sleeper sleeper;
+    /**
+     * The armed start of show and next movie.
+     */
+    private final StartSchedule schedule;
+    /**
+     * The pending microtime to move the presentation clock.
+     */
+    private final AtomicLong adjustment;
+    /**
+     * Indicates whether the clock is moved forward and the late frames are
+     * being dropped.
+     */
+    private boolean catchingUp = false;
+    /**
+     * Provides the time shared by all nodes.
+     */
+    private final ClusterClock clusterClock;
     /**
      * Movie buffer.
      */
@@ -285,6 +595,14 @@ class BaseMediaWorker implements MediaWorker {
      * A frame/image processor.
      */
     private final FrameProcessor processor;
+    /**
+     * The lateness to drop a frame. The zero disables the drop.
+     */
+    private final long dropMicrotime;
+    /**
+     * The clock of heard audio.
+     */
+    private final Optional<AudioClock> audioClock;
 
     /**
      * Constructs a thread for drawing the frame.
@@ -293,12 +611,32 @@ class BaseMediaWorker implements MediaWorker {
      * @param buffer Movie buffer
      * @param panel Image output
      * @param processor Frame/Image processor
+     * @param dropMicrotime The lateness to drop a frame. The zero disables
+     * the drop
+     * @param clockSpinMicrotime The microtime to spin before a frame is due
+     * @param audioClock The clock of heard audio, or empty if the video is
+     * presented by the local clock only
+     * @param clusterClock The clock to present the frames
+     * @param schedule The armed start of show and next movie
+     * @param adjustment The pending microtime to move the presentation clock
      */
     PanelThread(final AtomicCloser closer,
             final MovieBuffer buffer,
             final BasePanel panel,
-            final FrameProcessor processor) {
+            final FrameProcessor processor,
+            final long dropMicrotime,
+            final long clockSpinMicrotime,
+            final Optional<AudioClock> audioClock,
+            final ClusterClock clusterClock,
+            final StartSchedule schedule,
+            final AtomicLong adjustment) {
       this.closer = closer;
+      this.schedule = schedule;
+      this.adjustment = adjustment;
+      this.audioClock = audioClock;
+      this.clusterClock = clusterClock;
+      this.sleeper = new Sleeper(0, clockSpinMicrotime, clusterClock);
+      this.dropMicrotime = dropMicrotime;
       this.processor = processor;
       this.buffer = buffer;
       this.panel = panel;
@@ -315,18 +653,55 @@ class BaseMediaWorker implements MediaWorker {
             break;
           }
           Frame frame = frameOpt.get();
-          if (attribute == null
-                  || frame.getMovieAttribute().getIndex()
-                  != attribute.getIndex()) {
+          if (attribute == null) {
             attribute = frame.getMovieAttribute();
             sleeper.reset();
+          } else if (frame.getMovieAttribute().getIndex()
+                  != attribute.getIndex()) {
+            attribute = frame.getMovieAttribute();
+            sleeper.continueStream();
+            schedule.takeNextMovie().ifPresent(sleeper::arm);
           }
           if (buffer.hadPause()) {
             sleeper.reset();
           }
-          sleeper.sleepByTimeStamp(frame.getTimestamp());
-          processor.prePrintPanel(frame.getImage())
-                  .ifPresent(image -> panel.write(image));
+          if (!sleeper.isStarted()) {
+            schedule.takeVideoStart().ifPresent(sleeper::arm);
+          }
+          adjust();
+          final long lateness = -sleeper.getDelay(frame.getTimestamp());
+          if (catchingUp && lateness > 0) {
+            buffer.countDroppedFrame();
+            frame.release();
+            continue;
+          }
+          catchingUp = false;
+          if (dropMicrotime > 0 && lateness > dropMicrotime) {
+            buffer.countDroppedFrame();
+            frame.release();
+            continue;
+          }
+          // The planes and offloaded pixels are converted before sleeping, so
+          // the conversion doesn't delay the frame which is due.
+          BufferedImage image = frame.getImage();
+          final long paintLateness
+                  = -sleeper.sleepByTimeStamp(frame.getTimestamp());
+          followAudio(frame);
+          buffer.updateClusterOrigin(clusterClock.isSynced()
+                  ? sleeper.getOriginMicrotime() : 0);
+          sleeper.pollStartError().ifPresent(error -> {
+            LOG.info("start error(us) : " + error);
+            buffer.updateStartError(error);
+          });
+          Optional<BufferedImage> painted = processor.prePrintPanel(image);
+          if (painted.isPresent()) {
+            // The panel gives back the frame after the image is replaced and
+            // no paint is drawing it.
+            panel.write(painted.get(), frame::release);
+          } else {
+            frame.release();
+          }
+          buffer.countPaintedFrame(paintLateness > LATE_MICROTIME);
           int currentIndex = frame.getMovieAttribute().getIndex();
           if (currentIndex != previousIndex) {
             LOG.info("play index : " + currentIndex);
@@ -335,12 +710,68 @@ class BaseMediaWorker implements MediaWorker {
         }
       } catch (InterruptedException e) {
         LOG.debug("Panel thread is interrupted", e);
+      } finally {
+        LOG.info("panel submitted/shown/merged : "
+                + panel.getSubmittedCount() + "/"
+                + panel.getShownCount() + "/"
+                + panel.getMergedCount()
+                + ", paint microtime : " + panel.getPaintMicrotime());
+        LOG.info("panel clock " + sleeper
+                + ", cluster offset/rtt(us) : "
+                + clusterClock.getOffsetMicrotime() + "/"
+                + clusterClock.getRttMicrotime());
+      }
+    }
+
+    /**
+     * Moves the presentation clock by the pending adjustment. The late frames
+     * are dropped after the clock is moved forward. The adjustment is
+     * discarded if the clock follows the audio, so the A/V sync is the only
+     * owner of the clock.
+     */
+    private void adjust() {
+      final long microtime = adjustment.getAndSet(0);
+      if (microtime == 0 || !sleeper.isStarted()) {
+        return;
+      }
+      if (audioClock.isPresent()) {
+        LOG.debug("Ignore the adjustment " + microtime
+                + "us because the clock follows the audio");
+        return;
+      }
+      sleeper.shift(microtime);
+      catchingUp = microtime < 0;
+      LOG.info("adjust the presentation clock by " + microtime + "us");
+    }
+
+    /**
+     * Measures the A/V offset of frame which is going to be presented, and
+     * moves the presentation clock to the audio clock.
+     *
+     * @param frame The frame to present
+     */
+    private void followAudio(final Frame frame) {
+      if (!audioClock.isPresent()) {
+        return;
+      }
+      OptionalLong audioTime = audioClock.get()
+              .getTime(frame.getMovieAttribute().getIndex());
+      if (!audioTime.isPresent()) {
+        return;
+      }
+      final long offset = frame.getTimestamp() - audioTime.getAsLong();
+      buffer.updateAvOffset(offset);
+      if (Math.abs(offset) > AV_SYNC_MICROTIME) {
+        sleeper.shift(offset / 2);
       }
     }
   }
 
   /**
-   * A thread for writing audio data.
+   * A thread for writing audio data. The samples of all movies are in the
+   * same format, so the line is opened before the first
+   * sample and isn't closed until the show ends. It avoids the gap caused by
+   * draining and reopening the line at movie changes.
    */
   private static class SpeakerThread implements Runnable {
 
@@ -352,48 +783,80 @@ class BaseMediaWorker implements MediaWorker {
      * Closer.
      */
     private final AtomicCloser closer;
+    /**
+     * The clock of heard audio.
+     */
+    private final Optional<AudioClock> audioClock;
+    /**
+     * Provides the time shared by all nodes.
+     */
+    private final ClusterClock clusterClock;
+    /**
+     * The armed start of show.
+     */
+    private final StartSchedule schedule;
+    /**
+     * The length of audio line buffer.
+     */
+    private final long bufferMicrotime;
+    /**
+     * The format of audio line.
+     */
+    private final AudioFormat format;
 
     /**
      * Constructs a thread for writing the audio data.
      *
      * @param atomicCloser Closer
      * @param movieBuffer Movie buffer
+     * @param clock The clock to mark the written samples, or empty
+     * @param cluster The clock to wait for the armed start
+     * @param startSchedule The armed start of show
+     * @param lineBufferMicrotime The length of audio line buffer
+     * @param lineFormat The format of audio line
      */
     SpeakerThread(final AtomicCloser atomicCloser,
-            final MovieBuffer movieBuffer) {
+            final MovieBuffer movieBuffer,
+            final Optional<AudioClock> clock,
+            final ClusterClock cluster,
+            final StartSchedule startSchedule,
+            final long lineBufferMicrotime,
+            final AudioFormat lineFormat) {
       closer = atomicCloser;
+      format = lineFormat;
       buffer = movieBuffer;
+      audioClock = clock;
+      clusterClock = cluster;
+      schedule = startSchedule;
+      bufferMicrotime = lineBufferMicrotime;
     }
 
     @Override
     public void run() {
       Speaker spk = null;
       try {
+        spk = new Speaker(format, bufferMicrotime);
+        final Speaker speaker = spk;
+        audioClock.ifPresent(c -> c.setSpeaker(speaker));
         while (!Thread.interrupted() && !closer.isClosed()) {
           Optional<Sample> sampleOpt = buffer.readSample();
           if (!sampleOpt.isPresent()) {
             break;
           }
           Sample sample = sampleOpt.get();
-          if (spk == null) {
-            spk = new Speaker(sample.getMovieAttribute()
-                    .getAudioFormat());
-          }
-
-          if (!spk.getAudioFormat().matches(
-                  sample.getMovieAttribute().getAudioFormat())) {
-            spk.close();
-            spk = new Speaker(sample.getMovieAttribute()
-                    .getAudioFormat());
-          }
-          spk.write(sample.getData());
+          schedule.awaitAudioStart(clusterClock);
+          audioClock.ifPresent(c -> c.mark(sample));
+          spk.write(sample);
+          buffer.updateAudioUnderrun(spk.getUnderrunCount());
         }
       } catch (InterruptedException e) {
         LOG.debug("Speak thread is interrupted", e);
       } catch (LineUnavailableException e) {
-        LOG.debug(e);
+        LOG.error("Failed to open the audio line", e);
       } finally {
+        audioClock.ifPresent(AudioClock::clear);
         if (spk != null) {
+          LOG.info("audio underrun : " + spk.getUnderrunCount());
           spk.close();
         }
       }
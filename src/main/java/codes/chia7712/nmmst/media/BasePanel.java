@@ -1,15 +1,33 @@
 package codes.chia7712.nmmst.media;
 
+import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.JPanel;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * Support three mode for showing the image on the panel.
+ * Support three mode for showing the image on the panel. The image is painted
+ * by Swing repaint by default, and the repaints may be merged by EDT. The
+ * active rendering draws the image by a render thread to a page-flipping
+ * {@link BufferStrategy} of the full-screen exclusive window, so no tearing.
+ * The counts of submitted, shown and merged images are kept for both ways.
+ * A image written with a release callback is handed back after it is replaced
+ * and no paint is drawing it, so the caller can reuse the image safely.
  */
 public class BasePanel extends JPanel {
 
@@ -18,6 +36,11 @@ public class BasePanel extends JPanel {
    * Serial id.
    */
   private static final long serialVersionUID = 1L;
+  /**
+   * The number of buffers for page flipping. The writer, the render thread
+   * and the display use the different buffers.
+   */
+  private static final int BUFFER_NUMBER = 3;
 
   /**
    * Indicates how to paint specified image on the panel.
@@ -39,7 +62,25 @@ public class BasePanel extends JPanel {
   /**
    * The image to draw.
    */
-  private BufferedImage image = null;
+  private volatile BufferedImage image = null;
+  /**
+   * Guards the current image, the drawing images and the replaced images.
+   */
+  private final transient Object imageLock = new Object();
+  /**
+   * Hands back current image. It is null if current image needn't be
+   * handed back.
+   */
+  private transient Runnable imageRelease = null;
+  /**
+   * The images being drawn by EDT or the render thread.
+   */
+  private final transient List<BufferedImage> drawingImages
+          = new ArrayList<>();
+  /**
+   * The replaced images which are waiting for the paints drawing them.
+   */
+  private final transient List<Retired> retiredImages = new ArrayList<>();
   /**
    * The display mode.
    */
@@ -48,6 +89,62 @@ public class BasePanel extends JPanel {
    * Locks the current image.
    */
   private final AtomicBoolean lockImage = new AtomicBoolean(false);
+  /**
+   * Indicates a image is submitted and not shown.
+   */
+  private final AtomicBoolean pendingImage = new AtomicBoolean(false);
+  /**
+   * The number of submitted images.
+   */
+  private final AtomicLong submittedCount = new AtomicLong();
+  /**
+   * The number of shown images.
+   */
+  private final AtomicLong shownCount = new AtomicLong();
+  /**
+   * The number of images replaced before shown.
+   */
+  private final AtomicLong mergedCount = new AtomicLong();
+  /**
+   * The number of paints which draw a image.
+   */
+  private final AtomicLong paintCount = new AtomicLong();
+  /**
+   * The total nanoseconds of paints which draw a image.
+   */
+  private final AtomicLong paintNanos = new AtomicLong();
+  /**
+   * Wakes up the render thread.
+   */
+  private final transient Object renderLock = new Object();
+  /**
+   * The render thread. It is null if the active rendering is disabled.
+   */
+  private transient volatile Thread renderer;
+
+  /**
+   * A replaced image and the way to hand it back.
+   */
+  private static final class Retired {
+
+    /**
+     * The replaced image.
+     */
+    private final BufferedImage image;
+    /**
+     * Hands back the image.
+     */
+    private final Runnable release;
+
+    /**
+     * @param image The replaced image
+     * @param release Hands back the image
+     */
+    Retired(final BufferedImage image, final Runnable release) {
+      this.image = image;
+      this.release = release;
+    }
+  }
 
   /**
    * Constructs a empty panel.
@@ -99,12 +196,259 @@ public class BasePanel extends JPanel {
    * @param writeImage The image to draw
    */
   public final void write(final BufferedImage writeImage) {
+    write(writeImage, null);
+  }
+
+  /**
+   * Draws a new image right now. The release is invoked once the image is
+   * replaced by other image and no paint is drawing it. If the image isn't
+   * written because the panel is locked, the release is invoked right now.
+   *
+   * @param writeImage The image to draw
+   * @param release Hands back the image, or null
+   */
+  public final void write(final BufferedImage writeImage,
+          final Runnable release) {
     if (writeImage != null && !lockImage.get()) {
-      image = writeImage;
+      replace(writeImage, release);
+      submit();
+    } else if (release != null) {
+      release.run();
+    }
+  }
+
+  /**
+   * Replaces current image. The replaced image is handed back if no paint is
+   * drawing it, otherwise it is handed back after the paints end.
+   *
+   * @param newImage The new image
+   * @param release Hands back the new image, or null
+   */
+  private void replace(final BufferedImage newImage, final Runnable release) {
+    List<Runnable> releases;
+    synchronized (imageLock) {
+      if (imageRelease != null) {
+        retiredImages.add(new Retired(image, imageRelease));
+      }
+      image = newImage;
+      imageRelease = release;
+      releases = takeReleasable();
+    }
+    releases.forEach(Runnable::run);
+  }
+
+  /**
+   * Takes current image for drawing. The image isn't handed back until
+   * {@link #endDraw(BufferedImage)} is called.
+   *
+   * @return The image to draw, or null
+   */
+  private BufferedImage beginDraw() {
+    synchronized (imageLock) {
+      final BufferedImage current = image;
+      if (current != null) {
+        drawingImages.add(current);
+      }
+      return current;
+    }
+  }
+
+  /**
+   * Ends the drawing of image, and then hands back the replaced images which
+   * are not drawn by any paint.
+   *
+   * @param current The image got from {@link #beginDraw()}
+   */
+  private void endDraw(final BufferedImage current) {
+    if (current == null) {
+      return;
+    }
+    List<Runnable> releases;
+    synchronized (imageLock) {
+      drawingImages.remove(current);
+      releases = takeReleasable();
+    }
+    releases.forEach(Runnable::run);
+  }
+
+  /**
+   * Removes the replaced images which are not drawn by any paint. It must be
+   * called with the image lock.
+   *
+   * @return The releases of removed images
+   */
+  private List<Runnable> takeReleasable() {
+    List<Runnable> releases = new ArrayList<>(retiredImages.size());
+    Iterator<Retired> iter = retiredImages.iterator();
+    while (iter.hasNext()) {
+      Retired retired = iter.next();
+      if (!drawingImages.contains(retired.image)) {
+        releases.add(retired.release);
+        iter.remove();
+      }
+    }
+    return releases;
+  }
+
+  /**
+   * Submits current image to the EDT or the render thread. The previous image
+   * is merged if it hasn't been shown.
+   */
+  private void submit() {
+    submittedCount.incrementAndGet();
+    if (pendingImage.getAndSet(true)) {
+      mergedCount.incrementAndGet();
+    }
+    if (renderer == null) {
       repaint();
+    } else {
+      synchronized (renderLock) {
+        renderLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Starts the active rendering. The window is set to full-screen exclusive
+   * mode if the device supports it, and Swing repaint is ignored. It should
+   * be called after the window is displayable.
+   *
+   * @param window The window which contains this panel only
+   */
+  public final synchronized void startActiveRendering(final Window window) {
+    if (renderer != null) {
+      return;
+    }
+    GraphicsDevice device = GraphicsEnvironment
+            .getLocalGraphicsEnvironment().getDefaultScreenDevice();
+    if (device.isFullScreenSupported()) {
+      device.setFullScreenWindow(window);
+    } else {
+      LOG.warn("The full-screen exclusive mode isn't supported");
+    }
+    window.setIgnoreRepaint(true);
+    setIgnoreRepaint(true);
+    window.createBufferStrategy(BUFFER_NUMBER);
+    final BufferStrategy strategy = window.getBufferStrategy();
+    LOG.info("Active rendering, page flipping : "
+            + strategy.getCapabilities().isPageFlipping());
+    renderer = new Thread(() -> render(window, strategy), "BasePanel-render");
+    renderer.setDaemon(true);
+    renderer.start();
+  }
+
+  /**
+   * Stops the active rendering, and then the image is painted by Swing.
+   */
+  public final synchronized void stopActiveRendering() {
+    Thread thread = renderer;
+    if (thread == null) {
+      return;
+    }
+    renderer = null;
+    thread.interrupt();
+    setIgnoreRepaint(false);
+    repaint();
+  }
+
+  /**
+   * Draws the submitted images to buffer strategy until the render thread is
+   * stopped.
+   *
+   * @param window The window to draw
+   * @param strategy The buffer strategy of window
+   */
+  private void render(final Window window, final BufferStrategy strategy) {
+    try {
+      while (renderer == Thread.currentThread()) {
+        synchronized (renderLock) {
+          while (!pendingImage.get()) {
+            renderLock.wait();
+          }
+        }
+        pendingImage.set(false);
+        final BufferedImage current = beginDraw();
+        try {
+          do {
+            do {
+              Graphics g = strategy.getDrawGraphics();
+              try {
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, window.getWidth(), window.getHeight());
+                timedDraw(g, current, window.getWidth(), window.getHeight());
+              } finally {
+                g.dispose();
+              }
+            } while (strategy.contentsRestored());
+            strategy.show();
+          } while (strategy.contentsLost());
+          Toolkit.getDefaultToolkit().sync();
+        } finally {
+          endDraw(current);
+        }
+        shownCount.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Render thread is interrupted", e);
+    } finally {
+      strategy.dispose();
     }
   }
 
+  /**
+   * @return The number of images submitted to this panel
+   */
+  public final long getSubmittedCount() {
+    return submittedCount.get();
+  }
+
+  /**
+   * @return The number of images shown by this panel
+   */
+  public final long getShownCount() {
+    return shownCount.get();
+  }
+
+  /**
+   * @return The number of images replaced by next image before shown
+   */
+  public final long getMergedCount() {
+    return mergedCount.get();
+  }
+
+  /**
+   * @return The average microtime of drawing a image by EDT or the render
+   * thread
+   */
+  public final long getPaintMicrotime() {
+    final long count = paintCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    return paintNanos.get() / count / 1000;
+  }
+
+  /**
+   * Calculates the size to draw specified image by current mode. The image
+   * having this size is drawn without scaling.
+   *
+   * @param imageWidth Image width
+   * @param imageHeight Image height
+   * @return The size to draw, or a empty optional if this panel has no size
+   */
+  public final Optional<Dimension> getDrawSize(final int imageWidth,
+          final int imageHeight) {
+    if (getWidth() <= 0 || getHeight() <= 0) {
+      return Optional.empty();
+    }
+    Rectangle area = getDrawArea(imageWidth, imageHeight,
+            getWidth(), getHeight());
+    if (area == null) {
+      return Optional.empty();
+    }
+    return Optional.of(area.getSize());
+  }
+
   /**
    * Unlocks the image.
    */
@@ -120,8 +464,8 @@ public class BasePanel extends JPanel {
   public final void writeAndLock(final BufferedImage writeImage) {
     if (image != null) {
       lockImage.set(true);
-      image = writeImage;
-      repaint();
+      replace(writeImage, null);
+      submit();
     }
   }
 
@@ -130,8 +474,8 @@ public class BasePanel extends JPanel {
    */
   public final void clearImage() {
     if (!lockImage.get()) {
-      image = null;
-      repaint();
+      replace(null, null);
+      submit();
     }
 
   }
@@ -146,40 +490,107 @@ public class BasePanel extends JPanel {
   @Override
   public final void paintComponent(final Graphics g) {
     super.paintComponent(g);
-    if (image != null) {
-      final int width = image.getWidth();
-      final int height = image.getHeight();
-      if (width != -1 && height != -1) {
-        int xAxis = 0;
-        int yAxis = 0;
-        int finalW, finalH;
-        switch (mode) {
-          case FULL_SCREEN:
-            double minScale = Math.min(
-                    (double) getWidth() / (double) width,
-                    (double) getHeight() / (double) height);
-            finalW = (int) (width * minScale);
-            finalH = (int) (height * minScale);
-            xAxis = (getWidth() - finalW) / 2;
-            yAxis = (getHeight() - finalH) / 2;
-            break;
-          case FILL:
-            finalW = getWidth();
-            finalH = getHeight();
-            break;
-          case EXTENSION:
-            double maxScale = Math.max(
-                    (double) getWidth() / (double) width,
-                    (double) getHeight() / (double) height);
-            finalW = (int) (width * maxScale);
-            finalH = (int) (height * maxScale);
-            break;
-          default:
-            return;
-        }
-        g.drawImage(image, xAxis, yAxis, finalW, finalH, null);
+    if (renderer == null && pendingImage.getAndSet(false)) {
+      shownCount.incrementAndGet();
+    }
+    final BufferedImage current = beginDraw();
+    try {
+      if (current != null) {
+        timedDraw(g, current, getWidth(), getHeight());
+        current.flush();
       }
-      image.flush();
+    } finally {
+      endDraw(current);
+    }
+  }
+
+  /**
+   * Draws the image and accumulates the elapsed time.
+   *
+   * @param g The graphics to draw
+   * @param current The image to draw. Nothing is drawn if it is null
+   * @param areaWidth The width of draw area
+   * @param areaHeight The height of draw area
+   */
+  private void timedDraw(final Graphics g, final BufferedImage current,
+          final int areaWidth, final int areaHeight) {
+    if (current == null) {
+      return;
+    }
+    final long start = System.nanoTime();
+    draw(g, current, areaWidth, areaHeight);
+    paintNanos.addAndGet(System.nanoTime() - start);
+    paintCount.incrementAndGet();
+  }
+
+  /**
+   * Draws the image by current mode. The image is drawn without scaling if
+   * it has the size of draw area.
+   *
+   * @param g The graphics to draw
+   * @param current The image to draw. Nothing is drawn if it is null
+   * @param areaWidth The width of draw area
+   * @param areaHeight The height of draw area
+   */
+  private void draw(final Graphics g, final BufferedImage current,
+          final int areaWidth, final int areaHeight) {
+    if (current == null) {
+      return;
+    }
+    Rectangle area = getDrawArea(current.getWidth(), current.getHeight(),
+            areaWidth, areaHeight);
+    if (area == null) {
+      return;
+    }
+    if (area.width == current.getWidth()
+            && area.height == current.getHeight()) {
+      g.drawImage(current, area.x, area.y, null);
+    } else {
+      g.drawImage(current, area.x, area.y, area.width, area.height, null);
+    }
+  }
+
+  /**
+   * Calculates the area to draw the image by current mode.
+   *
+   * @param width Image width
+   * @param height Image height
+   * @param areaWidth The width of draw area
+   * @param areaHeight The height of draw area
+   * @return The area to draw, or null if the image has no size
+   */
+  private Rectangle getDrawArea(final int width, final int height,
+          final int areaWidth, final int areaHeight) {
+    if (width == -1 || height == -1) {
+      return null;
+    }
+    int xAxis = 0;
+    int yAxis = 0;
+    int finalW, finalH;
+    switch (mode) {
+      case FULL_SCREEN:
+        double minScale = Math.min(
+                (double) areaWidth / (double) width,
+                (double) areaHeight / (double) height);
+        finalW = (int) (width * minScale);
+        finalH = (int) (height * minScale);
+        xAxis = (areaWidth - finalW) / 2;
+        yAxis = (areaHeight - finalH) / 2;
+        break;
+      case FILL:
+        finalW = areaWidth;
+        finalH = areaHeight;
+        break;
+      case EXTENSION:
+        double maxScale = Math.max(
+                (double) areaWidth / (double) width,
+                (double) areaHeight / (double) height);
+        finalW = (int) (width * maxScale);
+        finalH = (int) (height * maxScale);
+        break;
+      default:
+        return null;
     }
+    return new Rectangle(xAxis, yAxis, finalW, finalH);
   }
 }
@@ -0,0 +1,164 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.NProperties;
+
+/**
+ * Dispatches the events of movie buffer to the {@link BufferListener}. The
+ * watermarks have hysteresis, so the high event is fired again only after the
+ * low event, and vice versa. The occupancy is the ratio of heap size to byte
+ * budget if the budget is set, or the ratio of frame number to capacity.
+ */
+final class BufferEvents {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG = LogFactory.getLog(BufferEvents.class);
+  /**
+   * The index before any frame.
+   */
+  private static final int NO_INDEX = -1;
+  /**
+   * The listeners.
+   */
+  private final List<BufferListener> listeners
+          = new CopyOnWriteArrayList<>();
+  /**
+   * The occupancy to fire the high event.
+   */
+  private final double highWatermark;
+  /**
+   * The occupancy to fire the low event.
+   */
+  private final double lowWatermark;
+  /**
+   * {@code true} if the occupancy has reached the high watermark and has not
+   * fallen to the low watermark.
+   */
+  private final AtomicBoolean high = new AtomicBoolean(false);
+  /**
+   * The movie index of last written frame. It is written by frame writer.
+   */
+  private volatile int writeIndex = NO_INDEX;
+  /**
+   * The movie index of last read frame. It is written by frame reader.
+   */
+  private volatile int readIndex = NO_INDEX;
+
+  /**
+   * @param properties NProperties provides the watermarks
+   */
+  BufferEvents(final NProperties properties) {
+    highWatermark = properties.getDouble(NConstants.BUFFER_WATERMARK_HIGH);
+    lowWatermark = properties.getDouble(NConstants.BUFFER_WATERMARK_LOW);
+  }
+
+  /**
+   * @param listener The listener to add
+   */
+  void add(final BufferListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @param listener The listener to remove
+   */
+  void remove(final BufferListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Fires the watermark event if the occupancy crosses the watermark.
+   *
+   * @param metrics The buffer metrics
+   */
+  void checkOccupancy(final BufferMetrics metrics) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    final double ratio;
+    if (metrics.getByteBudget() > 0) {
+      ratio = (double) metrics.getHeapSize()
+              / (double) metrics.getByteBudget();
+    } else {
+      ratio = (double) metrics.getFrameNumber()
+              / (double) metrics.getFrameCapacity();
+    }
+    if (ratio >= highWatermark && high.compareAndSet(false, true)) {
+      listeners.forEach(l -> dispatch(() -> l.onHighWatermark(metrics)));
+    } else if (ratio <= lowWatermark && high.compareAndSet(true, false)) {
+      listeners.forEach(l -> dispatch(() -> l.onLowWatermark(metrics)));
+    }
+  }
+
+  /**
+   * Fires the event if the written frame comes from other movie. The frame
+   * without movie attribute is ignored.
+   *
+   * @param frame The written frame
+   */
+  void checkWriteIndex(final Frame frame) {
+    if (frame.getMovieAttribute() == null) {
+      return;
+    }
+    final int index = frame.getMovieAttribute().getIndex();
+    if (index != writeIndex) {
+      writeIndex = index;
+      listeners.forEach(l -> dispatch(() -> l.onWriteIndexChanged(index)));
+    }
+  }
+
+  /**
+   * Fires the event if the read frame comes from other movie. The frame
+   * without movie attribute is ignored.
+   *
+   * @param frame The read frame
+   */
+  void checkReadIndex(final Frame frame) {
+    if (frame.getMovieAttribute() == null) {
+      return;
+    }
+    final int index = frame.getMovieAttribute().getIndex();
+    if (index != readIndex) {
+      readIndex = index;
+      listeners.forEach(l -> dispatch(() -> l.onReadIndexChanged(index)));
+    }
+  }
+
+  /**
+   * Fires the event of measured start error.
+   *
+   * @param microtime The start error
+   */
+  void startMeasured(final long microtime) {
+    listeners.forEach(l -> dispatch(() -> l.onStartMeasured(microtime)));
+  }
+
+  /**
+   * Forgets the indexes and the watermark state for next show.
+   */
+  void reset() {
+    writeIndex = NO_INDEX;
+    readIndex = NO_INDEX;
+    high.set(false);
+  }
+
+  /**
+   * Runs the callback. The failure of listener doesn't break the buffer.
+   *
+   * @param callback The callback to run
+   */
+  private static void dispatch(final Runnable callback) {
+    try {
+      callback.run();
+    } catch (RuntimeException e) {
+      LOG.error("Failed to notify the buffer listener", e);
+    }
+  }
+}
@@ -1,12 +1,19 @@
 package codes.chia7712.nmmst.media;
 
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import codes.chia7712.nmmst.NConstants;
 import codes.chia7712.nmmst.NProperties;
 
@@ -16,27 +23,381 @@ import codes.chia7712.nmmst.NProperties;
 public final class BufferFactory {
 
   /**
-   * Instaniates the movie buffer. The max size is getted from
-   * {@link NProperties} by {@link NConstants#FRAME_QUEUE_SIZE}
+   * The implementations of movie buffer.
+   */
+  public enum BufferType {
+    /**
+     * Blocking queues. It supports the byte budget.
+     */
+    BASE,
+    /**
+     * Lock-free rings for single producer and single consumer. It doesn't
+     * support the byte budget.
+     */
+    RING
+  }
+
+  /**
+   * Instaniates the movie buffer. The implementation is getted from
+   * {@link NProperties} by {@link NConstants#BUFFER_TYPE}.
    *
    * @param properties NProperties provides the size of queue
    * @return Movie buffer
    */
   public static MovieBuffer createMovieBuffer(final NProperties properties) {
-    return new BaseBuffer(properties);
+    return createMovieBuffer(properties, BufferType.valueOf(
+            properties.getString(NConstants.BUFFER_TYPE).toUpperCase()));
+  }
+
+  /**
+   * Instaniates the movie buffer. The max size is getted from
+   * {@link NProperties} by {@link NConstants#FRAME_QUEUE_SIZE}, or by
+   * {@link NConstants#BUFFER_BYTE_BUDGET} if the byte budget is positive and
+   * the type is {@link BufferType#BASE}.
+   *
+   * @param properties NProperties provides the size of queue
+   * @param type The implementation
+   * @return Movie buffer
+   * @throws IllegalArgumentException If the byte budget is set for
+   * {@link BufferType#RING}
+   */
+  public static MovieBuffer createMovieBuffer(final NProperties properties,
+          final BufferType type) {
+    switch (type) {
+      case RING:
+        if (properties.getLong(NConstants.BUFFER_BYTE_BUDGET) > 0) {
+          throw new IllegalArgumentException("The "
+                  + NConstants.BUFFER_BYTE_BUDGET + " isn't supported by "
+                  + BufferType.RING + " buffer");
+        }
+        return new RingBuffer(properties);
+      default:
+        return new BaseBuffer(properties);
+    }
+  }
+
+  /**
+   * Keeps the pools, the presented and written frames, the metrics and the
+   * events which are shared by the buffer implementations.
+   */
+  private abstract static class AbstractBuffer implements MovieBuffer {
+
+    /**
+     * Recycles the images of frames.
+     */
+    private final FramePool framePool;
+    /**
+     * Recycles the audio data of samples.
+     */
+    private final SamplePool samplePool;
+    /**
+     * Dispatches the buffer events.
+     */
+    private final BufferEvents events;
+    /**
+     * The GC time before current show.
+     */
+    private volatile long gcBaseMillis = getGcTotalMillis();
+    /**
+     * A frame to read recently.
+     */
+    private volatile Frame currentFrame;
+    /**
+     * A frame to write recently.
+     */
+    private volatile Frame lastFrame;
+    /**
+     * The number of dropped frames.
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+    /**
+     * The number of late frames.
+     */
+    private final AtomicLong lateCount = new AtomicLong();
+    /**
+     * The number of on-time frames.
+     */
+    private final AtomicLong onTimeCount = new AtomicLong();
+    /**
+     * The latest A/V offset. It is written by frame reader.
+     */
+    private volatile long avOffset = 0;
+    /**
+     * The cluster origin of current movie. It is written by frame reader.
+     */
+    private volatile long clusterOrigin = 0;
+    /**
+     * The start error of last scheduled start. It is written by frame reader.
+     */
+    private volatile long startError = 0;
+    /**
+     * The number of audio underruns. It is written by sample reader.
+     */
+    private volatile long audioUnderrun = 0;
+
+    /**
+     * Instantiates the pools and events for specified properties.
+     *
+     * @param properties NProperties provides the pool size and watermarks
+     */
+    AbstractBuffer(final NProperties properties) {
+      events = new BufferEvents(properties);
+      framePool = new FramePool(properties.getInteger(
+              NConstants.FRAME_POOL_SIZE),
+              properties.getLong(NConstants.FRAME_ARENA_SIZE),
+              FramePool.Format.valueOf(properties.getString(
+                      NConstants.FRAME_FORMAT).toUpperCase()));
+      samplePool = new SamplePool(properties.getInteger(
+              NConstants.SAMPLE_POOL_SIZE));
+    }
+
+    /**
+     * Records the frame which is queued, and then fires the events. It is
+     * called by frame writer after the frame is in the queue.
+     *
+     * @param frame The written frame
+     */
+    protected final void onFrameWritten(final Frame frame) {
+      lastFrame = frame;
+      events.checkWriteIndex(frame);
+      events.checkOccupancy(this);
+    }
+
+    /**
+     * Records the frame which is taken from queue, and then fires the
+     * events. It is called by frame reader.
+     *
+     * @param frame The read frame
+     */
+    protected final void onFrameRead(final Frame frame) {
+      currentFrame = frame;
+      events.checkReadIndex(frame);
+      events.checkOccupancy(this);
+    }
+
+    /**
+     * Resets the GC time and events for next show. It is called after the
+     * queues are cleared.
+     */
+    protected final void onCleared() {
+      gcBaseMillis = getGcTotalMillis();
+      events.reset();
+    }
+
+    /**
+     * @param frame The frame to check
+     * @return The movie attribute, or null if the frame or its attribute is
+     * null
+     */
+    private static MovieAttribute attributeOf(final Frame frame) {
+      return frame == null ? null : frame.getMovieAttribute();
+    }
+
+    @Override
+    public void writeEof() throws InterruptedException {
+      writeFrame(null);
+      writeSample(null);
+    }
+
+    @Override
+    public void addListener(final BufferListener listener) {
+      events.add(listener);
+    }
+
+    @Override
+    public void removeListener(final BufferListener listener) {
+      events.remove(listener);
+    }
+
+    @Override
+    public int getLastMovieIndex() {
+      MovieAttribute attribute = attributeOf(lastFrame);
+      return attribute == null ? 0 : attribute.getIndex();
+    }
+
+    @Override
+    public long getLastTimestamp() {
+      Frame frame = lastFrame;
+      return frame == null ? 0 : frame.getTimestamp();
+    }
+
+    @Override
+    public long getLastDuration() {
+      MovieAttribute attribute = attributeOf(lastFrame);
+      return attribute == null ? 0 : attribute.getDuration();
+    }
+
+    @Override
+    public int getCurrentMovieIndex() {
+      MovieAttribute attribute = attributeOf(currentFrame);
+      return attribute == null ? 0 : attribute.getIndex();
+    }
+
+    @Override
+    public long getCurrentTimestamp() {
+      Frame frame = currentFrame;
+      return frame == null ? 0 : frame.getTimestamp();
+    }
+
+    @Override
+    public long getCurrentDuration() {
+      MovieAttribute attribute = attributeOf(currentFrame);
+      return attribute == null ? 0 : attribute.getDuration();
+    }
+
+    @Override
+    public FramePool getFramePool() {
+      return framePool;
+    }
+
+    @Override
+    public SamplePool getSamplePool() {
+      return samplePool;
+    }
+
+    @Override
+    public long getFramePoolHitCount() {
+      return framePool.getHitCount();
+    }
+
+    @Override
+    public long getFramePoolMissCount() {
+      return framePool.getMissCount();
+    }
+
+    @Override
+    public long getFramePoolOutstanding() {
+      return framePool.getOutstanding();
+    }
+
+    @Override
+    public long getOffHeapSize() {
+      return framePool.getOffHeapSize();
+    }
+
+    @Override
+    public long getUsedHeapSize() {
+      Runtime runtime = Runtime.getRuntime();
+      return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Override
+    public long getGcMillis() {
+      return getGcTotalMillis() - gcBaseMillis;
+    }
+
+    @Override
+    public long getConvertCount() {
+      return PictureConverter.getConvertCount();
+    }
+
+    @Override
+    public long getConvertMicrotime() {
+      long count = PictureConverter.getConvertCount();
+      if (count == 0) {
+        return 0;
+      }
+      return PictureConverter.getConvertNanotime() / count / 1000;
+    }
+
+    @Override
+    public void countDroppedFrame() {
+      droppedCount.incrementAndGet();
+    }
+
+    @Override
+    public void countPaintedFrame(final boolean late) {
+      if (late) {
+        lateCount.incrementAndGet();
+      } else {
+        onTimeCount.incrementAndGet();
+      }
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+      return droppedCount.get();
+    }
+
+    @Override
+    public long getLateFrameCount() {
+      return lateCount.get();
+    }
+
+    @Override
+    public long getOnTimeFrameCount() {
+      return onTimeCount.get();
+    }
+
+    @Override
+    public void updateAvOffset(final long microtime) {
+      avOffset = microtime;
+    }
+
+    @Override
+    public long getAvOffsetMicrotime() {
+      return avOffset;
+    }
+
+    @Override
+    public void updateClusterOrigin(final long microtime) {
+      clusterOrigin = microtime;
+    }
+
+    @Override
+    public long getClusterOriginMicrotime() {
+      return clusterOrigin;
+    }
+
+    @Override
+    public void updateStartError(final long microtime) {
+      startError = microtime;
+      events.startMeasured(microtime);
+    }
+
+    @Override
+    public long getStartErrorMicrotime() {
+      return startError;
+    }
+
+    @Override
+    public void updateAudioUnderrun(final long count) {
+      audioUnderrun = count;
+    }
+
+    @Override
+    public long getAudioUnderrunCount() {
+      return audioUnderrun;
+    }
   }
 
   /**
    * The base buffer saves the frames and samples in the
    * {@link ArrayBlockingQueue} and {@link LinkedBlockingQueue} respectively.
+   * If the byte budget is set, both queues are unbounded by count and the
+   * writer waits until the total bytes of frames and samples fit the budget.
    */
-  private static class BaseBuffer implements MovieBuffer {
+  private static class BaseBuffer extends AbstractBuffer {
+
+    /**
+     * Log.
+     */
+    private static final Log LOG = LogFactory.getLog(BaseBuffer.class);
+    /**
+     * The max ratio of JVM max heap used by the byte budget. The rest is left
+     * for the decoder, the pools and the panel.
+     */
+    private static final double MAX_HEAP_RATIO = 0.7;
 
+    /**
+     * Indicates the end of samples.
+     */
+    private static final Sample EOF_SAMPLE = new Sample(null, new byte[1]);
     /**
      * Buffers the samples.
      */
-    private final BlockingQueue<Optional<Sample>> samples
-            = new LinkedBlockingQueue();
+    private final BlockingQueue<Sample> samples
+            = new LinkedBlockingQueue<>();
     /**
      * Indicates the pause status.
      */
@@ -58,15 +419,14 @@ public final class BufferFactory {
      */
     private final AtomicLong heapSize = new AtomicLong();
     /**
-     * A frame to read recently.
+     * The max bytes of buffered frames and samples. The zero means the
+     * frames are bounded by count only.
      */
-    private final AtomicReference<Frame> currentFrame
-            = new AtomicReference();
+    private final long byteBudget;
     /**
-     * A frame to write recently.
+     * Notifies the writer waiting for the byte budget.
      */
-    private final AtomicReference<Frame> lastFrame
-            = new AtomicReference();
+    private final Object budgetLock = new Object();
 
     /**
      * Instantiates a buffer for specified properties.
@@ -74,9 +434,72 @@ public final class BufferFactory {
      * @param properties NProperties provides the limit of buffer.
      */
     BaseBuffer(final NProperties properties) {
-      frameBufferLimit = properties.getInteger(
-              NConstants.FRAME_QUEUE_SIZE);
-      frameQueue = new ArrayBlockingQueue(frameBufferLimit);
+      super(properties);
+      byteBudget = toByteBudget(properties.getLong(
+              NConstants.BUFFER_BYTE_BUDGET));
+      if (byteBudget > 0) {
+        frameBufferLimit = Integer.MAX_VALUE;
+        frameQueue = new LinkedBlockingQueue<>();
+        LOG.info("The movie buffer is bounded by " + byteBudget + " bytes");
+      } else {
+        frameBufferLimit = properties.getInteger(
+                NConstants.FRAME_QUEUE_SIZE);
+        frameQueue = new ArrayBlockingQueue<>(frameBufferLimit);
+      }
+    }
+
+    /**
+     * Limits the configured budget by the JVM max heap.
+     *
+     * @param configured The configured budget in bytes
+     * @return The byte budget, or zero if the budget is disabled
+     */
+    private static long toByteBudget(final long configured) {
+      if (configured <= 0) {
+        return 0;
+      }
+      long limit = (long) (Runtime.getRuntime().maxMemory() * MAX_HEAP_RATIO);
+      if (configured > limit) {
+        LOG.warn("The byte budget " + configured
+                + " is limited by the JVM max heap to " + limit);
+        return limit;
+      }
+      return configured;
+    }
+
+    /**
+     * Adds the bytes to buffer. If the byte budget is set, it waits until the
+     * bytes fit the budget. A item is always accepted by the empty buffer, so
+     * a item larger than budget doesn't block forever.
+     *
+     * @param size The bytes to add
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void acquire(final long size) throws InterruptedException {
+      if (byteBudget <= 0) {
+        heapSize.addAndGet(size);
+        return;
+      }
+      synchronized (budgetLock) {
+        while (heapSize.get() > 0 && heapSize.get() + size > byteBudget) {
+          budgetLock.wait();
+        }
+        heapSize.addAndGet(size);
+      }
+    }
+
+    /**
+     * Removes the bytes from buffer, and then wakes up the waiting writer.
+     *
+     * @param size The bytes to remove
+     */
+    private void release(final long size) {
+      heapSize.addAndGet(-size);
+      if (byteBudget > 0) {
+        synchronized (budgetLock) {
+          budgetLock.notifyAll();
+        }
+      }
     }
 
     /**
@@ -103,8 +526,8 @@ public final class BufferFactory {
       }
       Optional<Frame> frame = frameQueue.take();
       frame.ifPresent(f -> {
-        heapSize.addAndGet(-f.getHeapSize());
-        currentFrame.set(f);
+        release(f.getHeapSize());
+        onFrameRead(f);
       });
       return frame;
     }
@@ -112,27 +535,41 @@ public final class BufferFactory {
     @Override
     public Optional<Sample> readSample() throws InterruptedException {
       waitForPause();
-      Optional<Sample> sample = samples.take();
-      sample.ifPresent(s -> heapSize.addAndGet(-s.getHeapSize()));
-      return sample;
+      Sample sample = samples.take();
+      if (sample == EOF_SAMPLE) {
+        return Optional.empty();
+      }
+      release(sample.getHeapSize());
+      return Optional.of(sample);
     }
 
     @Override
     public void writeFrame(final Frame frame) throws InterruptedException {
-      Optional<Frame> frameOpt = Optional.ofNullable(frame);
-      frameOpt.ifPresent(f -> {
-        heapSize.addAndGet(f.getHeapSize());
-        lastFrame.set(f);
-      });
-      frameQueue.put(frameOpt);
+      if (frame == null) {
+        frameQueue.put(Optional.empty());
+        return;
+      }
+      final long size = frame.getHeapSize();
+      acquire(size);
+      try {
+        frame.offload();
+        frameQueue.put(Optional.of(frame));
+      } catch (InterruptedException | RuntimeException e) {
+        release(size);
+        throw e;
+      }
+      onFrameWritten(frame);
     }
 
     @Override
     public void writeSample(final Sample sample)
             throws InterruptedException {
-      Optional<Sample> sampleOpt = Optional.ofNullable(sample);
-      sampleOpt.ifPresent(s -> heapSize.addAndGet(s.getHeapSize()));
-      samples.put(sampleOpt);
+      if (sample == null) {
+        samples.put(EOF_SAMPLE);
+        return;
+      }
+      acquire(sample.getHeapSize());
+      samples.put(sample);
     }
 
     @Override
@@ -147,9 +584,22 @@ public final class BufferFactory {
 
     @Override
     public void clear() {
-      frameQueue.clear();
-      samples.clear();
-      heapSize.set(0);
+      List<Optional<Frame>> frames = new LinkedList<>();
+      frameQueue.drainTo(frames);
+      frames.forEach(f -> f.ifPresent(Frame::release));
+      List<Sample> drained = new LinkedList<>();
+      samples.drainTo(drained);
+      drained.forEach(Sample::release);
+      synchronized (budgetLock) {
+        heapSize.set(0);
+        budgetLock.notifyAll();
+      }
+      onCleared();
+    }
+
+    @Override
+    public long getByteBudget() {
+      return byteBudget;
     }
 
     @Override
@@ -186,66 +636,279 @@ public final class BufferFactory {
     public long getHeapSize() {
       return heapSize.get();
     }
+  }
+
+  /**
+   * The ring buffer saves the frames and samples in the {@link SpscRing}s.
+   * The frames are written by one thread and read by the panel thread, and
+   * the samples are written by one thread and read by the speaker thread. The
+   * pause is a volatile flag and the paused readers are parked. The metrics
+   * are single-writer volatile fields, so the handoff takes no lock.
+   */
+  private static class RingBuffer extends AbstractBuffer {
+
+    /**
+     * The min number of audio frames in a sample. The common codecs decode
+     * 1024 or more audio frames per packet, and the short blocks of some
+     * codecs are a half of it.
+     */
+    private static final int MIN_SAMPLE_FRAMES = 512;
+    /**
+     * The min video frame rate which the frame ring is sized for.
+     */
+    private static final int MIN_FRAME_RATE = 24;
+    /**
+     * Indicates the end of frames.
+     */
+    private static final Frame EOF_FRAME = new Frame(null, 0,
+            new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR));
+    /**
+     * Indicates the end of samples.
+     */
+    private static final Sample EOF_SAMPLE = new Sample(null, new byte[1]);
+    /**
+     * Buffers the frames.
+     */
+    private final SpscRing<Frame> frames;
+    /**
+     * Buffers the samples.
+     */
+    private final SpscRing<Sample> samples;
+    /**
+     * Indicates the pause status.
+     */
+    private volatile boolean pause = false;
+    /**
+     * Indicates the pause status whether happened. It is set by frame
+     * reader.
+     */
+    private volatile boolean hadPause = false;
+    /**
+     * The frame reader waiting for the end of pause.
+     */
+    private volatile Thread pausedFrameReader;
+    /**
+     * The sample reader waiting for the end of pause.
+     */
+    private volatile Thread pausedSampleReader;
+    /**
+     * The bytes of written frames. It is written by frame writer.
+     */
+    private volatile long frameBytesIn = 0;
+    /**
+     * The bytes of read frames. It is written by frame reader.
+     */
+    private volatile long frameBytesOut = 0;
+    /**
+     * The bytes of written samples. It is written by sample writer.
+     */
+    private volatile long sampleBytesIn = 0;
+    /**
+     * The bytes of read samples. It is written by sample reader.
+     */
+    private volatile long sampleBytesOut = 0;
+
+    /**
+     * Instantiates a buffer for specified properties.
+     *
+     * @param properties NProperties provides the limit of buffer.
+     */
+    RingBuffer(final NProperties properties) {
+      super(properties);
+      final int frameLimit = properties.getInteger(
+              NConstants.FRAME_QUEUE_SIZE);
+      frames = new SpscRing<>(frameLimit);
+      samples = new SpscRing<>(getSampleCapacity(frameLimit,
+              Speaker.getOutputFormat(properties).getSampleRate()));
+    }
+
+    /**
+     * Calculates the sample slots which cover the time of frame slots, so the
+     * sample ring doesn't fill before the frame ring. The time of frame slots
+     * is the longest at the min frame rate, and the samples are the most at
+     * the min audio frames per sample.
+     *
+     * @param frameLimit The number of frame slots
+     * @param sampleRate The audio frames per second of samples
+     * @return The number of sample slots
+     */
+    private static int getSampleCapacity(final int frameLimit,
+            final float sampleRate) {
+      final double samplesPerSecond = sampleRate / MIN_SAMPLE_FRAMES;
+      final double seconds = (double) frameLimit / MIN_FRAME_RATE;
+      return Math.max(frameLimit, (int) Math.ceil(seconds * samplesPerSecond));
+    }
+
+    /**
+     * Waits until no pause.
+     *
+     * @param frameReader {@code true} if the caller is frame reader
+     * @return {@code true} if a pause event has happened
+     * @throws InterruptedException If any breaks
+     */
+    private boolean waitForPause(final boolean frameReader)
+            throws InterruptedException {
+      if (!pause) {
+        return false;
+      }
+      Thread current = Thread.currentThread();
+      if (frameReader) {
+        pausedFrameReader = current;
+      } else {
+        pausedSampleReader = current;
+      }
+      try {
+        while (pause) {
+          LockSupport.park(this);
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+        }
+      } finally {
+        if (frameReader) {
+          pausedFrameReader = null;
+        } else {
+          pausedSampleReader = null;
+        }
+      }
+      return true;
+    }
 
     @Override
-    public int getLastMovieIndex() {
-      Frame frame = lastFrame.get();
-      if (frame != null) {
-        return frame.getMovieAttribute().getIndex();
+    public Optional<Frame> readFrame() throws InterruptedException {
+      if (waitForPause(true)) {
+        hadPause = true;
       }
-      return 0;
+      Frame frame = frames.take();
+      if (frame == EOF_FRAME) {
+        return Optional.empty();
+      }
+      frameBytesOut += frame.getHeapSize();
+      onFrameRead(frame);
+      return Optional.of(frame);
     }
 
     @Override
-    public long getLastTimestamp() {
-      Frame frame = lastFrame.get();
-      if (frame != null) {
-        return frame.getTimestamp();
+    public Optional<Sample> readSample() throws InterruptedException {
+      waitForPause(false);
+      Sample sample = samples.take();
+      if (sample == EOF_SAMPLE) {
+        return Optional.empty();
       }
-      return 0;
+      sampleBytesOut += sample.getHeapSize();
+      return Optional.of(sample);
     }
 
     @Override
-    public long getLastDuration() {
-      Frame frame = lastFrame.get();
-      if (frame != null) {
-        return frame.getMovieAttribute().getDuration();
+    public void writeFrame(final Frame frame) throws InterruptedException {
+      if (frame == null) {
+        frames.put(EOF_FRAME);
+        return;
       }
-      return 0;
+      final long size = frame.getHeapSize();
+      frame.offload();
+      frameBytesIn += size;
+      try {
+        frames.put(frame);
+      } catch (InterruptedException e) {
+        frameBytesIn -= size;
+        throw e;
+      }
+      onFrameWritten(frame);
     }
 
     @Override
-    public int getCurrentMovieIndex() {
-      Frame frame = currentFrame.get();
-      if (frame != null) {
-        return frame.getMovieAttribute().getIndex();
+    public void writeSample(final Sample sample)
+            throws InterruptedException {
+      if (sample == null) {
+        samples.put(EOF_SAMPLE);
+        return;
       }
-      return 0;
+      sampleBytesIn += sample.getHeapSize();
+      samples.put(sample);
     }
 
     @Override
-    public long getCurrentTimestamp() {
-      Frame frame = currentFrame.get();
-      if (frame != null) {
-        return frame.getTimestamp();
+    public void setPause(final boolean value) {
+      pause = value;
+      if (!value) {
+        LockSupport.unpark(pausedFrameReader);
+        LockSupport.unpark(pausedSampleReader);
       }
-      return 0;
     }
 
     @Override
-    public long getCurrentDuration() {
-      Frame frame = currentFrame.get();
-      if (frame != null) {
-        return frame.getMovieAttribute().getDuration();
+    public void clear() {
+      Frame frame;
+      while ((frame = frames.poll()) != null) {
+        frame.release();
       }
-      return 0;
+      Sample sample;
+      while ((sample = samples.poll()) != null) {
+        sample.release();
+      }
+      frameBytesIn = 0;
+      frameBytesOut = 0;
+      sampleBytesIn = 0;
+      sampleBytesOut = 0;
+      onCleared();
     }
 
     @Override
-    public void writeEof() throws InterruptedException {
-      writeFrame(null);
-      writeSample(null);
+    public int getFrameNumber() {
+      return frames.size();
+    }
+
+    @Override
+    public int getSampleNumber() {
+      return samples.size();
+    }
+
+    @Override
+    public boolean isPause() {
+      return pause;
+    }
+
+    @Override
+    public boolean hadPause() {
+      if (hadPause) {
+        hadPause = false;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int getFrameCapacity() {
+      return frames.capacity();
+    }
+
+    @Override
+    public int getSampleCapacity() {
+      return samples.capacity();
+    }
+
+    @Override
+    public long getHeapSize() {
+      return (frameBytesIn - frameBytesOut) + (sampleBytesIn - sampleBytesOut);
+    }
+
+    @Override
+    public long getByteBudget() {
+      return 0;
+    }
+  }
+
+  /**
+   * @return The accumulated GC time of this JVM in milliseconds
+   */
+  private static long getGcTotalMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean bean
+            : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, bean.getCollectionTime());
     }
+    return total;
   }
 
   /**
@@ -0,0 +1,49 @@
+package codes.chia7712.nmmst.media;
+
+/**
+ * Receives the events of {@link MovieBuffer}. The methods are called by the
+ * thread which reads or writes the buffer, so they should return quickly.
+ */
+public interface BufferListener {
+
+  /**
+   * Called if the occupancy rises to the high watermark.
+   *
+   * @param metrics The buffer metrics
+   */
+  default void onHighWatermark(BufferMetrics metrics) {
+  }
+
+  /**
+   * Called if the occupancy falls to the low watermark.
+   *
+   * @param metrics The buffer metrics
+   */
+  default void onLowWatermark(BufferMetrics metrics) {
+  }
+
+  /**
+   * Called if the reader writes the first frame of a movie.
+   *
+   * @param index The movie index
+   */
+  default void onWriteIndexChanged(int index) {
+  }
+
+  /**
+   * Called if the presenter reads the first frame of a movie.
+   *
+   * @param index The movie index
+   */
+  default void onReadIndexChanged(int index) {
+  }
+
+  /**
+   * Called if the presenter measures the start error of a scheduled start.
+   *
+   * @param microtime The microtime between the scheduled time and the first
+   * presented frame
+   */
+  default void onStartMeasured(long microtime) {
+  }
+}
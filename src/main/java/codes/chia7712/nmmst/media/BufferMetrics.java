@@ -12,6 +12,13 @@ public interface BufferMetrics {
    */
   long getHeapSize();
 
+  /**
+   * Retrieves the max bytes of buffered frames and samples.
+   *
+   * @return The byte budget, or zero if the frames are bounded by count
+   */
+  long getByteBudget();
+
   /**
    * @return The size of buffered frames in this queue
    */
@@ -73,4 +80,120 @@ public interface BufferMetrics {
    * @return The movie duration from last frame
    */
   long getLastDuration();
+
+  /**
+   * Retrieves the number of images which are reused from the frame pool.
+   *
+   * @return The hit count of frame pool
+   */
+  long getFramePoolHitCount();
+
+  /**
+   * Retrieves the number of images which are allocated by the frame pool.
+   *
+   * @return The miss count of frame pool
+   */
+  long getFramePoolMissCount();
+
+  /**
+   * Retrieves the number of images which are taken from the frame pool but
+   * not released yet.
+   *
+   * @return The outstanding count of frame pool
+   */
+  long getFramePoolOutstanding();
+
+  /**
+   * Retrieves the bytes of direct memory which keep the pixels of queued
+   * frames.
+   *
+   * @return The off-heap size of frames
+   */
+  long getOffHeapSize();
+
+  /**
+   * Retrieves the used heap of JVM.
+   *
+   * @return The used heap size
+   */
+  long getUsedHeapSize();
+
+  /**
+   * Retrieves the GC time since current show started.
+   *
+   * @return The GC time in milliseconds
+   */
+  long getGcMillis();
+
+  /**
+   * Retrieves the number of pictures which are converted to image.
+   *
+   * @return The number of converted pictures
+   */
+  long getConvertCount();
+
+  /**
+   * Retrieves the average microtime of converting a picture to image. It
+   * includes the colour conversion, the resize and the copy.
+   *
+   * @return The average microtime of conversion
+   */
+  long getConvertMicrotime();
+
+  /**
+   * Retrieves the number of frames which are dropped because they are later
+   * than the drop threshold.
+   *
+   * @return The number of dropped frames
+   */
+  long getDroppedFrameCount();
+
+  /**
+   * Retrieves the number of frames which are painted behind the presentation
+   * clock.
+   *
+   * @return The number of late frames
+   */
+  long getLateFrameCount();
+
+  /**
+   * Retrieves the number of frames which are painted on time.
+   *
+   * @return The number of on-time frames
+   */
+  long getOnTimeFrameCount();
+
+  /**
+   * Retrieves the latest offset between the presented frame and the heard
+   * audio. The positive value means the video leads the audio.
+   *
+   * @return The A/V offset in microseconds, or zero if it isn't measured
+   */
+  long getAvOffsetMicrotime();
+
+  /**
+   * Retrieves the cluster time when the timestamp zero of current movie is
+   * presented. The nodes presenting the same movie have the same origin if
+   * they are in sync, so the difference of origins is the skew of nodes.
+   *
+   * @return The cluster origin in microseconds, or zero if it isn't measured
+   * or the cluster clock isn't synchronized
+   */
+  long getClusterOriginMicrotime();
+
+  /**
+   * Retrieves the start error of last scheduled start. It is the microtime
+   * between the scheduled time and the first presented frame.
+   *
+   * @return The start error in microseconds, or zero if it isn't measured
+   */
+  long getStartErrorMicrotime();
+
+  /**
+   * Retrieves the number of times the audio line ran out of data in current
+   * show. The audio is heard with a gap for each underrun.
+   *
+   * @return The number of audio underruns
+   */
+  long getAudioUnderrunCount();
 }
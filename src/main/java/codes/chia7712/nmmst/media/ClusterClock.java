@@ -0,0 +1,83 @@
+package codes.chia7712.nmmst.media;
+
+/**
+ * Provides the time shared by all nodes. The video nodes map the stream
+ * timestamps to this time when presenting, so the nodes which start the same
+ * movie at the same cluster time show the same frame.
+ */
+public interface ClusterClock {
+
+  /**
+   * @return The cluster time in nanoseconds. It is monotonic but has no
+   * relation to the wall-clock time
+   */
+  long nanoTime();
+
+  /**
+   * @return The estimated offset from local clock to cluster clock in
+   * microseconds
+   */
+  long getOffsetMicrotime();
+
+  /**
+   * @return The round trip time of the probe which the offset comes from, or
+   * zero if the clock isn't synchronized by network
+   */
+  long getRttMicrotime();
+
+  /**
+   * @return {@code true} if the offset is estimated. The time of clock which
+   * isn't synchronized has no relation to the time of other nodes
+   */
+  boolean isSynced();
+
+  /**
+   * Retrieves a clock which uses the local clock as the cluster clock. It is
+   * used by the master node, whose clock is the cluster clock.
+   *
+   * @return A local cluster clock
+   */
+  static ClusterClock local() {
+    return local(true);
+  }
+
+  /**
+   * Retrieves a clock which uses the local clock but isn't synchronized. It
+   * is used by the node which isn't the master node if there is no master
+   * node or the synchronization is disabled, so the times sent by others are
+   * not mistaken for its time.
+   *
+   * @return A local cluster clock which isn't synchronized
+   */
+  static ClusterClock unsynced() {
+    return local(false);
+  }
+
+  /**
+   * @param synced Indicates whether the local clock is the cluster clock
+   * @return A local cluster clock
+   */
+  static ClusterClock local(final boolean synced) {
+    return new ClusterClock() {
+      @Override
+      public long nanoTime() {
+        return System.nanoTime();
+      }
+
+      @Override
+      public long getOffsetMicrotime() {
+        return 0;
+      }
+
+      @Override
+      public long getRttMicrotime() {
+        return 0;
+      }
+
+      @Override
+      public boolean isSynced() {
+        return synced;
+      }
+    };
+  }
+}
@@ -0,0 +1,476 @@
+package codes.chia7712.nmmst.media;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IVideoPicture;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.processor.FrameProcessor;
+import codes.chia7712.nmmst.threads.AtomicCloser;
+
+/**
+ * Decodes the movies by stages. The caller thread demuxes the packets, a
+ * decode thread decodes them, a pool of workers converts the pictures to BGR
+ * and runs the {@link FrameProcessor#postDecodeFrame(Frame)}, and a reorder
+ * thread writes the frames into {@link MovieBuffer} in decoded order. The
+ * demuxed packets are kept compressed in a deep queue bounded by bytes, so
+ * the disk stalls and slow opens are absorbed before decoding, and the
+ * decoded frames only need to cover the decode jitter.
+ */
+final class DecodePipeline implements Runnable {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(DecodePipeline.class);
+  /**
+   * The max number of demuxed packets waiting for decode if the packet queue
+   * isn't bounded by bytes.
+   */
+  private static final int PACKET_QUEUE_SIZE = 128;
+  /**
+   * The max number of demuxed packets waiting for decode if the packet queue
+   * is bounded by bytes.
+   */
+  private static final int MAX_PACKET_NUMBER = 1 << 16;
+  /**
+   * The max number of decoded pictures waiting for each worker.
+   */
+  private static final int PICTURE_QUEUE_SIZE_PER_WORKER = 2;
+  /**
+   * A movie buffer to write.
+   */
+  private final MovieBuffer buffer;
+  /**
+   * This processor modify the frame after decode the frame.
+   */
+  private final FrameProcessor processor;
+  /**
+   * A closer is used to close this pipeline.
+   */
+  private final AtomicCloser closer;
+  /**
+   * A play flow.
+   */
+  private final MovieInfo.PlayFlow playFlow;
+  /**
+   * Opens the movies of play flow.
+   */
+  private final MovieOpener opener;
+  /**
+   * The number of converting workers.
+   */
+  private final int workerNumber;
+  /**
+   * Demuxed packets.
+   */
+  private final PacketQueue<PacketTask> packets;
+  /**
+   * Decoded pictures.
+   */
+  private final BlockingQueue<PictureTask> pictures;
+  /**
+   * Converted frames. The key is the decoded sequence.
+   */
+  private final Map<Long, Optional<Frame>> converted = new HashMap<>();
+  /**
+   * The streams which are opened by demux stage and not closed by decode
+   * stage.
+   */
+  private final Set<MovieStream> openedStreams
+          = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Constructs a pipeline for decoding a list of media.
+   *
+   * @param closer Close
+   * @param buffer Movie buffer
+   * @param playFlow The play order
+   * @param opener Opens the movies of play flow
+   * @param processor Frame processor
+   * @param workerNumber The number of converting workers
+   * @param packetBufferSize The max bytes of demuxed packets waiting for
+   * decode. The zero or negative value bounds the packets by number
+   */
+  DecodePipeline(final AtomicCloser closer,
+          final MovieBuffer buffer,
+          final MovieInfo.PlayFlow playFlow,
+          final MovieOpener opener,
+          final FrameProcessor processor,
+          final int workerNumber,
+          final long packetBufferSize) {
+    this.closer = closer;
+    this.buffer = buffer;
+    this.processor = processor;
+    this.playFlow = playFlow;
+    this.opener = opener;
+    this.workerNumber = Math.max(1, workerNumber);
+    this.pictures = new ArrayBlockingQueue<>(
+            this.workerNumber * PICTURE_QUEUE_SIZE_PER_WORKER);
+    this.packets = new PacketQueue<>(
+            packetBufferSize > 0 ? MAX_PACKET_NUMBER : PACKET_QUEUE_SIZE,
+            packetBufferSize,
+            task -> task.packet == null ? 0 : task.packet.getSize());
+  }
+
+  @Override
+  public void run() {
+    ExecutorService stages = Executors.newFixedThreadPool(workerNumber + 2);
+    try {
+      stages.execute(this::decode);
+      for (int i = 0; i != workerNumber; ++i) {
+        stages.execute(this::convert);
+      }
+      stages.execute(this::reorder);
+      demux();
+      stages.shutdown();
+      stages.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    } catch (InterruptedException | IOException e) {
+      LOG.error("DecodePipeline is interrupted", e);
+    } finally {
+      stages.shutdownNow();
+      try {
+        stages.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+      } catch (InterruptedException e) {
+        LOG.debug(e);
+      }
+      openedStreams.forEach(MovieStream::close);
+      openedStreams.clear();
+    }
+  }
+
+  /**
+   * @return {@code true} if this pipeline should stop
+   */
+  private boolean isStopped() {
+    return closer.isClosed() || Thread.currentThread().isInterrupted();
+  }
+
+  /**
+   * Demuxes all movies in the play flow. The frames and samples decoded by
+   * lookahead are sent ahead of the packets. The stream is closed by decode
+   * stage after the last packet is decoded. The next movie of a selectable
+   * movie is decided when it is opened, so the demux waits for the decode
+   * stage to catch up before leaving a selectable movie.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   * @throws IOException If failed to open movie
+   */
+  private void demux() throws InterruptedException, IOException {
+    while (playFlow.hasNext()) {
+      MovieOpener.Prefetch prefetch = opener.open(playFlow.next());
+      MovieStream stream = prefetch.getStream();
+      openedStreams.add(stream);
+      try {
+        for (Sample sample : prefetch.getSamples()) {
+          packets.put(new PacketTask(stream, sample));
+        }
+        for (Frame frame : prefetch.getFrames()) {
+          packets.put(new PacketTask(stream, frame));
+        }
+        boolean eof = prefetch.isEof();
+        while (!eof) {
+          if (isStopped()) {
+            return;
+          }
+          MovieStream.Type type = stream.readNextType();
+          if (type == MovieStream.Type.EOF) {
+            eof = true;
+          } else {
+            opener.onProgress(stream, stream.getPacketTimestamp());
+            packets.put(new PacketTask(stream, type, stream.copyPacket()));
+          }
+        }
+      } finally {
+        packets.put(new PacketTask(stream, MovieStream.Type.EOF, null));
+      }
+      LOG.debug("Read ahead " + packets.size() + " packets, "
+              + packets.getBytes() + " bytes");
+      if (!playFlow.peekSelectedMovies().isEmpty()) {
+        packets.awaitEmpty();
+      }
+    }
+    packets.put(PacketTask.END);
+  }
+
+  /**
+   * Decodes the packets. The samples are written to buffer directly, and the
+   * pictures are sent to converting workers with a sequence.
+   */
+  private void decode() {
+    long sequence = 0;
+    try {
+      while (!isStopped()) {
+        PacketTask task = packets.take();
+        if (task == PacketTask.END) {
+          break;
+        }
+        try {
+          switch (task.type) {
+            case VIDEO:
+              if (task.frame != null) {
+                pictures.put(new PictureTask(
+                        task.stream, task.frame, sequence++));
+                break;
+              }
+              Optional<IVideoPicture> picture
+                      = task.stream.decodePicture(task.packet);
+              if (picture.isPresent()) {
+                pictures.put(new PictureTask(
+                        task.stream, picture.get(), sequence++));
+              }
+              break;
+            case AUDIO:
+              Optional<Sample> sample = task.sample != null
+                      ? Optional.of(task.sample)
+                      : task.stream.getSample(task.packet);
+              if (sample.isPresent()) {
+                buffer.writeSample(sample.get());
+              }
+              break;
+            default:
+              if (openedStreams.remove(task.stream)) {
+                task.stream.close();
+              }
+              break;
+          }
+        } finally {
+          if (task.packet != null) {
+            task.packet.delete();
+          }
+        }
+      }
+      for (int i = 0; i != workerNumber; ++i) {
+        pictures.put(new PictureTask(null, (IVideoPicture) null, sequence));
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Decode stage is interrupted", e);
+    }
+  }
+
+  /**
+   * Converts the pictures and processes the frames. Each worker owns the
+   * converter because the converter isn't thread-safe. The converter is
+   * closed when it is replaced or the worker exits.
+   */
+  private void convert() {
+    MovieStream lastStream = null;
+    PictureConverter converter = null;
+    try {
+      while (!isStopped()) {
+        PictureTask task = pictures.take();
+        if (task.stream == null) {
+          complete(task.sequence, null);
+          break;
+        }
+        Optional<Frame> frame = Optional.empty();
+        try {
+          Optional<Frame> decoded;
+          if (task.frame != null) {
+            decoded = Optional.of(task.frame);
+          } else {
+            if (task.stream != lastStream) {
+              PictureConverter next = task.stream.newConverter();
+              if (converter != null) {
+                converter.close();
+              }
+              converter = next;
+              lastStream = task.stream;
+            }
+            decoded = task.stream.toFrame(task.picture, converter);
+          }
+          if (decoded.isPresent()) {
+            frame = processor.postDecodeFrame(decoded.get());
+            if (!frame.isPresent()) {
+              decoded.get().release();
+            }
+          }
+        } catch (IOException e) {
+          LOG.error("Failed to convert the picture", e);
+        } finally {
+          if (task.picture != null) {
+            task.picture.delete();
+          }
+        }
+        complete(task.sequence, frame);
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Convert stage is interrupted", e);
+    } finally {
+      if (converter != null) {
+        converter.close();
+      }
+    }
+  }
+
+  /**
+   * Saves the converted frame.
+   *
+   * @param sequence The decoded sequence
+   * @param frame The converted frame, or null to indicate the end
+   */
+  private void complete(final long sequence, final Optional<Frame> frame) {
+    synchronized (converted) {
+      converted.putIfAbsent(sequence, frame);
+      converted.notifyAll();
+    }
+  }
+
+  /**
+   * Writes the frames in decoded order.
+   */
+  private void reorder() {
+    long next = 0;
+    try {
+      while (!isStopped()) {
+        Optional<Frame> frame;
+        synchronized (converted) {
+          while (!converted.containsKey(next)) {
+            converted.wait();
+          }
+          frame = converted.remove(next);
+        }
+        if (frame == null) {
+          buffer.writeEof();
+          break;
+        }
+        if (frame.isPresent()) {
+          buffer.writeFrame(frame.get());
+        }
+        ++next;
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Reorder stage is interrupted", e);
+    }
+  }
+
+  /**
+   * A demuxed packet.
+   */
+  private static final class PacketTask {
+
+    /**
+     * Indicates no more packet.
+     */
+    private static final PacketTask END
+            = new PacketTask(null, MovieStream.Type.EOF, null);
+    /**
+     * The stream which the packet comes from.
+     */
+    private final MovieStream stream;
+    /**
+     * Packet type.
+     */
+    private final MovieStream.Type type;
+    /**
+     * The copy of packet.
+     */
+    private final IPacket packet;
+    /**
+     * The frame decoded by lookahead.
+     */
+    private final Frame frame;
+    /**
+     * The sample decoded by lookahead.
+     */
+    private final Sample sample;
+
+    /**
+     * @param stream The stream which the packet comes from
+     * @param type Packet type. The EOF type means the end of stream
+     * @param packet The copy of packet
+     */
+    PacketTask(final MovieStream stream, final MovieStream.Type type,
+            final IPacket packet) {
+      this.stream = stream;
+      this.type = type;
+      this.packet = packet;
+      this.frame = null;
+      this.sample = null;
+    }
+
+    /**
+     * @param stream The stream which the frame comes from
+     * @param frame The frame decoded by lookahead
+     */
+    PacketTask(final MovieStream stream, final Frame frame) {
+      this.stream = stream;
+      this.type = MovieStream.Type.VIDEO;
+      this.packet = null;
+      this.frame = frame;
+      this.sample = null;
+    }
+
+    /**
+     * @param stream The stream which the sample comes from
+     * @param sample The sample decoded by lookahead
+     */
+    PacketTask(final MovieStream stream, final Sample sample) {
+      this.stream = stream;
+      this.type = MovieStream.Type.AUDIO;
+      this.packet = null;
+      this.frame = null;
+      this.sample = sample;
+    }
+  }
+
+  /**
+   * A decoded picture.
+   */
+  private static final class PictureTask {
+
+    /**
+     * The stream which the picture comes from. The null means no more picture.
+     */
+    private final MovieStream stream;
+    /**
+     * The copy of picture.
+     */
+    private final IVideoPicture picture;
+    /**
+     * The frame decoded by lookahead. It needn't be converted.
+     */
+    private final Frame frame;
+    /**
+     * The decoded sequence.
+     */
+    private final long sequence;
+
+    /**
+     * @param stream The stream which the picture comes from
+     * @param picture The copy of picture
+     * @param sequence The decoded sequence
+     */
+    PictureTask(final MovieStream stream, final IVideoPicture picture,
+            final long sequence) {
+      this.stream = stream;
+      this.picture = picture;
+      this.frame = null;
+      this.sequence = sequence;
+    }
+
+    /**
+     * @param stream The stream which the frame comes from
+     * @param frame The frame decoded by lookahead
+     * @param sequence The decoded sequence
+     */
+    PictureTask(final MovieStream stream, final Frame frame,
+            final long sequence) {
+      this.stream = stream;
+      this.picture = null;
+      this.frame = frame;
+      this.sequence = sequence;
+    }
+  }
+}
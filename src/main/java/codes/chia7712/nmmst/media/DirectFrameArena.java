@@ -0,0 +1,105 @@
+package codes.chia7712.nmmst.media;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps the pixels of queued frames in direct memory. The slots are allocated
+ * once by the size of first frame, so the long-lived pixels aren't promoted
+ * and copied by GC. A frame larger than the slot stays on heap.
+ */
+final class DirectFrameArena {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(DirectFrameArena.class);
+  /**
+   * The max bytes of all slots.
+   */
+  private final long capacity;
+  /**
+   * The idle slots. It is null before the first frame.
+   */
+  private volatile BlockingQueue<ByteBuffer> idle;
+  /**
+   * The bytes of a slot.
+   */
+  private int slotSize = 0;
+  /**
+   * The number of slots.
+   */
+  private int slotNumber = 0;
+
+  /**
+   * @param capacity The max bytes of all slots
+   */
+  DirectFrameArena(final long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Allocates the slots by the size of first frame.
+   *
+   * @param length The bytes of first frame
+   */
+  private synchronized void allocate(final int length) {
+    if (idle != null) {
+      return;
+    }
+    slotNumber = (int) Math.min(Integer.MAX_VALUE, capacity / length);
+    slotSize = length;
+    BlockingQueue<ByteBuffer> slots
+            = new ArrayBlockingQueue<>(Math.max(1, slotNumber));
+    for (int i = 0; i != slotNumber; ++i) {
+      slots.add(ByteBuffer.allocateDirect(slotSize));
+    }
+    LOG.info("Allocate " + slotNumber + " direct slots of "
+            + slotSize + " bytes");
+    idle = slots;
+  }
+
+  /**
+   * Retrieves a idle slot.
+   *
+   * @param length The bytes to save
+   * @return A cleared slot, or null if no idle slot or the slot is too small
+   */
+  ByteBuffer take(final int length) {
+    if (idle == null) {
+      allocate(length);
+    }
+    if (length > slotSize) {
+      return null;
+    }
+    ByteBuffer slot = idle.poll();
+    if (slot != null) {
+      slot.clear();
+    }
+    return slot;
+  }
+
+  /**
+   * Gives back a slot got from {@link #take(int)}.
+   *
+   * @param slot The slot to recycle
+   */
+  void release(final ByteBuffer slot) {
+    idle.offer(slot);
+  }
+
+  /**
+   * @return The bytes of slots which are in use
+   */
+  long getUsedSize() {
+    BlockingQueue<ByteBuffer> slots = idle;
+    if (slots == null) {
+      return 0;
+    }
+    return (long) (slotNumber - slots.size()) * slotSize;
+  }
+}
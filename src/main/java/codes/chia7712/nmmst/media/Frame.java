@@ -1,7 +1,12 @@
 package codes.chia7712.nmmst.media;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Encapsulates the frame from movie.
@@ -17,9 +22,26 @@ public final class Frame {
    */
   private final MovieAttribute attribute;
   /**
-   * BufferedImage.
+   * BufferedImage. It is null if the pixels are moved to direct memory or
+   * the pixels are kept in YUV420 planes.
    */
-  private final BufferedImage image;
+  private BufferedImage image;
+  /**
+   * The pixels in direct memory. It is null if the pixels are on heap.
+   */
+  private ByteBuffer slot;
+  /**
+   * The YUV420 planes. It is null if the pixels are kept in image.
+   */
+  private byte[] planes;
+  /**
+   * Image width.
+   */
+  private volatile int width;
+  /**
+   * Image height.
+   */
+  private volatile int height;
   /**
    * Timestamp.
    */
@@ -27,7 +49,19 @@ public final class Frame {
   /**
    * Heapsize of image.
    */
-  private final long imageSize;
+  private volatile long imageSize;
+  /**
+   * The pool which the image comes from. It may be null.
+   */
+  private final FramePool pool;
+  /**
+   * Indicates whether the image has been given back to pool.
+   */
+  private final AtomicBoolean released = new AtomicBoolean(false);
+  /**
+   * Indicates whether the image has been processed by edge blending.
+   */
+  private volatile boolean blended = false;
 
   /**
    * Constructs a frame for specified move attribute, timestamp and image.
@@ -38,15 +72,66 @@ public final class Frame {
    */
   public Frame(final MovieAttribute attribute,
           final long time, final BufferedImage image) {
+    this(attribute, time, image, null);
+  }
+
+  /**
+   * Constructs a frame for specified move attribute, timestamp and a image
+   * which is taken from the pool.
+   *
+   * @param attribute The attribute of {@link MovieStream}
+   * @param time The micro timestamp
+   * @param image Image
+   * @param framePool The pool to recycle the image, or null
+   */
+  public Frame(final MovieAttribute attribute,
+          final long time, final BufferedImage image,
+          final FramePool framePool) {
     this.attribute = attribute;
     this.time = time;
     this.image = image;
+    this.pool = framePool;
+    this.width = image.getWidth();
+    this.height = image.getHeight();
+    this.imageSize = sizeOf(image);
+  }
+
+  /**
+   * @param image Image
+   * @return The bytes of image raster
+   */
+  private static long sizeOf(final BufferedImage image) {
     DataBuffer buff = image.getRaster().getDataBuffer();
-    this.imageSize = buff.getSize()
+    return (long) buff.getSize()
             * DataBuffer.getDataTypeSize(buff.getDataType())
             / BIT_TO_BYTES;
   }
 
+  /**
+   * Constructs a frame for specified move attribute, timestamp and the YUV420
+   * planes which are taken from the pool. The planes are converted to a BGR
+   * image by {@link #getImage()}.
+   *
+   * @param attribute The attribute of {@link MovieStream}
+   * @param time The micro timestamp
+   * @param yuvPlanes The planes got from {@link FramePool#takePlanes(int)}
+   * @param imageWidth Image width
+   * @param imageHeight Image height
+   * @param framePool The pool to recycle the planes and image
+   */
+  Frame(final MovieAttribute attribute, final long time,
+          final byte[] yuvPlanes, final int imageWidth,
+          final int imageHeight, final FramePool framePool) {
+    this.attribute = attribute;
+    this.time = time;
+    this.image = null;
+    this.planes = yuvPlanes;
+    this.pool = framePool;
+    this.width = imageWidth;
+    this.height = imageHeight;
+    this.imageSize = yuvPlanes.length;
+  }
+
   /**
    * @return A reference to movie attribute
    */
@@ -62,12 +147,121 @@ public final class Frame {
   }
 
   /**
+   * @return The YUV420 planes, or null if the pixels are kept in image
+   */
+  public synchronized byte[] getPlanes() {
+    return planes;
+  }
+
+  /**
+   * @return Image width
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return Image height
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Retrieves the image. If the pixels are in direct memory, they are copied
+   * back to a image taken from pool. If the pixels are in YUV420 planes, they
+   * are converted to a image taken from pool and the planes are given back.
+   *
    * @return This image is got from movie
    */
-  public BufferedImage getImage() {
+  public synchronized BufferedImage getImage() {
+    if (image == null && planes != null) {
+      image = pool.take(width, height);
+      Yuv420.toBgr(planes, width, height, ((DataBufferByte) image
+              .getRaster().getDataBuffer()).getData());
+      pool.releasePlanes(planes);
+      planes = null;
+    }
+    if (image == null && slot != null) {
+      image = pool.take(width, height);
+      byte[] data = ((DataBufferByte) image.getRaster()
+              .getDataBuffer()).getData();
+      slot.flip();
+      slot.get(data, 0, data.length);
+      pool.getArena().release(slot);
+      slot = null;
+    }
     return image;
   }
 
+  /**
+   * Replaces the image by a image which is compatible with the screen and has
+   * specified size, so the panel draws it without conversion and scaling. It
+   * should be called before this frame is written to buffer. It does nothing
+   * if the image has the size and format, or the pixels are kept in YUV420
+   * planes because converting them to a image would lose the memory saving.
+   *
+   * @param targetWidth The width to draw
+   * @param targetHeight The height to draw
+   */
+  public synchronized void toScreenImage(final int targetWidth,
+          final int targetHeight) {
+    if (planes != null) {
+      return;
+    }
+    BufferedImage source = getImage();
+    if (source == null || released.get()) {
+      return;
+    }
+    if (source.getWidth() == targetWidth
+            && source.getHeight() == targetHeight
+            && source.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+      return;
+    }
+    BufferedImage target = pool == null
+            ? FramePool.createScreenImage(targetWidth, targetHeight)
+            : pool.takeScreen(targetWidth, targetHeight);
+    Graphics2D g = target.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+              RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+    } finally {
+      g.dispose();
+    }
+    if (pool != null) {
+      pool.release(source);
+    }
+    image = target;
+    width = targetWidth;
+    height = targetHeight;
+    imageSize = sizeOf(target);
+  }
+
+  /**
+   * Moves the pixels to direct memory and gives back the image to pool. It
+   * does nothing if the pool has no direct memory, no idle slot is
+   * available, the image isn't a BGR byte image or the pixels are kept in
+   * YUV420 planes.
+   */
+  synchronized void offload() {
+    if (pool == null || pool.getArena() == null || image == null
+            || released.get()
+            || !(image.getRaster().getDataBuffer() instanceof DataBufferByte)) {
+      return;
+    }
+    byte[] data = ((DataBufferByte) image.getRaster()
+            .getDataBuffer()).getData();
+    ByteBuffer s = pool.getArena().take(data.length);
+    if (s == null) {
+      return;
+    }
+    s.put(data, 0, data.length);
+    pool.release(image);
+    image = null;
+    slot = s;
+  }
+
   /**
    * The micro timestamp for this frame.
    *
@@ -76,4 +270,40 @@ public final class Frame {
   public long getTimestamp() {
     return time;
   }
+
+  /**
+   * Marks the image as processed by edge blending, so the blending isn't
+   * applied again.
+   */
+  public void setBlended() {
+    blended = true;
+  }
+
+  /**
+   * @return {@code true} if the image has been processed by edge blending
+   */
+  public boolean isBlended() {
+    return blended;
+  }
+
+  /**
+   * Gives back the image to pool. The image should not be used after this
+   * method returns. It does nothing if the image isn't from a pool or it has
+   * been released.
+   */
+  public void release() {
+    if (pool != null && released.compareAndSet(false, true)) {
+      synchronized (this) {
+        if (slot != null) {
+          pool.getArena().release(slot);
+          slot = null;
+        } else if (planes != null) {
+          pool.releasePlanes(planes);
+          planes = null;
+        } else {
+          pool.release(image);
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,559 @@
+package codes.chia7712.nmmst.media;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import javax.sound.sampled.AudioFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NodeInformation;
+import codes.chia7712.nmmst.NodeInformation.MediaRole;
+import codes.chia7712.nmmst.processor.FrameProcessor;
+
+/**
+ * The decoded frames and samples of a movie for a node. The cache is built
+ * offline by {@link #build(File, File, int, NodeInformation.Location,
+ * FrameProcessor)}, so the playback maps the raw BGR frames instead of
+ * decoding the movie. The frames may be processed by the edge blending before
+ * they are saved. The file consists of the records, the index and a fixed
+ * size trailer. Each index entry has the type, timestamp, position, length
+ * and checksum of a record. The cache is invalid if the size or modified time
+ * of movie is changed, or the audio is saved in other format.
+ */
+public final class FrameCache implements Closeable {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(FrameCache.class);
+  /**
+   * The suffix of cache file.
+   */
+  public static final String SUFFIX = ".frames";
+  /**
+   * Identifies the cache file. The third version saves the sample rate and
+   * channels of audio, so the older caches are rebuilt.
+   */
+  private static final int MAGIC = 0x4e464333;
+  /**
+   * The size of trailer. It includes magic, movie size, movie modified time,
+   * sample rate, channels, width, height, blended flag, record count and
+   * index position.
+   */
+  private static final int TRAILER_SIZE
+          = 4 + 8 + 8 + 4 + 4 + 4 + 4 + 1 + 4 + 8;
+  /**
+   * The size of index entry. It includes type, timestamp, position, length
+   * and checksum.
+   */
+  private static final int ENTRY_SIZE = 1 + 8 + 8 + 4 + 8;
+  /**
+   * The size of mapped region.
+   */
+  private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+  /**
+   * The type of video record.
+   */
+  private static final byte VIDEO = 0;
+  /**
+   * The type of audio record.
+   */
+  private static final byte AUDIO = 1;
+  /**
+   * The cache file.
+   */
+  private final FileChannel channel;
+  /**
+   * The frame width.
+   */
+  private final int width;
+  /**
+   * The frame height.
+   */
+  private final int height;
+  /**
+   * Indicates whether the frames have been processed by edge blending.
+   */
+  private final boolean blended;
+  /**
+   * The index of records in decoded order.
+   */
+  private final List<Entry> entries;
+  /**
+   * The current mapped region.
+   */
+  private MappedByteBuffer window;
+  /**
+   * The position of current mapped region.
+   */
+  private long windowPosition;
+
+  /**
+   * @param dir The cache directory
+   * @param movie The movie file
+   * @param location The node location
+   * @return The cache file of the movie for the node
+   */
+  public static File getCacheFile(final File dir, final File movie,
+          final NodeInformation.Location location) {
+    return new File(dir, movie.getName() + "." + location.name() + SUFFIX);
+  }
+
+  /**
+   * Opens the cache of specified movie.
+   *
+   * @param dir The cache directory
+   * @param movie The movie file
+   * @param location The node location
+   * @param audioFormat The format of samples to play
+   * @return The cache, or empty if the cache doesn't exist or is out of date
+   */
+  public static Optional<FrameCache> open(final File dir, final File movie,
+          final NodeInformation.Location location,
+          final AudioFormat audioFormat) {
+    File cacheFile = getCacheFile(dir, movie, location);
+    if (!cacheFile.exists()) {
+      return Optional.empty();
+    }
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+      if (channel.size() < TRAILER_SIZE) {
+        throw new IOException("Truncated file");
+      }
+      ByteBuffer trailer = read(channel, channel.size() - TRAILER_SIZE,
+              TRAILER_SIZE);
+      if (trailer.getInt() != MAGIC) {
+        throw new IOException("Unknown format");
+      }
+      if (trailer.getLong() != movie.length()
+              || trailer.getLong() != movie.lastModified()
+              || trailer.getInt() != (int) audioFormat.getSampleRate()
+              || trailer.getInt() != audioFormat.getChannels()) {
+        LOG.info("The frame cache is out of date: " + cacheFile);
+        channel.close();
+        return Optional.empty();
+      }
+      int width = trailer.getInt();
+      int height = trailer.getInt();
+      boolean blended = trailer.get() != 0;
+      int count = trailer.getInt();
+      ByteBuffer index = read(channel, trailer.getLong(),
+              count * ENTRY_SIZE);
+      List<Entry> entries = new ArrayList<>(count);
+      for (int i = 0; i != count; ++i) {
+        entries.add(new Entry(index.get(), index.getLong(), index.getLong(),
+                index.getInt(), index.getLong()));
+      }
+      return Optional.of(new FrameCache(channel, width, height,
+              blended, entries));
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Failed to open the frame cache: " + cacheFile, e);
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          LOG.debug(ex);
+        }
+      }
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Reads the specified region.
+   *
+   * @param channel The file to read
+   * @param position The start position
+   * @param length The number of bytes to read
+   * @return The bytes ready to get
+   * @throws IOException If failed to read the region
+   */
+  private static ByteBuffer read(final FileChannel channel,
+          final long position, final int length) throws IOException {
+    ByteBuffer data = ByteBuffer.allocate(length);
+    while (data.hasRemaining()) {
+      if (channel.read(data, position + data.position()) < 0) {
+        throw new IOException("Truncated file");
+      }
+    }
+    data.flip();
+    return data;
+  }
+
+  /**
+   * Decodes all frames and samples of the movie, and saves them for the node.
+   * The cache is written into a temporary file and then renamed, so a broken
+   * build doesn't leave a half cache.
+   *
+   * @param dir The cache directory
+   * @param movie The movie file
+   * @param index The movie index
+   * @param location The node location
+   * @param processor Processes the decoded frame before saving it, or null
+   * to save the raw frames
+   * @param audioFormat The format to save the samples
+   * @return The cache file
+   * @throws IOException If failed to decode movie or write cache
+   */
+  public static File build(final File dir, final File movie, final int index,
+          final NodeInformation.Location location,
+          final FrameProcessor processor, final AudioFormat audioFormat)
+          throws IOException {
+    final long startTime = System.nanoTime();
+    File cacheFile = getCacheFile(dir, movie, location);
+    File tmpFile = new File(dir, cacheFile.getName() + ".tmp");
+    List<Entry> entries = new ArrayList<>();
+    CRC32 crc = new CRC32();
+    int width = 0;
+    int height = 0;
+    long position = 0;
+    try (MovieStream stream = new MovieStream(movie, index, null, null,
+            MediaRole.FULL, audioFormat);
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(tmpFile)))) {
+      boolean eof = false;
+      while (!eof) {
+        byte type;
+        long timestamp;
+        byte[] data;
+        switch (stream.readNextType()) {
+          case VIDEO:
+            Optional<Frame> frame = stream.getFrame();
+            if (frame.isPresent() && processor != null) {
+              frame = processor.postDecodeFrame(frame.get());
+            }
+            if (!frame.isPresent()) {
+              continue;
+            }
+            BufferedImage image = frame.get().getImage();
+            width = image.getWidth();
+            height = image.getHeight();
+            type = VIDEO;
+            timestamp = frame.get().getTimestamp();
+            data = ((DataBufferByte) image.getRaster()
+                    .getDataBuffer()).getData();
+            break;
+          case AUDIO:
+            Optional<Sample> sample = stream.getSample();
+            if (!sample.isPresent()) {
+              continue;
+            }
+            type = AUDIO;
+            timestamp = sample.get().getTimestamp();
+            data = sample.get().getData();
+            break;
+          default:
+            eof = true;
+            continue;
+        }
+        crc.reset();
+        crc.update(data, 0, data.length);
+        entries.add(new Entry(type, timestamp, position, data.length,
+                crc.getValue()));
+        output.write(data);
+        position += data.length;
+      }
+      for (Entry entry : entries) {
+        output.writeByte(entry.type);
+        output.writeLong(entry.timestamp);
+        output.writeLong(entry.position);
+        output.writeInt(entry.length);
+        output.writeLong(entry.checksum);
+      }
+      output.writeInt(MAGIC);
+      output.writeLong(movie.length());
+      output.writeLong(movie.lastModified());
+      output.writeInt((int) audioFormat.getSampleRate());
+      output.writeInt(audioFormat.getChannels());
+      output.writeInt(width);
+      output.writeInt(height);
+      output.writeBoolean(processor != null);
+      output.writeInt(entries.size());
+      output.writeLong(position);
+    } catch (IOException e) {
+      if (!tmpFile.delete()) {
+        LOG.error("Failed to delete " + tmpFile);
+      }
+      throw e;
+    }
+    Files.move(tmpFile.toPath(), cacheFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+    LOG.info("Build the frame cache of " + movie + ", records:"
+            + entries.size() + ", bytes:" + position + ", elapsed(ms):"
+            + (System.nanoTime() - startTime) / 1000 / 1000);
+    return cacheFile;
+  }
+
+  /**
+   * Constructs a opened cache.
+   *
+   * @param channel The cache file
+   * @param width The frame width
+   * @param height The frame height
+   * @param blended Indicates whether the frames have been processed by edge
+   * blending
+   * @param entries The index of records
+   */
+  private FrameCache(final FileChannel channel, final int width,
+          final int height, final boolean blended, final List<Entry> entries) {
+    this.channel = channel;
+    this.width = width;
+    this.height = height;
+    this.blended = blended;
+    this.entries = entries;
+  }
+
+  /**
+   * @return The number of records
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return {@code true} if the frames have been processed by edge blending
+   */
+  public boolean isBlended() {
+    return blended;
+  }
+
+  /**
+   * @param i The record position
+   * @return The record type
+   */
+  public MovieStream.Type getType(final int i) {
+    return entries.get(i).type == VIDEO
+            ? MovieStream.Type.VIDEO : MovieStream.Type.AUDIO;
+  }
+
+  /**
+   * Copies the mapped frame into a image. The frame is dropped if the
+   * checksum is mismatched.
+   *
+   * @param i The record position
+   * @param attribute The movie attribute of frame
+   * @param pool The pool to take image, or null
+   * @return The frame, or empty if the record is broken
+   * @throws IOException If failed to map the record
+   */
+  public Optional<Frame> readFrame(final int i,
+          final MovieAttribute attribute, final FramePool pool)
+          throws IOException {
+    Entry entry = entries.get(i);
+    BufferedImage image = pool == null
+            ? new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR)
+            : pool.take(width, height);
+    Frame frame = new Frame(attribute, entry.timestamp, image, pool);
+    byte[] data = ((DataBufferByte) image.getRaster()
+            .getDataBuffer()).getData();
+    if (data.length != entry.length || !copy(entry, data)) {
+      LOG.error("Drop the broken frame " + i + " of "
+              + attribute.getFile());
+      frame.release();
+      return Optional.empty();
+    }
+    if (blended) {
+      frame.setBlended();
+    }
+    return Optional.of(frame);
+  }
+
+  /**
+   * Copies the mapped sample. The sample is dropped if the checksum is
+   * mismatched.
+   *
+   * @param i The record position
+   * @param attribute The movie attribute of sample
+   * @param pool The pool to take array, or null
+   * @return The sample, or empty if the record is broken
+   * @throws IOException If failed to map the record
+   */
+  public Optional<Sample> readSample(final int i,
+          final MovieAttribute attribute, final SamplePool pool)
+          throws IOException {
+    Entry entry = entries.get(i);
+    byte[] data = pool == null
+            ? new byte[entry.length] : pool.take(entry.length);
+    if (data.length == 0 || !copy(entry, data)) {
+      LOG.error("Drop the broken sample " + i + " of "
+              + attribute.getFile());
+      if (pool != null) {
+        pool.release(data);
+      }
+      return Optional.empty();
+    }
+    return Optional.of(new Sample(attribute, entry.timestamp, data, pool));
+  }
+
+  /**
+   * Copies the record from mapped region, and then verifies the checksum.
+   * The region is remapped if it doesn't cover the record.
+   *
+   * @param entry The record to copy
+   * @param data The destination
+   * @return {@code true} if the checksum is matched
+   * @throws IOException If failed to map the record
+   */
+  private boolean copy(final Entry entry, final byte[] data)
+          throws IOException {
+    if (window == null || entry.position < windowPosition
+            || entry.position + entry.length
+            > windowPosition + window.capacity()) {
+      long size = Math.min(Math.max(WINDOW_SIZE, entry.length),
+              channel.size() - entry.position);
+      window = channel.map(FileChannel.MapMode.READ_ONLY,
+              entry.position, size);
+      windowPosition = entry.position;
+    }
+    ByteBuffer view = window.duplicate();
+    view.position((int) (entry.position - windowPosition));
+    view.get(data, 0, entry.length);
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, entry.length);
+    return crc.getValue() == entry.checksum;
+  }
+
+  @Override
+  public void close() {
+    window = null;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.error(e);
+    }
+  }
+
+  /**
+   * Finds the caches of movies for a node.
+   */
+  public static final class Finder {
+
+    /**
+     * Disables the cache.
+     */
+    public static final Finder DISABLED = new Finder(null, null, null);
+    /**
+     * The cache directory.
+     */
+    private final File dir;
+    /**
+     * The node location.
+     */
+    private final NodeInformation.Location location;
+    /**
+     * The format of samples to play.
+     */
+    private final AudioFormat audioFormat;
+
+    /**
+     * @param dir The cache directory, or null to disable the cache
+     * @param location The node location
+     * @param audioFormat The format of samples to play
+     */
+    public Finder(final File dir, final NodeInformation.Location location,
+            final AudioFormat audioFormat) {
+      this.dir = dir;
+      this.location = location;
+      this.audioFormat = audioFormat;
+    }
+
+    /**
+     * @param attribute The movie attribute
+     * @return The cache, or empty if the cache is disabled, missed or out of
+     * date
+     */
+    Optional<FrameCache> open(final MovieAttribute attribute) {
+      if (dir == null || location == null) {
+        return Optional.empty();
+      }
+      return FrameCache.open(dir, attribute.getFile(), location,
+              audioFormat);
+    }
+
+    /**
+     * @param movieInfo The movies to play
+     * @return {@code true} if all movies have valid cache
+     */
+    boolean containsAll(final MovieInfo movieInfo) {
+      if (dir == null || location == null) {
+        return false;
+      }
+      for (int index = 0; index != movieInfo.size(); ++index) {
+        Optional<MovieAttribute> attribute
+                = movieInfo.getMovieAttribute(index);
+        if (!attribute.isPresent()) {
+          return false;
+        }
+        Optional<FrameCache> cache = open(attribute.get());
+        if (!cache.isPresent()) {
+          LOG.info("No valid frame cache for " + attribute.get().getFile()
+                  + ", decode all movies");
+          return false;
+        }
+        cache.get().close();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A index entry.
+   */
+  private static final class Entry {
+
+    /**
+     * The record type.
+     */
+    private final byte type;
+    /**
+     * The micro timestamp.
+     */
+    private final long timestamp;
+    /**
+     * The position of record.
+     */
+    private final long position;
+    /**
+     * The number of bytes.
+     */
+    private final int length;
+    /**
+     * The CRC32 of record.
+     */
+    private final long checksum;
+
+    /**
+     * @param type The record type
+     * @param timestamp The micro timestamp
+     * @param position The position of record
+     * @param length The number of bytes
+     * @param checksum The CRC32 of record
+     */
+    Entry(final byte type, final long timestamp, final long position,
+            final int length, final long checksum) {
+      this.type = type;
+      this.timestamp = timestamp;
+      this.position = position;
+      this.length = length;
+      this.checksum = checksum;
+    }
+  }
+}
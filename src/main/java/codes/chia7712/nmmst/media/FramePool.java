@@ -0,0 +1,260 @@
+package codes.chia7712.nmmst.media;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles the decoded images. The decoder takes a image from this pool and
+ * the presenter gives it back after the image has been painted, so the steady
+ * state of playing allocates no raster. The pool is bounded, a image released
+ * to a full pool is dropped for GC.
+ */
+public final class FramePool {
+
+  /**
+   * The pixel format of queued frames.
+   */
+  public enum Format {
+    /**
+     * The frames keep the BGR images, 3 bytes per pixel.
+     */
+    BGR,
+    /**
+     * The frames keep the planar YUV420 pixels, 1.5 bytes per pixel. The
+     * pixels are converted to BGR image when the frame is painted.
+     */
+    YUV420
+  }
+  /**
+   * The idle images.
+   */
+  private final BlockingQueue<BufferedImage> idle;
+  /**
+   * The idle images which are compatible with the screen.
+   */
+  private final BlockingQueue<BufferedImage> idleScreen;
+  /**
+   * The number of images got from the idle queue.
+   */
+  private final AtomicLong hitCount = new AtomicLong();
+  /**
+   * The number of images allocated because no suitable idle image.
+   */
+  private final AtomicLong missCount = new AtomicLong();
+  /**
+   * The number of images which are taken but not released.
+   */
+  private final AtomicLong outstanding = new AtomicLong();
+  /**
+   * Keeps the pixels of queued frames in direct memory. It is null if the
+   * frames are kept on heap.
+   */
+  private final DirectFrameArena arena;
+  /**
+   * The pixel format of queued frames.
+   */
+  private final Format format;
+  /**
+   * The idle YUV420 planes.
+   */
+  private final BlockingQueue<byte[]> idlePlanes;
+
+  /**
+   * Constructs a pool with specified capacity.
+   *
+   * @param capacity The max number of idle images
+   */
+  public FramePool(final int capacity) {
+    this(capacity, 0);
+  }
+
+  /**
+   * Constructs a pool with specified capacity and direct memory for queued
+   * frames.
+   *
+   * @param capacity The max number of idle images
+   * @param arenaSize The max bytes of direct memory. The zero or negative
+   * value keeps the frames on heap
+   */
+  public FramePool(final int capacity, final long arenaSize) {
+    this(capacity, arenaSize, Format.BGR);
+  }
+
+  /**
+   * Constructs a pool with specified capacity, direct memory for queued
+   * frames and pixel format.
+   *
+   * @param capacity The max number of idle images
+   * @param arenaSize The max bytes of direct memory. The zero or negative
+   * value keeps the frames on heap
+   * @param pixelFormat The pixel format of queued frames
+   */
+  public FramePool(final int capacity, final long arenaSize,
+          final Format pixelFormat) {
+    idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    idleScreen = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    arena = arenaSize > 0 ? new DirectFrameArena(arenaSize) : null;
+    format = pixelFormat;
+    idlePlanes = new ArrayBlockingQueue<>(Math.max(1, capacity));
+  }
+
+  /**
+   * @return The pixel format of queued frames
+   */
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * Retrieves a array for the YUV420 planes. A new array is allocated if
+   * there is no idle array or the idle array has different length.
+   *
+   * @param length Array length
+   * @return A array whose content may be dirty
+   */
+  byte[] takePlanes(final int length) {
+    outstanding.incrementAndGet();
+    byte[] planes = idlePlanes.poll();
+    if (planes != null && planes.length == length) {
+      hitCount.incrementAndGet();
+      return planes;
+    }
+    missCount.incrementAndGet();
+    return new byte[length];
+  }
+
+  /**
+   * Gives back a array got from {@link #takePlanes(int)}.
+   *
+   * @param planes The array to recycle
+   */
+  void releasePlanes(final byte[] planes) {
+    if (planes != null) {
+      outstanding.decrementAndGet();
+      idlePlanes.offer(planes);
+    }
+  }
+
+  /**
+   * @return The direct memory for queued frames, or null
+   */
+  DirectFrameArena getArena() {
+    return arena;
+  }
+
+  /**
+   * @return The bytes of direct memory which are used by queued frames
+   */
+  public long getOffHeapSize() {
+    return arena == null ? 0 : arena.getUsedSize();
+  }
+
+  /**
+   * Retrieves a BGR image with specified size. A new image is allocated if
+   * there is no idle image or the idle image has different size.
+   *
+   * @param width Image width
+   * @param height Image height
+   * @return A image whose raster may be dirty
+   */
+  public BufferedImage take(final int width, final int height) {
+    outstanding.incrementAndGet();
+    BufferedImage image = idle.poll();
+    if (image != null && image.getWidth() == width
+            && image.getHeight() == height) {
+      hitCount.incrementAndGet();
+      return image;
+    }
+    missCount.incrementAndGet();
+    return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+  }
+
+  /**
+   * Retrieves a image which is compatible with the screen. A new image is
+   * allocated if there is no idle image or the idle image has different size.
+   *
+   * @param width Image width
+   * @param height Image height
+   * @return A image whose raster may be dirty
+   */
+  public BufferedImage takeScreen(final int width, final int height) {
+    outstanding.incrementAndGet();
+    BufferedImage image = idleScreen.poll();
+    if (image != null && image.getWidth() == width
+            && image.getHeight() == height) {
+      hitCount.incrementAndGet();
+      return image;
+    }
+    missCount.incrementAndGet();
+    return createScreenImage(width, height);
+  }
+
+  /**
+   * Creates a opaque image in the format of default screen, so it is drawn
+   * without conversion. The RGB image is created in the headless
+   * environment.
+   *
+   * @param width Image width
+   * @param height Image height
+   * @return A new image
+   */
+  public static BufferedImage createScreenImage(final int width,
+          final int height) {
+    if (GraphicsEnvironment.isHeadless()) {
+      return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+    return GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration()
+            .createCompatibleImage(width, height);
+  }
+
+  /**
+   * Gives back a image got from {@link #take(int, int)} or
+   * {@link #takeScreen(int, int)}.
+   *
+   * @param image The image to recycle
+   */
+  public void release(final BufferedImage image) {
+    if (image != null) {
+      outstanding.decrementAndGet();
+      if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+        idle.offer(image);
+      } else {
+        idleScreen.offer(image);
+      }
+    }
+  }
+
+  /**
+   * Drops all idle images and planes.
+   */
+  public void clear() {
+    idle.clear();
+    idleScreen.clear();
+    idlePlanes.clear();
+  }
+
+  /**
+   * @return The number of images reused from this pool
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return The number of images allocated by this pool
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return The number of images which are not released
+   */
+  public long getOutstanding() {
+    return outstanding.get();
+  }
+}
@@ -0,0 +1,263 @@
+package codes.chia7712.nmmst.media;
+
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The timestamps of video keyframes in a movie. The index is built by reading
+ * all packets once, and then it is saved next to the movie. The saved index is
+ * rebuilt if the size or modified time of movie is changed.
+ */
+public final class KeyframeIndex {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(KeyframeIndex.class);
+  /**
+   * The suffix of index file.
+   */
+  public static final String SUFFIX = ".kfi";
+  /**
+   * Identifies the index file.
+   */
+  private static final int MAGIC = 0x4b464931;
+  /**
+   * Scales the timestamp to micro base.
+   */
+  private static final int TIME_SCALE = 1000 * 1000;
+  /**
+   * The size of movie file.
+   */
+  private final long fileSize;
+  /**
+   * The modified time of movie file.
+   */
+  private final long lastModified;
+  /**
+   * The keyframe timestamps in the time base of video stream. It is sorted.
+   */
+  private final long[] timestamps;
+  /**
+   * The keyframe timestamps in micro base. It is sorted.
+   */
+  private final long[] microtimes;
+
+  /**
+   * Loads the index of specified movie. The index is built and saved if the
+   * saved index doesn't exist or is out of date.
+   *
+   * @param movie The movie file
+   * @return The keyframe index
+   * @throws IOException If failed to read movie
+   */
+  public static KeyframeIndex of(final File movie) throws IOException {
+    File indexFile = getIndexFile(movie);
+    if (indexFile.exists()) {
+      try {
+        KeyframeIndex index = read(indexFile);
+        if (index.fileSize == movie.length()
+                && index.lastModified == movie.lastModified()) {
+          return index;
+        }
+        LOG.info("The keyframe index is out of date: " + indexFile);
+      } catch (IOException e) {
+        LOG.error("Failed to read the keyframe index: " + indexFile, e);
+      }
+    }
+    KeyframeIndex index = build(movie);
+    try {
+      index.write(indexFile);
+    } catch (IOException e) {
+      LOG.error("Failed to save the keyframe index: " + indexFile, e);
+    }
+    return index;
+  }
+
+  /**
+   * @param movie The movie file
+   * @return The index file next to the movie
+   */
+  public static File getIndexFile(final File movie) {
+    File absolute = movie.getAbsoluteFile();
+    return new File(absolute.getParentFile(), absolute.getName() + SUFFIX);
+  }
+
+  /**
+   * Builds the index by reading all packets of the movie.
+   *
+   * @param movie The movie file
+   * @return The keyframe index
+   * @throws IOException If failed to read movie
+   */
+  private static KeyframeIndex build(final File movie) throws IOException {
+    final long startTime = System.nanoTime();
+    IContainer container = IContainer.make();
+    if (container.open(movie.getAbsolutePath(),
+            IContainer.Type.READ, null) < 0) {
+      throw new IOException("Failed to open " + movie);
+    }
+    IPacket packet = IPacket.make();
+    try {
+      int videoStreamIndex = -1;
+      double timeBase = 0;
+      for (int i = 0; i != container.getNumStreams(); ++i) {
+        IStreamCoder coder = container.getStream(i).getStreamCoder();
+        if (coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+          videoStreamIndex = i;
+          timeBase = container.getStream(i).getTimeBase().getDouble();
+          break;
+        }
+      }
+      if (videoStreamIndex < 0) {
+        throw new IOException("No video stream in " + movie);
+      }
+      long[] timestamps = new long[0];
+      int count = 0;
+      while (container.readNextPacket(packet) >= 0) {
+        if (packet.getStreamIndex() == videoStreamIndex && packet.isKey()) {
+          if (count == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps,
+                    Math.max(16, timestamps.length * 2));
+          }
+          timestamps[count++] = packet.getTimeStamp();
+        }
+      }
+      timestamps = Arrays.copyOf(timestamps, count);
+      Arrays.sort(timestamps);
+      long[] microtimes = new long[count];
+      for (int i = 0; i != count; ++i) {
+        microtimes[i] = (long) (timestamps[i] * timeBase * TIME_SCALE);
+      }
+      LOG.info("Build the keyframe index of " + movie + ", keyframes:"
+              + count + ", elapsed(ms):"
+              + (System.nanoTime() - startTime) / 1000 / 1000);
+      return new KeyframeIndex(movie.length(), movie.lastModified(),
+              timestamps, microtimes);
+    } finally {
+      packet.delete();
+      container.close();
+    }
+  }
+
+  /**
+   * Reads the saved index.
+   *
+   * @param indexFile The index file
+   * @return The keyframe index
+   * @throws IOException If failed to read index file
+   */
+  private static KeyframeIndex read(final File indexFile) throws IOException {
+    try (DataInputStream input = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("Unknown format");
+      }
+      long fileSize = input.readLong();
+      long lastModified = input.readLong();
+      int count = input.readInt();
+      long[] timestamps = new long[count];
+      long[] microtimes = new long[count];
+      for (int i = 0; i != count; ++i) {
+        timestamps[i] = input.readLong();
+        microtimes[i] = input.readLong();
+      }
+      return new KeyframeIndex(fileSize, lastModified,
+              timestamps, microtimes);
+    }
+  }
+
+  /**
+   * Constructs a index.
+   *
+   * @param fileSize The size of movie file
+   * @param lastModified The modified time of movie file
+   * @param timestamps The keyframe timestamps in the time base of video stream
+   * @param microtimes The keyframe timestamps in micro base
+   */
+  private KeyframeIndex(final long fileSize, final long lastModified,
+          final long[] timestamps, final long[] microtimes) {
+    this.fileSize = fileSize;
+    this.lastModified = lastModified;
+    this.timestamps = timestamps;
+    this.microtimes = microtimes;
+  }
+
+  /**
+   * Saves this index.
+   *
+   * @param indexFile The index file
+   * @throws IOException If failed to write index file
+   */
+  private void write(final File indexFile) throws IOException {
+    try (DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+      output.writeInt(MAGIC);
+      output.writeLong(fileSize);
+      output.writeLong(lastModified);
+      output.writeInt(timestamps.length);
+      for (int i = 0; i != timestamps.length; ++i) {
+        output.writeLong(timestamps[i]);
+        output.writeLong(microtimes[i]);
+      }
+    }
+  }
+
+  /**
+   * Finds the last keyframe whose timestamp isn't bigger than the specified
+   * microtime.
+   *
+   * @param microtime The target microtime
+   * @return The position in this index, or -1 if no keyframe is before the
+   * microtime
+   */
+  private int floor(final long microtime) {
+    int pos = Arrays.binarySearch(microtimes, microtime);
+    return pos >= 0 ? pos : -pos - 2;
+  }
+
+  /**
+   * @param microtime The target microtime
+   * @return The timestamp of nearest keyframe before the microtime in the time
+   * base of video stream, or the first keyframe
+   */
+  long floorTimestamp(final long microtime) {
+    if (timestamps.length == 0) {
+      return 0;
+    }
+    return timestamps[Math.max(0, floor(microtime))];
+  }
+
+  /**
+   * @param microtime The target microtime
+   * @return The microtime of nearest keyframe before the microtime, or the
+   * first keyframe
+   */
+  public long floorMicrotime(final long microtime) {
+    if (microtimes.length == 0) {
+      return 0;
+    }
+    return microtimes[Math.max(0, floor(microtime))];
+  }
+
+  /**
+   * @return The number of keyframes
+   */
+  public int size() {
+    return timestamps.length;
+  }
+}
@@ -1,6 +1,10 @@
 package codes.chia7712.nmmst.media;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
+import javax.sound.sampled.AudioFormat;
+import codes.chia7712.nmmst.NodeInformation;
+import codes.chia7712.nmmst.NodeInformation.MediaRole;
 import codes.chia7712.nmmst.processor.FrameProcessor;
 import codes.chia7712.nmmst.threads.Closer;
 
@@ -48,6 +52,71 @@ public interface MediaWorker {
      * Initial image.
      */
     private BufferedImage initImage;
+    /**
+     * The number of converting workers.
+     */
+    private int decodeWorkerNumber = 0;
+    /**
+     * The number of frames decoded in advance for next movie.
+     */
+    private int lookaheadFrameNumber = 0;
+    /**
+     * The remaining microtime of current movie to start the lookahead.
+     */
+    private long lookaheadMicrotime = 0;
+    /**
+     * The number of frames decoded in advance for each selected movie.
+     */
+    private int branchFrameNumber = 0;
+    /**
+     * The remaining microtime of selectable movie to start the lookahead for
+     * selected movies.
+     */
+    private long branchMicrotime = 0;
+    /**
+     * The max bytes of frames and samples held by the lookahead.
+     */
+    private long lookaheadByteLimit = 0;
+    /**
+     * The media to decode and play.
+     */
+    private MediaRole role = MediaRole.FULL;
+    /**
+     * The directory of frame caches. It is null if the cache is disabled.
+     */
+    private File frameCacheDir = null;
+    /**
+     * The node location of frame caches.
+     */
+    private NodeInformation.Location frameCacheLocation = null;
+    /**
+     * The lateness to drop a frame.
+     */
+    private long dropMicrotime = 0;
+    /**
+     * The max bytes of compressed packets read ahead.
+     */
+    private long packetBufferSize = 0;
+    /**
+     * The microtime to spin before a frame is due.
+     */
+    private long clockSpinMicrotime = 0;
+    /**
+     * Indicates whether the video is presented by the audio clock.
+     */
+    private boolean avSync = false;
+    /**
+     * The length of audio line buffer.
+     */
+    private long speakerBufferMicrotime = 0;
+    /**
+     * The format of decoded samples and audio line.
+     */
+    private AudioFormat audioFormat = Speaker.DEFAULT_OUTPUT_FORMAT;
+    /**
+     * Provides the time shared by all nodes.
+     */
+    private ClusterClock clusterClock = ClusterClock.unsynced();
 
     /**
      * @param v The movie info to set
@@ -115,6 +184,153 @@ public interface MediaWorker {
       return this;
     }
 
+    /**
+     * @param v The number of converting workers to set. The zero or negative
+     * value means decoding by single thread
+     * @return Current builder
+     */
+    public Builder setDecodeWorkerNumber(final int v) {
+      decodeWorkerNumber = Math.max(0, v);
+      return this;
+    }
+
+    /**
+     * @param frameNumber The number of frames decoded in advance for next
+     * movie. The zero or negative value disables the lookahead
+     * @param microtime The remaining microtime of current movie to start the
+     * lookahead
+     * @return Current builder
+     */
+    public Builder setLookahead(final int frameNumber, final long microtime) {
+      lookaheadFrameNumber = Math.max(0, frameNumber);
+      lookaheadMicrotime = Math.max(0, microtime);
+      return this;
+    }
+
+    /**
+     * @param frameNumber The number of frames decoded in advance for each
+     * selected movie. The zero or negative value disables the lookahead for
+     * selected movies
+     * @param microtime The remaining microtime of selectable movie to start
+     * the lookahead for selected movies
+     * @return Current builder
+     */
+    public Builder setBranchLookahead(final int frameNumber,
+            final long microtime) {
+      branchFrameNumber = Math.max(0, frameNumber);
+      branchMicrotime = Math.max(0, microtime);
+      return this;
+    }
+
+    /**
+     * @param v The max bytes of frames and samples held by the lookahead of
+     * next and selected movies. The zero means no limit
+     * @return Current builder
+     */
+    public Builder setLookaheadByteLimit(final long v) {
+      lookaheadByteLimit = Math.max(0, v);
+      return this;
+    }
+
+    /**
+     * @param v The media role to set
+     * @return Current builder
+     */
+    public Builder setMediaRole(final MediaRole v) {
+      if (isValid(v)) {
+        role = v;
+      }
+      return this;
+    }
+
+    /**
+     * @param dir The directory of frame caches. The null or empty value
+     * disables the cache
+     * @param location The node location of frame caches
+     * @return Current builder
+     */
+    public Builder setFrameCache(final String dir,
+            final NodeInformation.Location location) {
+      if (dir == null || dir.trim().isEmpty() || location == null) {
+        frameCacheDir = null;
+        frameCacheLocation = null;
+      } else {
+        frameCacheDir = new File(dir.trim());
+        frameCacheLocation = location;
+      }
+      return this;
+    }
+
+    /**
+     * @param v The lateness to drop a frame. The zero or negative value
+     * disables the drop
+     * @return Current builder
+     */
+    public Builder setFrameDropMicrotime(final long v) {
+      dropMicrotime = Math.max(0, v);
+      return this;
+    }
+
+    /**
+     * @param v The max bytes of compressed packets read ahead by the decode
+     * pipeline. The zero or negative value bounds the packets by number
+     * @return Current builder
+     */
+    public Builder setPacketBufferSize(final long v) {
+      packetBufferSize = Math.max(0, v);
+      return this;
+    }
+
+    /**
+     * @param v The microtime to spin before a frame is due. The zero or
+     * negative value disables the spin
+     * @return Current builder
+     */
+    public Builder setClockSpinMicrotime(final long v) {
+      clockSpinMicrotime = Math.max(0, v);
+      return this;
+    }
+
+    /**
+     * @param v {@code true} if the video is presented by the clock of heard
+     * audio
+     * @return Current builder
+     */
+    public Builder setAvSync(final boolean v) {
+      avSync = v;
+      return this;
+    }
+
+    /**
+     * @param v The length of audio line buffer. The zero uses the default
+     * buffer of line
+     * @return Current builder
+     */
+    public Builder setSpeakerBufferMicrotime(final long v) {
+      speakerBufferMicrotime = Math.max(0, v);
+      return this;
+    }
+
+    /**
+     * @param v The format of decoded samples and audio line. The null value
+     * sets {@link Speaker#DEFAULT_OUTPUT_FORMAT}
+     * @return Current builder
+     */
+    public Builder setAudioFormat(final AudioFormat v) {
+      audioFormat = v == null ? Speaker.DEFAULT_OUTPUT_FORMAT : v;
+      return this;
+    }
+
+    /**
+     * @param v The clock to present the frames. The null value sets the local
+     * clock which isn't synchronized
+     * @return Current builder
+     */
+    public Builder setClusterClock(final ClusterClock v) {
+      clusterClock = v == null ? ClusterClock.unsynced() : v;
+      return this;
+    }
+
     /**
      * @return A instance of media worker
      */
@@ -131,7 +347,22 @@ public interface MediaWorker {
               closer,
               processor == null ? FrameProcessor.empty() : processor,
               panel,
-              initImage);
+              initImage,
+              decodeWorkerNumber,
+              new MovieOpener.Setting(lookaheadFrameNumber, lookaheadMicrotime,
+                      branchFrameNumber, branchMicrotime,
+                      lookaheadByteLimit),
+              role,
+              frameCacheDir == null ? FrameCache.Finder.DISABLED
+                      : new FrameCache.Finder(frameCacheDir,
+                              frameCacheLocation, audioFormat),
+              dropMicrotime,
+              packetBufferSize,
+              clockSpinMicrotime,
+              avSync,
+              speakerBufferMicrotime,
+              audioFormat,
+              clusterClock);
     }
 
     /**
@@ -179,6 +410,37 @@ public interface MediaWorker {
    */
   void setPause(boolean value);
 
+  /**
+   * Arms the start of show. The first frame is presented at specified time
+   * after the pause is released, and the audio waits for it too. The time is
+   * ignored if the cluster clock isn't synchronized or the time is too far
+   * away, so the show starts when the pause is released.
+   *
+   * @param clusterMicrotime The cluster time in microseconds
+   * @see ClusterClock
+   */
+  void scheduleStart(long clusterMicrotime);
+
+  /**
+   * Arms the start of next movie. The first frame of next movie is presented
+   * at specified time instead of following the last frame of current movie.
+   * The time is ignored if the cluster clock isn't synchronized or the time
+   * is too far away.
+   *
+   * @param clusterMicrotime The cluster time in microseconds
+   * @see ClusterClock
+   */
+  void scheduleNextMovie(long clusterMicrotime);
+
+  /**
+   * Moves the presentation clock for correcting the drift between nodes. The
+   * positive value holds the current frame, and the negative value drops the
+   * frames which become late. It is ignored if no frame is presented.
+   *
+   * @param microtime The microtime to move
+   */
+  void adjustClock(long microtime);
+
   /**
    * Stops this media work.
    */
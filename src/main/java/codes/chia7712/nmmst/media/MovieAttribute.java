@@ -24,7 +24,9 @@ public interface MovieAttribute {
   long getDuration();
 
   /**
-   * @return The audio format from this movie
+   * @return The audio format of movie file. The samples of a show are in
+   * the format of audio line instead
+   * @see Speaker#getOutputFormat(codes.chia7712.nmmst.NProperties)
    */
-  AudioFormat getAudioFormat();
+  AudioFormat getSourceAudioFormat();
 }
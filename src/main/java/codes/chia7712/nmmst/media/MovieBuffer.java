@@ -67,6 +67,78 @@ public interface MovieBuffer extends BufferMetrics {
    */
   boolean hadPause();
 
+  /**
+   * Retrieves the pool which recycles the images of frames in this buffer.
+   *
+   * @return Frame pool
+   */
+  FramePool getFramePool();
+
+  /**
+   * Retrieves the pool which recycles the audio data of samples in this
+   * buffer.
+   *
+   * @return Sample pool
+   */
+  SamplePool getSamplePool();
+
+  /**
+   * Counts a frame which is dropped by the presentation policy.
+   */
+  void countDroppedFrame();
+
+  /**
+   * Counts a frame which is painted.
+   *
+   * @param late {@code true} if the frame is painted behind the presentation
+   * clock
+   */
+  void countPaintedFrame(boolean late);
+
+  /**
+   * Updates the offset between the presented frame and the heard audio.
+   *
+   * @param microtime The frame timestamp minus the audio timestamp. The
+   * positive value means the video leads the audio
+   */
+  void updateAvOffset(long microtime);
+
+  /**
+   * Updates the cluster time when the timestamp zero of current movie is
+   * presented.
+   *
+   * @param microtime The cluster time in microseconds
+   */
+  void updateClusterOrigin(long microtime);
+
+  /**
+   * Updates the start error of a scheduled start, and then notifies the
+   * listeners.
+   *
+   * @param microtime The microtime between the scheduled time and the first
+   * presented frame
+   */
+  void updateStartError(long microtime);
+
+  /**
+   * Updates the number of audio underruns of current show.
+   *
+   * @param count The number of times the audio line ran out of data
+   */
+  void updateAudioUnderrun(long count);
+
+  /**
+   * Adds a listener for the watermark and movie index events.
+   *
+   * @param listener The listener to add
+   */
+  void addListener(BufferListener listener);
+
+  /**
+   * @param listener The listener to remove
+   */
+  void removeListener(BufferListener listener);
+
   /**
    * Removes all of the frames and samples from this collection The collection
    * will be empty after this method returns.
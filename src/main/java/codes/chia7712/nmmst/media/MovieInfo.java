@@ -2,11 +2,14 @@ package codes.chia7712.nmmst.media;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import javafx.util.Pair;
 import javax.sound.sampled.AudioFormat;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +40,10 @@ public final class MovieInfo {
    */
   private final Map<Integer, MovieAttributeClone> playOrder
           = new TreeMap();
+  /**
+   * The selectable movie index and it's selected indexes.
+   */
+  private final Map<Integer, Pair<Integer, Integer>> selectable;
 
   /**
    * Constructs the movie order for specifed file list getted from properties.
@@ -47,7 +54,11 @@ public final class MovieInfo {
    */
   public MovieInfo(final NProperties properties) throws IOException {
     this(properties.getStrings(NConstants.MOVIE_PATH),
-            properties.getIntegers(NConstants.MOVIE_ORDER));
+            properties.getIntegers(NConstants.MOVIE_ORDER),
+            NProperties.stringToSelectable(
+                    properties.getString(NConstants.MOVIE_SELECT)),
+            toCacheFile(properties.getString(
+                    NConstants.MOVIE_METADATA_CACHE)));
   }
 
   /**
@@ -61,11 +72,41 @@ public final class MovieInfo {
    */
   public MovieInfo(final List<String> movieFiles,
           final List<Integer> defaultPlayOrder) throws IOException {
-    for (int index = 0; index != movieFiles.size(); ++index) {
-      try (MovieStream stream = new MovieStream(
-              movieFiles.get(index), index)) {
-        movieMap.put(index, new MovieAttributeClone(stream));
-      }
+    this(movieFiles, defaultPlayOrder, Collections.emptyMap(), null);
+  }
+
+  /**
+   * @param path The path of metadata cache
+   * @return The cache file, or null if the path is empty
+   */
+  private static File toCacheFile(final String path) {
+    if (path == null || path.trim().isEmpty()) {
+      return null;
+    }
+    return new File(path.trim());
+  }
+
+  /**
+   * Constructs the movie order by cloning the file list and the selectable
+   * movies.
+   *
+   * @param movieFiles The source file
+   * @param defaultPlayOrder The play order
+   * @param movieSelectable The selectable movie index and it's selected indexes
+   * @param cacheFile The metadata cache, or null to disable the persistence
+   * @throws java.io.IOException If failed to open movie file
+   * @throws RuntimeException If the input is empty
+   */
+  private MovieInfo(final List<String> movieFiles,
+          final List<Integer> defaultPlayOrder,
+          final Map<Integer, Pair<Integer, Integer>> movieSelectable,
+          final File cacheFile) throws IOException {
+    selectable = new TreeMap<>(movieSelectable);
+    List<File> files = new ArrayList<>(movieFiles.size());
+    movieFiles.forEach(path -> files.add(new File(path)));
+    for (MovieAttribute attribute
+            : new MovieMetadataCache(cacheFile).getAll(files)) {
+      movieMap.put(attribute.getIndex(), new MovieAttributeClone(attribute));
     }
     for (Integer index : defaultPlayOrder) {
       if (!movieMap.containsKey(index)) {
@@ -114,6 +155,22 @@ public final class MovieInfo {
     return Optional.ofNullable(movieMap.get(index));
   }
 
+  /**
+   * Retrieves the movies which can be selected after the specified movie.
+   *
+   * @param index The movie index
+   * @return The selected movies, or a empty list if the movie isn't selectable
+   */
+  public List<MovieAttribute> getSelectedMovies(final int index) {
+    List<MovieAttribute> movies = new ArrayList<>(2);
+    Pair<Integer, Integer> selected = selectable.get(index);
+    if (selected != null) {
+      getMovieAttribute(selected.getKey()).ifPresent(movies::add);
+      getMovieAttribute(selected.getValue()).ifPresent(movies::add);
+    }
+    return movies;
+  }
+
   /**
    * Clones the movie order.
    *
@@ -187,6 +244,33 @@ public final class MovieInfo {
       }
     }
 
+    /**
+     * Retrieves the movie after the current movie. The result may be changed
+     * by {@link #setNextFlow(int)}.
+     *
+     * @return The next movie, or a empty optional if no more movie
+     */
+    public Optional<MovieAttribute> peekNext() {
+      synchronized (lock) {
+        return Optional.ofNullable(playOrder.get(nextOrder));
+      }
+    }
+
+    /**
+     * Retrieves the movies which can be selected after the current movie.
+     *
+     * @return The selected movies, or a empty list if the current movie isn't
+     * selectable
+     */
+    public List<MovieAttribute> peekSelectedMovies() {
+      synchronized (lock) {
+        if (attribute == null) {
+          return Collections.emptyList();
+        }
+        return mInfo.getSelectedMovies(attribute.getIndex());
+      }
+    }
+
     @Override
     public boolean hasNext() {
       synchronized (lock) {
@@ -244,13 +328,13 @@ public final class MovieInfo {
       index = attribute.getIndex();
       duration = attribute.getDuration();
       audioFormat = new AudioFormat(
-              attribute.getAudioFormat().getEncoding(),
-              attribute.getAudioFormat().getSampleRate(),
-              attribute.getAudioFormat().getSampleSizeInBits(),
-              attribute.getAudioFormat().getChannels(),
-              attribute.getAudioFormat().getFrameSize(),
-              attribute.getAudioFormat().getFrameRate(),
-              attribute.getAudioFormat().isBigEndian()
+              attribute.getSourceAudioFormat().getEncoding(),
+              attribute.getSourceAudioFormat().getSampleRate(),
+              attribute.getSourceAudioFormat().getSampleSizeInBits(),
+              attribute.getSourceAudioFormat().getChannels(),
+              attribute.getSourceAudioFormat().getFrameSize(),
+              attribute.getSourceAudioFormat().getFrameRate(),
+              attribute.getSourceAudioFormat().isBigEndian()
       );
     }
 
@@ -270,7 +354,7 @@ public final class MovieInfo {
     }
 
     @Override
-    public AudioFormat getAudioFormat() {
+    public AudioFormat getSourceAudioFormat() {
       return audioFormat;
     }
   }
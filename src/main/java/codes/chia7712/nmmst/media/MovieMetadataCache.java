@@ -0,0 +1,308 @@
+package codes.chia7712.nmmst.media;
+
+import com.xuggle.xuggler.IAudioSamples;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IStream;
+import com.xuggle.xuggler.IStreamCoder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sound.sampled.AudioFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Caches the duration and audio format of movies in a file. The entry is
+ * keyed by the movie path, and it is valid only if the movie size and
+ * modified time are unchanged. The uncached movies are probed in parallel by
+ * reading the stream headers without opening the codecs.
+ */
+final class MovieMetadataCache {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(MovieMetadataCache.class);
+  /**
+   * Scales the timestamp to micro base.
+   */
+  private static final int TIME_SCALE = 1000 * 1000;
+  /**
+   * Splits the fields of entry.
+   */
+  private static final String DIVIDER = ",";
+  /**
+   * The cache file. It is null if the cache isn't persisted.
+   */
+  private final File cacheFile;
+  /**
+   * Key is the absolute movie path, and value is the serialized metadata.
+   */
+  private final Properties entries = new Properties();
+
+  /**
+   * Loads the cache file.
+   *
+   * @param cacheFile The cache file, or null to disable the persistence
+   */
+  MovieMetadataCache(final File cacheFile) {
+    this.cacheFile = cacheFile;
+    if (cacheFile != null && cacheFile.exists()) {
+      try (InputStream input = new FileInputStream(cacheFile)) {
+        entries.load(input);
+      } catch (IOException | IllegalArgumentException e) {
+        LOG.error("Failed to load the movie metadata cache: " + cacheFile, e);
+        entries.clear();
+      }
+    }
+  }
+
+  /**
+   * Retrieves the metadata of all movies. The uncached movies are probed in
+   * parallel and then saved to the cache file.
+   *
+   * @param movies The movie files
+   * @return The movie attributes whose index is the position in the list
+   * @throws IOException If failed to probe any movie
+   */
+  List<MovieAttribute> getAll(final List<File> movies) throws IOException {
+    final long startTime = System.nanoTime();
+    Map<Integer, MovieAttribute> attributes = new TreeMap<>();
+    List<Integer> uncached = new ArrayList<>();
+    for (int index = 0; index != movies.size(); ++index) {
+      MovieAttribute attribute = get(movies.get(index), index);
+      if (attribute == null) {
+        uncached.add(index);
+      } else {
+        attributes.put(index, attribute);
+      }
+    }
+    if (!uncached.isEmpty()) {
+      ExecutorService service = Executors.newFixedThreadPool(Math.min(
+              uncached.size(), Runtime.getRuntime().availableProcessors()));
+      try {
+        Map<Integer, Future<MovieAttribute>> probes = new TreeMap<>();
+        for (Integer index : uncached) {
+          probes.put(index, service.submit(
+                  () -> probe(movies.get(index), index)));
+        }
+        for (Map.Entry<Integer, Future<MovieAttribute>> entry
+                : probes.entrySet()) {
+          MovieAttribute attribute = entry.getValue().get();
+          attributes.put(entry.getKey(), attribute);
+          put(attribute);
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      } finally {
+        service.shutdownNow();
+      }
+      save();
+    }
+    LOG.info("Load the metadata of " + movies.size() + " movies, cached:"
+            + (movies.size() - uncached.size()) + ", elapsed(ms):"
+            + (System.nanoTime() - startTime) / 1000 / 1000);
+    return new ArrayList<>(attributes.values());
+  }
+
+  /**
+   * Retrieves the cached metadata.
+   *
+   * @param movie The movie file
+   * @param index The movie index
+   * @return The movie attribute, or null if the cache is missed or out of
+   * date
+   */
+  private MovieAttribute get(final File movie, final int index) {
+    File file = movie.getAbsoluteFile();
+    String value = entries.getProperty(file.getPath());
+    if (value == null) {
+      return null;
+    }
+    try {
+      String[] args = value.split(DIVIDER);
+      int i = 0;
+      if (Long.valueOf(args[i++]) != file.length()
+              || Long.valueOf(args[i++]) != file.lastModified()) {
+        return null;
+      }
+      long duration = Long.valueOf(args[i++]);
+      AudioFormat format = new AudioFormat(
+              new AudioFormat.Encoding(args[i++]),
+              Float.valueOf(args[i++]),
+              Integer.valueOf(args[i++]),
+              Integer.valueOf(args[i++]),
+              Integer.valueOf(args[i++]),
+              Float.valueOf(args[i++]),
+              Boolean.valueOf(args[i++]));
+      return new CachedAttribute(file, index, duration, format);
+    } catch (RuntimeException e) {
+      LOG.error("Invalid movie metadata: " + value, e);
+      return null;
+    }
+  }
+
+  /**
+   * Caches the metadata.
+   *
+   * @param attribute The movie attribute
+   */
+  private void put(final MovieAttribute attribute) {
+    File file = attribute.getFile().getAbsoluteFile();
+    AudioFormat format = attribute.getSourceAudioFormat();
+    entries.setProperty(file.getPath(), String.join(DIVIDER,
+            String.valueOf(file.length()),
+            String.valueOf(file.lastModified()),
+            String.valueOf(attribute.getDuration()),
+            format.getEncoding().toString(),
+            String.valueOf(format.getSampleRate()),
+            String.valueOf(format.getSampleSizeInBits()),
+            String.valueOf(format.getChannels()),
+            String.valueOf(format.getFrameSize()),
+            String.valueOf(format.getFrameRate()),
+            String.valueOf(format.isBigEndian())));
+  }
+
+  /**
+   * Saves the cache file. The failure is logged only.
+   */
+  private void save() {
+    if (cacheFile == null) {
+      return;
+    }
+    try (OutputStream output = new FileOutputStream(cacheFile)) {
+      entries.store(output, "movie metadata");
+    } catch (IOException e) {
+      LOG.error("Failed to save the movie metadata cache: " + cacheFile, e);
+    }
+  }
+
+  /**
+   * Reads the duration and audio format from the stream headers. The codecs
+   * aren't opened.
+   *
+   * @param movie The movie file
+   * @param index The movie index
+   * @return The movie attribute
+   * @throws IOException If failed to open movie or no video or audio stream
+   */
+  private static MovieAttribute probe(final File movie, final int index)
+          throws IOException {
+    IContainer container = IContainer.make();
+    if (container.open(movie.getAbsolutePath(),
+            IContainer.Type.READ, null) < 0) {
+      throw new IOException("Failed to open " + movie);
+    }
+    try {
+      IStream video = null;
+      IStreamCoder audio = null;
+      for (int i = 0; i != container.getNumStreams(); ++i) {
+        IStream stream = container.getStream(i);
+        switch (stream.getStreamCoder().getCodecType()) {
+          case CODEC_TYPE_VIDEO:
+            if (video == null) {
+              video = stream;
+            }
+            break;
+          case CODEC_TYPE_AUDIO:
+            if (audio == null) {
+              audio = stream.getStreamCoder();
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      if (video == null || audio == null) {
+        throw new IOException("No video or audio stream in " + movie);
+      }
+      long duration = (long) (video.getTimeBase().getDouble()
+              * video.getDuration() * TIME_SCALE);
+      AudioFormat format = new AudioFormat(
+              audio.getSampleRate(),
+              (int) IAudioSamples.findSampleBitDepth(audio.getSampleFormat()),
+              audio.getChannels(),
+              true,
+              false);
+      return new CachedAttribute(movie.getAbsoluteFile(), index,
+              duration, format);
+    } finally {
+      container.close();
+    }
+  }
+
+  /**
+   * A movie attribute restored from cache.
+   */
+  private static final class CachedAttribute implements MovieAttribute {
+
+    /**
+     * Movie file.
+     */
+    private final File file;
+    /**
+     * Movie index.
+     */
+    private final int index;
+    /**
+     * Movie duration.
+     */
+    private final long duration;
+    /**
+     * Movie audio format.
+     */
+    private final AudioFormat audioFormat;
+
+    /**
+     * @param file Movie file
+     * @param index Movie index
+     * @param duration Movie duration
+     * @param audioFormat Movie audio format
+     */
+    CachedAttribute(final File file, final int index, final long duration,
+            final AudioFormat audioFormat) {
+      this.file = file;
+      this.index = index;
+      this.duration = duration;
+      this.audioFormat = audioFormat;
+    }
+
+    @Override
+    public File getFile() {
+      return file;
+    }
+
+    @Override
+    public int getIndex() {
+      return index;
+    }
+
+    @Override
+    public long getDuration() {
+      return duration;
+    }
+
+    @Override
+    public AudioFormat getSourceAudioFormat() {
+      return audioFormat;
+    }
+  }
+}
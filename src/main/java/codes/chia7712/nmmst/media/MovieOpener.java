@@ -0,0 +1,546 @@
+package codes.chia7712.nmmst.media;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NodeInformation.MediaRole;
+import codes.chia7712.nmmst.threads.AtomicCloser;
+
+/**
+ * Opens the movies of a play flow. When the current movie is going to end,
+ * the next movie is opened and the first frames and samples are decoded in the
+ * background. So the next movie can be spliced into the buffer without the
+ * stall of opening container and codecs. If the current movie is selectable,
+ * both selected movies are decoded in advance and the unselected one is
+ * discarded after {@link #select(int)}. The bytes of frames and samples
+ * decoded in advance are bounded by the byte limit of setting, because they
+ * aren't counted by the movie buffer until the movie is opened. The remaining
+ * time of current movie is measured at the presented frame, because the
+ * reader runs ahead of the panel by the buffered packets and frames. Except
+ * for {@link #select(int)}, it should be used by the reading thread only.
+ */
+final class MovieOpener implements Closeable {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(MovieOpener.class);
+  /**
+   * The max number of movies decoded in advance concurrently.
+   */
+  private static final int THREAD_NUMBER = 2;
+  /**
+   * No movie is selected.
+   */
+  private static final int NO_SELECTED = -1;
+  /**
+   * A closer is used to stop the lookahead.
+   */
+  private final AtomicCloser closer;
+  /**
+   * A play flow provides the next movie.
+   */
+  private final MovieInfo.PlayFlow playFlow;
+  /**
+   * Recycles the images.
+   */
+  private final FramePool pool;
+  /**
+   * Recycles the audio data.
+   */
+  private final SamplePool samplePool;
+  /**
+   * The lookahead setting.
+   */
+  private final Setting setting;
+  /**
+   * The media to decode.
+   */
+  private final MediaRole role;
+  /**
+   * The format of decoded samples.
+   */
+  private final AudioFormat audioFormat;
+  /**
+   * Provides the presented frame. It is empty if no frame is presented, and
+   * then the progress is measured at the read packet.
+   */
+  private final Optional<BufferMetrics> presented;
+  /**
+   * Runs the lookahead. It is null if the lookahead is disabled.
+   */
+  private final ExecutorService service;
+  /**
+   * The lookahead for next movies. Key is the movie index.
+   */
+  private final Map<Integer, Prefetch> pending = new ConcurrentHashMap<>();
+  /**
+   * The unselected lookahead which should be discarded by reading thread.
+   */
+  private final Queue<Prefetch> unselected = new ConcurrentLinkedQueue<>();
+  /**
+   * The bytes of frames and samples held by all lookahead.
+   */
+  private final AtomicLong pendingBytes = new AtomicLong();
+  /**
+   * The selected movie index for current movie.
+   */
+  private volatile int selected = NO_SELECTED;
+  /**
+   * Indicates whether the lookahead for next movie can be started.
+   */
+  private boolean armed = false;
+  /**
+   * Indicates whether the lookahead for selected movies can be started.
+   */
+  private boolean branchArmed = false;
+
+  /**
+   * Constructs a opener for the play flow.
+   *
+   * @param closer Close
+   * @param playFlow The play order
+   * @param pool The pool to take images, or null
+   * @param samplePool The pool to take audio data, or null
+   * @param setting The lookahead setting
+   * @param role The media to decode
+   * @param audioFormat The format of decoded samples
+   * @param presented Provides the presented frame, or empty if no frame is
+   * presented
+   */
+  MovieOpener(final AtomicCloser closer, final MovieInfo.PlayFlow playFlow,
+          final FramePool pool, final SamplePool samplePool,
+          final Setting setting, final MediaRole role,
+          final AudioFormat audioFormat,
+          final Optional<BufferMetrics> presented) {
+    this.presented = presented;
+    this.samplePool = samplePool;
+    this.role = role;
+    this.audioFormat = audioFormat;
+    this.closer = closer;
+    this.playFlow = playFlow;
+    this.pool = pool;
+    this.setting = setting;
+    this.service = setting.isEnabled()
+            ? Executors.newFixedThreadPool(THREAD_NUMBER) : null;
+  }
+
+  /**
+   * Opens the movie. The lookahead is used if it was prepared for the same
+   * movie, otherwise the movie is opened now. Other lookahead are discarded.
+   *
+   * @param attribute The movie to open
+   * @return The opened movie
+   * @throws IOException If failed to open movie
+   * @throws InterruptedException If interrupted while waiting lookahead
+   */
+  Prefetch open(final MovieAttribute attribute)
+          throws IOException, InterruptedException {
+    Prefetch prefetch = pending.remove(attribute.getIndex());
+    discardAll();
+    selected = NO_SELECTED;
+    armed = true;
+    branchArmed = true;
+    if (prefetch != null) {
+      return prefetch.await();
+    }
+    Prefetch opened = new Prefetch(attribute, 0);
+    opened.run();
+    return opened.await();
+  }
+
+  /**
+   * Updates the progress of current movie. The lookahead for selected movies
+   * starts if the presented frame enters the selectable period, and the
+   * lookahead for next movie starts if the presented frame is going to reach
+   * the end of current movie.
+   *
+   * @param current The current movie
+   * @param microtime The timestamp of current packet
+   * @throws InterruptedException If interrupted while discarding lookahead
+   */
+  void onProgress(final MovieAttribute current, final long microtime)
+          throws InterruptedException {
+    discardUnselected();
+    if (service == null) {
+      return;
+    }
+    final long remaining = current.getDuration()
+            - getPresentedTimestamp(current, microtime);
+    if (branchArmed && setting.branchFrameNumber > 0
+            && remaining <= setting.branchMicrotime) {
+      branchArmed = false;
+      playFlow.peekSelectedMovies().forEach(movie
+              -> prefetch(movie, setting.branchFrameNumber));
+    }
+    if (armed && setting.frameNumber > 0
+            && remaining <= setting.microtime) {
+      armed = false;
+      playFlow.peekNext().ifPresent(movie
+              -> prefetch(movie, setting.frameNumber));
+    }
+  }
+
+  /**
+   * Retrieves the timestamp of presented frame in current movie. It is zero
+   * if the panel is still presenting the previous movie.
+   *
+   * @param current The current movie
+   * @param readMicrotime The timestamp of current packet. It is used if no
+   * frame is presented
+   * @return The presented timestamp
+   */
+  private long getPresentedTimestamp(final MovieAttribute current,
+          final long readMicrotime) {
+    if (!presented.isPresent()) {
+      return readMicrotime;
+    }
+    BufferMetrics metrics = presented.get();
+    if (metrics.getCurrentMovieIndex() != current.getIndex()) {
+      return 0;
+    }
+    return metrics.getCurrentTimestamp();
+  }
+
+  /**
+   * Notifies the selected movie. The lookahead of other movies will be
+   * discarded. It is thread-safe.
+   *
+   * @param index The selected movie index
+   */
+  void select(final int index) {
+    selected = index;
+    pending.keySet().stream()
+            .filter(key -> key != index)
+            .forEach(key -> {
+              Prefetch prefetch = pending.remove(key);
+              if (prefetch != null) {
+                LOG.info("Discard the lookahead of " + key
+                        + ", the selected movie is " + index);
+                prefetch.cancelled = true;
+                unselected.add(prefetch);
+              }
+            });
+  }
+
+  /**
+   * Starts the lookahead for the movie if it isn't started and isn't
+   * unselected.
+   *
+   * @param movie The movie to decode in advance
+   * @param frameNumber The number of frames to decode
+   */
+  private void prefetch(final MovieAttribute movie, final int frameNumber) {
+    final int index = movie.getIndex();
+    final int current = selected;
+    if ((current != NO_SELECTED && current != index)
+            || pending.containsKey(index)) {
+      return;
+    }
+    Prefetch prefetch = new Prefetch(movie, frameNumber);
+    pending.put(index, prefetch);
+    service.execute(prefetch);
+  }
+
+  /**
+   * Discards the unselected lookahead.
+   *
+   * @throws InterruptedException If interrupted while waiting lookahead
+   */
+  private void discardUnselected() throws InterruptedException {
+    Prefetch prefetch;
+    while ((prefetch = unselected.poll()) != null) {
+      prefetch.discard();
+    }
+  }
+
+  /**
+   * Discards all lookahead.
+   *
+   * @throws InterruptedException If interrupted while waiting lookahead
+   */
+  private void discardAll() throws InterruptedException {
+    for (Integer index : pending.keySet()) {
+      Prefetch prefetch = pending.remove(index);
+      if (prefetch != null) {
+        LOG.info("Discard the lookahead of " + index);
+        prefetch.cancelled = true;
+        unselected.add(prefetch);
+      }
+    }
+    discardUnselected();
+  }
+
+  @Override
+  public void close() {
+    try {
+      discardAll();
+    } catch (InterruptedException e) {
+      LOG.error(e);
+    }
+    if (service != null) {
+      service.shutdownNow();
+    }
+  }
+
+  /**
+   * The setting of lookahead.
+   */
+  static final class Setting {
+
+    /**
+     * Disables the lookahead.
+     */
+    static final Setting DISABLED = new Setting(0, 0, 0, 0, 0);
+    /**
+     * The number of frames decoded in advance for next movie.
+     */
+    private final int frameNumber;
+    /**
+     * The remaining microtime of presented movie to start the lookahead for
+     * next movie.
+     */
+    private final long microtime;
+    /**
+     * The number of frames decoded in advance for each selected movie.
+     */
+    private final int branchFrameNumber;
+    /**
+     * The remaining microtime of presented movie to start the lookahead for
+     * selected movies.
+     */
+    private final long branchMicrotime;
+    /**
+     * The max bytes of frames and samples held by all lookahead.
+     */
+    private final long byteLimit;
+
+    /**
+     * @param frameNumber The number of frames decoded in advance for next
+     * movie. The zero disables the lookahead for next movie
+     * @param microtime The remaining microtime to start the lookahead for next
+     * movie
+     * @param branchFrameNumber The number of frames decoded in advance for
+     * each selected movie. The zero disables the lookahead for selected movies
+     * @param branchMicrotime The remaining microtime to start the lookahead for
+     * selected movies
+     * @param byteLimit The max bytes of frames and samples held by all
+     * lookahead. The zero or negative value means no limit
+     */
+    Setting(final int frameNumber, final long microtime,
+            final int branchFrameNumber, final long branchMicrotime,
+            final long byteLimit) {
+      this.frameNumber = Math.max(0, frameNumber);
+      this.microtime = Math.max(0, microtime);
+      this.branchFrameNumber = Math.max(0, branchFrameNumber);
+      this.branchMicrotime = Math.max(0, branchMicrotime);
+      this.byteLimit = byteLimit > 0 ? byteLimit : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return {@code true} if any lookahead is enabled
+     */
+    boolean isEnabled() {
+      return frameNumber > 0 || branchFrameNumber > 0;
+    }
+  }
+
+  /**
+   * A opened movie with the frames and samples decoded in advance.
+   */
+  final class Prefetch implements Runnable {
+
+    /**
+     * The movie to open.
+     */
+    private final MovieAttribute attribute;
+    /**
+     * The number of frames to decode. The samples are counted if the video
+     * isn't decoded.
+     */
+    private final int number;
+    /**
+     * The decoded frames.
+     */
+    private final List<Frame> frames = new LinkedList<>();
+    /**
+     * The decoded samples.
+     */
+    private final List<Sample> samples = new LinkedList<>();
+    /**
+     * Counts down after the decode is done.
+     */
+    private final CountDownLatch done = new CountDownLatch(1);
+    /**
+     * Stops the decode.
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * The opened stream.
+     */
+    private MovieStream stream;
+    /**
+     * Indicates whether the stream is end.
+     */
+    private boolean eof = false;
+    /**
+     * The error of opening the stream.
+     */
+    private IOException error;
+    /**
+     * The bytes of decoded frames and samples which are counted by
+     * {@link #pendingBytes}.
+     */
+    private long bytes = 0;
+
+    /**
+     * @param attribute The movie to open
+     * @param number The number of frames to decode
+     */
+    private Prefetch(final MovieAttribute attribute, final int number) {
+      this.attribute = attribute;
+      this.number = number;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (cancelled) {
+          return;
+        }
+        stream = new MovieStream(attribute.getFile(), attribute.getIndex(),
+                pool, samplePool, role, audioFormat);
+        while (!eof && decodedNumber() < number && !cancelled
+                && !closer.isClosed()
+                && pendingBytes.get() < setting.byteLimit) {
+          switch (stream.readNextType()) {
+            case VIDEO:
+              stream.getFrame().ifPresent(frame -> {
+                frames.add(frame);
+                count(frame.getHeapSize());
+              });
+              break;
+            case AUDIO:
+              stream.getSample().ifPresent(sample -> {
+                samples.add(sample);
+                count(sample.getHeapSize());
+              });
+              break;
+            default:
+              eof = true;
+              break;
+          }
+        }
+      } catch (IOException e) {
+        error = e;
+      } finally {
+        done.countDown();
+      }
+    }
+
+    /**
+     * Counts the decoded bytes in the lookahead.
+     *
+     * @param size The bytes of a decoded frame or sample
+     */
+    private void count(final long size) {
+      bytes += size;
+      pendingBytes.addAndGet(size);
+    }
+
+    /**
+     * Stops counting the decoded bytes in the lookahead. It is called after
+     * the decode is done, and the bytes are counted by the movie buffer
+     * later.
+     */
+    private void handOver() {
+      pendingBytes.addAndGet(-bytes);
+      bytes = 0;
+    }
+
+    /**
+     * @return The number of decoded frames, or the number of decoded samples
+     * if the video isn't decoded
+     */
+    private int decodedNumber() {
+      return role.hasVideo() ? frames.size() : samples.size();
+    }
+
+    /**
+     * Waits for the decode, and then hands over the decoded bytes to the
+     * movie buffer.
+     *
+     * @return This prefetch
+     * @throws IOException If failed to open movie
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private Prefetch await() throws IOException, InterruptedException {
+      done.await();
+      handOver();
+      if (error != null) {
+        throw error;
+      }
+      return this;
+    }
+
+    /**
+     * Stops the decode, and then releases the frames and closes the stream.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void discard() throws InterruptedException {
+      cancelled = true;
+      done.await();
+      handOver();
+      frames.forEach(Frame::release);
+      frames.clear();
+      samples.forEach(Sample::release);
+      samples.clear();
+      if (stream != null) {
+        stream.close();
+      }
+    }
+
+    /**
+     * @return The opened stream. The next packet follows the decoded frames
+     */
+    MovieStream getStream() {
+      return stream;
+    }
+
+    /**
+     * @return The frames decoded in advance
+     */
+    List<Frame> getFrames() {
+      return frames;
+    }
+
+    /**
+     * @return The samples decoded in advance
+     */
+    List<Sample> getSamples() {
+      return samples;
+    }
+
+    /**
+     * @return {@code true} if the stream has no more packet
+     */
+    boolean isEof() {
+      return eof;
+    }
+  }
+}
@@ -1,13 +1,13 @@
 package codes.chia7712.nmmst.media;
 
+import com.xuggle.ferry.IBuffer;
+import com.xuggle.xuggler.IAudioResampler;
 import com.xuggle.xuggler.IAudioSamples;
 import com.xuggle.xuggler.IContainer;
 import com.xuggle.xuggler.IPacket;
 import com.xuggle.xuggler.IStream;
 import com.xuggle.xuggler.IStreamCoder;
 import com.xuggle.xuggler.IVideoPicture;
-import com.xuggle.xuggler.video.ConverterFactory;
-import com.xuggle.xuggler.video.IConverter;
 import java.awt.image.BufferedImage;
 import java.io.Closeable;
 import java.io.File;
@@ -16,7 +16,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import javax.sound.sampled.AudioFormat;
-import codes.chia7712.nmmst.utils.Painter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NodeInformation.MediaRole;
 
 /**
  * Decodes the audio and video from a movie file.
@@ -44,6 +46,11 @@ public final class MovieStream implements MovieAttribute, Closeable {
      */
     EOF
   };
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(MovieStream.class);
   /**
    * Scales the timestamp to micro base.
    */
@@ -61,13 +68,53 @@ public final class MovieStream implements MovieAttribute, Closeable {
    */
   private final Map<Integer, IStreamCoder> openedCoders;
   /**
-   * Image converter.
+   * Converts the decoded picture to BGR image.
+   */
+  private final PictureConverter converter;
+  /**
+   * Converts the decoded picture to scaled BGR image. It is created by the
+   * first scaled frame.
    */
-  private final IConverter converter;
+  private PictureConverter scaledConverter;
+  /**
+   * The scale of {@link #scaledConverter}.
+   */
+  private double scaledFactor = -1;
   /**
    * Video data.
    */
   private final IVideoPicture picture;
+  /**
+   * Recycles the images. It may be null.
+   */
+  private final FramePool pool;
+  /**
+   * Recycles the audio data. It may be null.
+   */
+  private final SamplePool samplePool;
+  /**
+   * Audio data reused for decoding the audio packets. It is null before the
+   * first audio packet.
+   */
+  private IAudioSamples audioSamples;
+  /**
+   * The number of samples which {@link #audioSamples} can hold.
+   */
+  private int audioSamplesCapacity = 0;
+  /**
+   * Converts the decoded audio to {@link #outputFormat}. It is null if the
+   * audio isn't read or it is in the output format already.
+   */
+  private final IAudioResampler resampler;
+  /**
+   * Audio data reused for the converted audio. It is null before the first
+   * conversion.
+   */
+  private IAudioSamples resampledSamples;
+  /**
+   * The media to read. The packets of other media are skipped.
+   */
+  private final MediaRole role;
   /**
    * Index of video stream in movie.
    */
@@ -81,9 +128,14 @@ public final class MovieStream implements MovieAttribute, Closeable {
    */
   private final long duration;
   /**
-   * Audio format of movie.
+   * Audio format of movie file. The decoded audio is converted to
+   * {@link #outputFormat}.
    */
   private final AudioFormat audioFormat;
+  /**
+   * Audio format of the samples got from this stream.
+   */
+  private final AudioFormat outputFormat;
   /**
    * Index of this movie.
    */
@@ -92,6 +144,18 @@ public final class MovieStream implements MovieAttribute, Closeable {
    * Local movie file.
    */
   private final File file;
+  /**
+   * The keyframe index. It is loaded by the first seek.
+   */
+  private KeyframeIndex keyframeIndex;
+  /**
+   * The microtime elapsed by last seek.
+   */
+  private long lastSeekLatency = -1;
+  /**
+   * The number of frames decoded by last seek.
+   */
+  private int lastSeekDecodedFrames = 0;
 
   /**
    * Opens the audio and video coders.
@@ -160,8 +224,84 @@ public final class MovieStream implements MovieAttribute, Closeable {
    */
   public MovieStream(final File file,
           final int index) throws IOException {
+    this(file, index, null);
+  }
+
+  /**
+   * Constructs a movie stream for local file and specified index. The decoded
+   * frames are written into the images taken from the specified pool.
+   *
+   * @param file The local file
+   * @param index Movie index
+   * @param framePool The pool to take images, or null
+   * @throws IOException If failed to open movie file
+   */
+  public MovieStream(final File file,
+          final int index, final FramePool framePool) throws IOException {
+    this(file, index, framePool, MediaRole.FULL);
+  }
+
+  /**
+   * Constructs a movie stream for local file and specified index. The packets
+   * of media which isn't played by the role are skipped by
+   * {@link #readNextType()}.
+   *
+   * @param file The local file
+   * @param index Movie index
+   * @param framePool The pool to take images, or null
+   * @param mediaRole The media to read
+   * @throws IOException If failed to open movie file
+   */
+  public MovieStream(final File file, final int index,
+          final FramePool framePool, final MediaRole mediaRole)
+          throws IOException {
+    this(file, index, framePool, null, mediaRole);
+  }
+
+  /**
+   * Constructs a movie stream for local file and specified index. The decoded
+   * frames and samples are written into the images and arrays taken from the
+   * specified pools.
+   *
+   * @param file The local file
+   * @param index Movie index
+   * @param framePool The pool to take images, or null
+   * @param samplePool The pool to take audio data, or null
+   * @param mediaRole The media to read
+   * @throws IOException If failed to open movie file
+   */
+  public MovieStream(final File file, final int index,
+          final FramePool framePool, final SamplePool samplePool,
+          final MediaRole mediaRole) throws IOException {
+    this(file, index, framePool, samplePool, mediaRole,
+            Speaker.DEFAULT_OUTPUT_FORMAT);
+  }
+
+  /**
+   * Constructs a movie stream for local file and specified index. The decoded
+   * frames and samples are written into the images and arrays taken from the
+   * specified pools, and the audio is converted to the output format.
+   *
+   * @param file The local file
+   * @param index Movie index
+   * @param framePool The pool to take images, or null
+   * @param samplePool The pool to take audio data, or null
+   * @param mediaRole The media to read
+   * @param audioOutputFormat The 16-bit signed little-endian format of
+   * samples
+   * @throws IOException If failed to open movie file
+   * @see Speaker#getOutputFormat(codes.chia7712.nmmst.NProperties)
+   */
+  public MovieStream(final File file, final int index,
+          final FramePool framePool, final SamplePool samplePool,
+          final MediaRole mediaRole, final AudioFormat audioOutputFormat)
+          throws IOException {
     this.index = index;
+    this.outputFormat = audioOutputFormat;
+    this.samplePool = samplePool;
+    this.role = mediaRole;
     this.file = file;
+    this.pool = framePool;
     container = newIContainer(file.getAbsolutePath());
     openedCoders = newOpenedCoders(container);
     if (openedCoders.get(0).getCodecType()
@@ -192,12 +332,13 @@ public final class MovieStream implements MovieAttribute, Closeable {
             coder.getPixelType(),
             coder.getWidth(),
             coder.getHeight());
-    converter = ConverterFactory.createConverter(new BufferedImage(
-            coder.getWidth(),
-            coder.getHeight(),
-            BufferedImage.TYPE_3BYTE_BGR),
-            picture.getPixelType());
-
+    try {
+      converter = newConverter();
+      resampler = newResampler();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
   }
 
   /**
@@ -219,10 +360,17 @@ public final class MovieStream implements MovieAttribute, Closeable {
   }
 
   @Override
-  public AudioFormat getAudioFormat() {
+  public AudioFormat getSourceAudioFormat() {
     return audioFormat;
   }
 
+  /**
+   * @return The format of samples got from this stream
+   */
+  public AudioFormat getOutputAudioFormat() {
+    return outputFormat;
+  }
+
   /**
    * Retrieves the next media type. User should call this method before invoking
    * {@link #getFrame()} and {@link #getSample()}.
@@ -230,20 +378,28 @@ public final class MovieStream implements MovieAttribute, Closeable {
    * @return The type for next media
    */
   public Type readNextType() {
-    if (container.readNextPacket(packet) < 0) {
-      return Type.EOF;
-    }
-    IStreamCoder coder = openedCoders.get(packet.getStreamIndex());
-    if (coder == null) {
-      return Type.EOF;
-    }
-    switch (coder.getCodecType()) {
-      case CODEC_TYPE_VIDEO:
-        return Type.VIDEO;
-      case CODEC_TYPE_AUDIO:
-        return Type.AUDIO;
-      default:
+    while (true) {
+      if (container.readNextPacket(packet) < 0) {
         return Type.EOF;
+      }
+      IStreamCoder coder = openedCoders.get(packet.getStreamIndex());
+      if (coder == null) {
+        return Type.EOF;
+      }
+      switch (coder.getCodecType()) {
+        case CODEC_TYPE_VIDEO:
+          if (role.hasVideo()) {
+            return Type.VIDEO;
+          }
+          break;
+        case CODEC_TYPE_AUDIO:
+          if (role.hasAudio()) {
+            return Type.AUDIO;
+          }
+          break;
+        default:
+          return Type.EOF;
+      }
     }
   }
 
@@ -257,47 +413,340 @@ public final class MovieStream implements MovieAttribute, Closeable {
    * maintains a frame will return. Otherwise, a empty optional will return
    */
   public Optional<Frame> getFrame(final double scale) {
-    int offset = 0;
-    while (offset < packet.getSize()) {
-      int bytesDecoded = openedCoders.get(videoStreamIndex)
-              .decodeVideo(picture, packet, offset);
-      if (bytesDecoded >= 0) {
-        offset += bytesDecoded;
-        if (picture.isComplete()) {
-          BufferedImage image = converter.toImage(picture);
-          if (scale > 0) {
-            image = Painter.resizeImage(image, scale);
-          }
-          return Optional.of(new Frame(
-                  this,
-                  (long) (picture.getTimeStamp()
-                  * picture.getTimeBase().getDouble()
-                  * TIME_SCALE),
-                  image));
+    if (!decodeVideo(packet)) {
+      return Optional.empty();
+    }
+    return convertPicture(scale);
+  }
+
+  /**
+   * Seeks to the frame at specified microtime. It jumps to the nearest
+   * keyframe by {@link KeyframeIndex}, and then decodes forward to the frame
+   * whose timestamp isn't smaller than the microtime. The packets after the
+   * returned frame can be read by {@link #readNextType()}.
+   *
+   * @param microtime The target microtime
+   * @return The frame at the microtime, or a empty optional if the microtime
+   * is out of movie
+   * @throws IOException If failed to build keyframe index or seek
+   */
+  public Optional<Frame> seek(final long microtime) throws IOException {
+    return seek(microtime, -1);
+  }
+
+  /**
+   * Seeks to the frame at specified microtime.
+   *
+   * @param microtime The target microtime
+   * @param scale The resolution scala factor
+   * @return The frame at the microtime, or a empty optional if the microtime
+   * is out of movie
+   * @throws IOException If failed to build keyframe index or seek
+   * @see #seek(long)
+   */
+  public Optional<Frame> seek(final long microtime, final double scale)
+          throws IOException {
+    final long startTime = System.nanoTime();
+    int decodedFrames = 0;
+    try {
+      if (keyframeIndex == null) {
+        keyframeIndex = KeyframeIndex.of(file);
+      }
+      if (container.seekKeyFrame(videoStreamIndex,
+              keyframeIndex.floorTimestamp(microtime),
+              IContainer.SEEK_FLAG_BACKWARDS) < 0) {
+        throw new IOException("Failed to seek " + file + " to " + microtime);
+      }
+      while (true) {
+        switch (readNextType()) {
+          case VIDEO:
+            if (decodeVideo(packet)) {
+              ++decodedFrames;
+              if (getTimestamp(picture) >= microtime) {
+                return convertPicture(scale);
+              }
+            }
+            break;
+          case AUDIO:
+            break;
+          default:
+            return Optional.empty();
         }
       }
-      return Optional.empty();
+    } finally {
+      lastSeekLatency = (System.nanoTime() - startTime) / 1000;
+      lastSeekDecodedFrames = decodedFrames;
+      LOG.info("Seek " + file.getName() + " to " + microtime
+              + ", keyframe:" + (keyframeIndex == null
+                      ? -1 : keyframeIndex.floorMicrotime(microtime))
+              + ", decoded frames:" + decodedFrames
+              + ", latency(us):" + lastSeekLatency);
+    }
+  }
+
+  /**
+   * @return The microtime elapsed by last seek, or -1 if no seek
+   */
+  public long getLastSeekLatency() {
+    return lastSeekLatency;
+  }
+
+  /**
+   * @return The number of frames decoded from keyframe to target by last seek
+   */
+  public int getLastSeekDecodedFrames() {
+    return lastSeekDecodedFrames;
+  }
+
+  /**
+   * Converts the complete {@link #picture} to a frame.
+   *
+   * @param scale The resolution scala factor. The frame isn't scaled if the
+   * scale isn't positive
+   * @return A frame, or a empty optional if failed to convert
+   */
+  private Optional<Frame> convertPicture(final double scale) {
+    if (scale > 0) {
+      if (scaledConverter == null || scaledFactor != scale) {
+        if (scaledConverter != null) {
+          scaledConverter.close();
+          scaledConverter = null;
+        }
+        try {
+          scaledConverter = new PictureConverter(
+                  picture.getWidth(), picture.getHeight(),
+                  picture.getPixelType(),
+                  Math.max(1, (int) (picture.getWidth() * scale)),
+                  Math.max(1, (int) (picture.getHeight() * scale)));
+          scaledFactor = scale;
+        } catch (IOException e) {
+          LOG.error(e);
+          return Optional.empty();
+        }
+      }
+      BufferedImage image = scaledConverter.toImage(picture, null);
+      if (image == null) {
+        return Optional.empty();
+      }
+      return Optional.of(new Frame(this, getTimestamp(picture), image));
+    }
+    return toFrame(picture, converter);
+  }
+
+  /**
+   * @return The micro timestamp of current packet
+   */
+  public long getPacketTimestamp() {
+    return (long) (packet.getTimeStamp()
+            * packet.getTimeBase().getDouble()
+            * TIME_SCALE);
+  }
+
+  /**
+   * Copies the current packet. It is used for decoding the packet in other
+   * thread by {@link #decodePicture(IPacket)} and {@link #getSample(IPacket)}.
+   *
+   * @return A copy of current packet
+   */
+  public IPacket copyPacket() {
+    return IPacket.make(packet, true);
+  }
+
+  /**
+   * Decodes the video packet. The decoded picture is copied, so it can be
+   * converted in other thread by {@link #toFrame(IVideoPicture,
+   * PictureConverter)}. The video packets should be decoded by single thread.
+   *
+   * @param videoPacket The packet got from {@link #copyPacket()}
+   * @return A copy of complete picture, or a empty optional
+   */
+  Optional<IVideoPicture> decodePicture(final IPacket videoPacket) {
+    if (decodeVideo(videoPacket)) {
+      return Optional.of(IVideoPicture.make(picture));
     }
     return Optional.empty();
   }
 
+  /**
+   * Creates a resampler which converts the decoded audio to
+   * {@link #outputFormat}, so all movies are played by a single line.
+   *
+   * @return The resampler, or null if the audio isn't read or it is in the
+   * output format already
+   * @throws IOException If the audio can't be converted
+   */
+  private IAudioResampler newResampler() throws IOException {
+    if (!role.hasAudio() || audioFormat.matches(outputFormat)) {
+      return null;
+    }
+    IStreamCoder coder = openedCoders.get(audioStreamIndex);
+    IAudioResampler audioResampler = IAudioResampler.make(
+            outputFormat.getChannels(),
+            coder.getChannels(),
+            (int) outputFormat.getSampleRate(),
+            coder.getSampleRate(),
+            IAudioSamples.Format.FMT_S16,
+            coder.getSampleFormat());
+    if (audioResampler == null) {
+      throw new IOException("Failed to convert the audio format "
+              + audioFormat + " of " + file);
+    }
+    return audioResampler;
+  }
+
+  /**
+   * Converts the complete audio samples to {@link #outputFormat}.
+   * The converted audio is written into the samples reused for next packet.
+   *
+   * @param complete The complete audio samples
+   * @return The converted audio samples, the complete audio samples if they
+   * are in the output format already, or null if failed to convert
+   */
+  private IAudioSamples resample(final IAudioSamples complete) {
+    if (resampler == null) {
+      return complete;
+    }
+    long required = resampler.getMinimumNumSamplesRequiredInOutputSamples(
+            complete);
+    if (resampledSamples == null
+            || resampledSamples.getMaxSamples() < required) {
+      if (resampledSamples != null) {
+        resampledSamples.delete();
+      }
+      resampledSamples = IAudioSamples.make(required,
+              resampler.getOutputChannels(), IAudioSamples.Format.FMT_S16);
+    }
+    if (resampler.resample(resampledSamples, complete,
+            complete.getNumSamples()) < 0) {
+      LOG.error("Failed to convert the audio of " + file.getName()
+              + " at " + getTimestamp(complete));
+      return null;
+    }
+    return resampledSamples;
+  }
+
+  /**
+   * Creates a converter for the pictures of this stream. It is still workable
+   * after this stream is closed, and the caller should close it.
+   *
+   * @return A new converter
+   * @throws IOException If the pixel type can't be converted to BGR
+   */
+  PictureConverter newConverter() throws IOException {
+    return new PictureConverter(picture.getWidth(), picture.getHeight(),
+            picture.getPixelType());
+  }
+
+  /**
+   * Converts the complete picture to a frame. The image of frame is taken from
+   * the pool of this stream. If the pool keeps the YUV420 frames and the
+   * picture is YUV420P, the planes are copied without conversion.
+   *
+   * @param complete The complete picture
+   * @param pictureConverter The converter owned by current thread
+   * @return A frame, or a empty optional if failed to convert
+   */
+  Optional<Frame> toFrame(final IVideoPicture complete,
+          final PictureConverter pictureConverter) {
+    if (pool != null && pool.getFormat() == FramePool.Format.YUV420
+            && Yuv420.isSupported(complete)) {
+      final int width = complete.getWidth();
+      final int height = complete.getHeight();
+      byte[] planes = pool.takePlanes(Yuv420.size(width, height));
+      Yuv420.copy(complete, planes);
+      return Optional.of(new Frame(this, getTimestamp(complete), planes,
+              width, height, pool));
+    }
+    BufferedImage image = pictureConverter.toImage(complete, pool);
+    if (image == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new Frame(this, getTimestamp(complete), image, pool));
+  }
+
+  /**
+   * Decodes the video packet into {@link #picture}.
+   *
+   * @param videoPacket The video packet
+   * @return {@code true} if the picture is complete
+   */
+  private boolean decodeVideo(final IPacket videoPacket) {
+    if (videoPacket.getSize() <= 0) {
+      return false;
+    }
+    int bytesDecoded = openedCoders.get(videoStreamIndex)
+            .decodeVideo(picture, videoPacket, 0);
+    return bytesDecoded >= 0 && picture.isComplete();
+  }
+
+  /**
+   * @param complete The complete picture
+   * @return The micro timestamp of picture
+   */
+  private static long getTimestamp(final IVideoPicture complete) {
+    return (long) (complete.getTimeStamp()
+            * complete.getTimeBase().getDouble()
+            * TIME_SCALE);
+  }
+
+  /**
+   * @param complete The complete audio samples
+   * @return The micro timestamp of audio samples
+   */
+  private static long getTimestamp(final IAudioSamples complete) {
+    return (long) (complete.getTimeStamp()
+            * complete.getTimeBase().getDouble()
+            * TIME_SCALE);
+  }
+
   /**
    * @return If the {@link Sample} is decoded successfully, a optional which
    * maintains a frame will return. Otherwise, a empty optional will return
    */
   public Optional<Sample> getSample() {
-    IAudioSamples samples = IAudioSamples.make(
-            packet.getSize(),
-            openedCoders.get(audioStreamIndex).getChannels());
+    return getSample(packet);
+  }
+
+  /**
+   * Decodes the audio packet. The audio packets should be decoded by single
+   * thread. The decoded audio is copied into a array taken from the sample
+   * pool, and the audio samples are reused for next packet.
+   *
+   * @param audioPacket The audio packet
+   * @return If the {@link Sample} is decoded successfully, a optional which
+   * maintains a frame will return. Otherwise, a empty optional will return
+   */
+  Optional<Sample> getSample(final IPacket audioPacket) {
+    IStreamCoder coder = openedCoders.get(audioStreamIndex);
+    if (audioSamples == null || audioSamplesCapacity < audioPacket.getSize()) {
+      if (audioSamples != null) {
+        audioSamples.delete();
+      }
+      audioSamplesCapacity = audioPacket.getSize();
+      audioSamples = IAudioSamples.make(audioSamplesCapacity,
+              coder.getChannels());
+    }
     int offset = 0;
-    while (offset < packet.getSize()) {
-      int bytesDecoded = openedCoders.get(audioStreamIndex)
-              .decodeAudio(samples, packet, offset);
+    while (offset < audioPacket.getSize()) {
+      int bytesDecoded = coder.decodeAudio(audioSamples, audioPacket, offset);
       if (bytesDecoded >= 0) {
         offset += bytesDecoded;
-        if (samples.isComplete()) {
-          return Optional.of(new Sample(this, samples.getData()
-                  .getByteArray(0, samples.getSize())));
+        if (audioSamples.isComplete()) {
+          IAudioSamples output = resample(audioSamples);
+          if (output == null) {
+            return Optional.empty();
+          }
+          int size = output.getSize();
+          byte[] data = samplePool == null
+                  ? new byte[size] : samplePool.take(size);
+          IBuffer buffer = output.getData();
+          try {
+            buffer.get(0, data, 0, size);
+          } finally {
+            buffer.delete();
+          }
+          return Optional.of(new Sample(this, getTimestamp(audioSamples),
+                  data, samplePool));
         }
       }
       return Optional.empty();
@@ -311,6 +760,24 @@ public final class MovieStream implements MovieAttribute, Closeable {
       entry.getValue().close();
     });
     openedCoders.clear();
+    if (audioSamples != null) {
+      audioSamples.delete();
+      audioSamples = null;
+    }
+    if (resampledSamples != null) {
+      resampledSamples.delete();
+      resampledSamples = null;
+    }
+    if (resampler != null) {
+      resampler.delete();
+    }
+    if (converter != null) {
+      converter.close();
+    }
+    if (scaledConverter != null) {
+      scaledConverter.close();
+      scaledConverter = null;
+    }
     container.close();
   }
 
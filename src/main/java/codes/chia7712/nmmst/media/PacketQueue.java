@@ -0,0 +1,122 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.ToLongFunction;
+
+/**
+ * A blocking queue bounded by both the number and the bytes of elements. The
+ * compressed packets are small, so a few MB keep minutes of movie. A element
+ * is always accepted by a empty queue even if it is larger than the byte
+ * limit.
+ *
+ * @param <T> The element type
+ */
+final class PacketQueue<T> {
+
+  /**
+   * The elements.
+   */
+  private final Deque<T> elements = new ArrayDeque<>();
+  /**
+   * Calculates the bytes of a element.
+   */
+  private final ToLongFunction<T> sizer;
+  /**
+   * The max number of elements.
+   */
+  private final int countLimit;
+  /**
+   * The max bytes of elements. The zero or negative value means no limit.
+   */
+  private final long byteLimit;
+  /**
+   * The bytes of elements in this queue.
+   */
+  private long bytes = 0;
+
+  /**
+   * @param countLimit The max number of elements
+   * @param byteLimit The max bytes of elements. The zero or negative value
+   * means no limit
+   * @param sizer Calculates the bytes of a element
+   */
+  PacketQueue(final int countLimit, final long byteLimit,
+          final ToLongFunction<T> sizer) {
+    this.countLimit = Math.max(1, countLimit);
+    this.byteLimit = byteLimit;
+    this.sizer = sizer;
+  }
+
+  /**
+   * @param size The bytes of element to insert
+   * @return {@code true} if the element can be inserted
+   */
+  private boolean hasRoom(final long size) {
+    if (elements.isEmpty()) {
+      return true;
+    }
+    if (elements.size() >= countLimit) {
+      return false;
+    }
+    return byteLimit <= 0 || bytes + size <= byteLimit;
+  }
+
+  /**
+   * Inserts the element, waiting if necessary for room.
+   *
+   * @param element The element to insert
+   * @throws InterruptedException If interrupted while waiting
+   */
+  synchronized void put(final T element) throws InterruptedException {
+    final long size = sizer.applyAsLong(element);
+    while (!hasRoom(size)) {
+      wait();
+    }
+    elements.addLast(element);
+    bytes += size;
+    notifyAll();
+  }
+
+  /**
+   * Retrieves and removes the head element, waiting if necessary until a
+   * element is available.
+   *
+   * @return The head element
+   * @throws InterruptedException If interrupted while waiting
+   */
+  synchronized T take() throws InterruptedException {
+    while (elements.isEmpty()) {
+      wait();
+    }
+    T element = elements.removeFirst();
+    bytes -= sizer.applyAsLong(element);
+    notifyAll();
+    return element;
+  }
+
+  /**
+   * Waits until all elements are taken.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+  synchronized void awaitEmpty() throws InterruptedException {
+    while (!elements.isEmpty()) {
+      wait();
+    }
+  }
+
+  /**
+   * @return The number of elements in this queue
+   */
+  synchronized int size() {
+    return elements.size();
+  }
+
+  /**
+   * @return The bytes of elements in this queue
+   */
+  synchronized long getBytes() {
+    return bytes;
+  }
+}
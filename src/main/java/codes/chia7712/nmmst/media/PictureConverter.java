@@ -0,0 +1,152 @@
+package codes.chia7712.nmmst.media;
+
+import com.xuggle.ferry.IBuffer;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Converts the decoded picture to a BGR image. The colour conversion and the
+ * resize are done by one native resampler pass. It isn't thread-safe, so each
+ * converting thread should own a converter, and close it when the converter
+ * is replaced or the thread exits.
+ */
+final class PictureConverter implements Closeable {
+
+  /**
+   * The number of converted pictures in this process.
+   */
+  private static final LongAdder CONVERT_COUNT = new LongAdder();
+  /**
+   * The nanotime elapsed by converting pictures in this process.
+   */
+  private static final LongAdder CONVERT_NANOTIME = new LongAdder();
+  /**
+   * Converts the decoded picture to BGR with the output size. It is null if
+   * the decoded picture is BGR with the output size already.
+   */
+  private final IVideoResampler resampler;
+  /**
+   * The BGR picture converted by {@link #resampler}.
+   */
+  private final IVideoPicture bgrPicture;
+
+  /**
+   * Constructs a converter for specified picture format.
+   *
+   * @param width Picture width
+   * @param height Picture height
+   * @param pixelType Picture pixel type
+   * @throws IOException If the pixel type can't be converted to BGR
+   */
+  PictureConverter(final int width, final int height,
+          final IPixelFormat.Type pixelType) throws IOException {
+    this(width, height, pixelType, width, height);
+  }
+
+  /**
+   * Constructs a converter for specified picture format and output size.
+   *
+   * @param width Picture width
+   * @param height Picture height
+   * @param pixelType Picture pixel type
+   * @param outputWidth Image width
+   * @param outputHeight Image height
+   * @throws IOException If the pixel type can't be converted to BGR
+   */
+  PictureConverter(final int width, final int height,
+          final IPixelFormat.Type pixelType, final int outputWidth,
+          final int outputHeight) throws IOException {
+    if (pixelType == IPixelFormat.Type.BGR24
+            && width == outputWidth && height == outputHeight) {
+      resampler = null;
+      bgrPicture = null;
+    } else {
+      resampler = IVideoResampler.make(
+              outputWidth, outputHeight, IPixelFormat.Type.BGR24,
+              width, height, pixelType);
+      if (resampler == null) {
+        throw new IOException("Failed to convert " + pixelType + " "
+                + width + "x" + height + " to BGR24 "
+                + outputWidth + "x" + outputHeight);
+      }
+      bgrPicture = IVideoPicture.make(IPixelFormat.Type.BGR24,
+              outputWidth, outputHeight);
+    }
+  }
+
+  /**
+   * @return The number of converted pictures in this process
+   */
+  static long getConvertCount() {
+    return CONVERT_COUNT.sum();
+  }
+
+  /**
+   * @return The nanotime elapsed by converting pictures in this process
+   */
+  static long getConvertNanotime() {
+    return CONVERT_NANOTIME.sum();
+  }
+
+  /**
+   * Converts the picture to a image. The image is taken from pool if the pool
+   * exists.
+   *
+   * @param picture The complete picture
+   * @param pool The pool to take image, or null
+   * @return A image with the BGR data, or null if failed to convert
+   */
+  BufferedImage toImage(final IVideoPicture picture, final FramePool pool) {
+    final long startTime = System.nanoTime();
+    IVideoPicture bgr = picture;
+    if (resampler != null) {
+      if (resampler.resample(bgrPicture, picture) < 0) {
+        return null;
+      }
+      bgr = bgrPicture;
+    }
+    final int width = bgr.getWidth();
+    final int height = bgr.getHeight();
+    BufferedImage image = pool == null
+            ? new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR)
+            : pool.take(width, height);
+    byte[] data = ((DataBufferByte) image.getRaster()
+            .getDataBuffer()).getData();
+    final int rowSize = width * 3;
+    final int lineSize = bgr.getDataLineSize(0);
+    IBuffer buffer = bgr.getData();
+    try {
+      if (lineSize == rowSize) {
+        buffer.get(0, data, 0, rowSize * height);
+      } else {
+        for (int y = 0; y != height; ++y) {
+          buffer.get(y * lineSize, data, y * rowSize, rowSize);
+        }
+      }
+    } finally {
+      buffer.delete();
+    }
+    CONVERT_NANOTIME.add(System.nanoTime() - startTime);
+    CONVERT_COUNT.increment();
+    return image;
+  }
+
+  /**
+   * Deletes the native resampler and picture.
+   */
+  @Override
+  public void close() {
+    if (resampler != null) {
+      resampler.delete();
+    }
+    if (bgrPicture != null) {
+      bgrPicture.delete();
+    }
+  }
+}
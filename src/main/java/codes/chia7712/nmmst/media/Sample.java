@@ -1,5 +1,7 @@
 package codes.chia7712.nmmst.media;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Maintains the byte array of audio.
  */
@@ -18,6 +20,18 @@ public final class Sample {
    * The attribute of this audio.
    */
   private final MovieAttribute attribute;
+  /**
+   * The micro timestamp of first audio frame in this sample.
+   */
+  private final long timestamp;
+  /**
+   * The pool which the audio data comes from. It may be null.
+   */
+  private final SamplePool pool;
+  /**
+   * Indicates whether the audio data has been given back to pool.
+   */
+  private final AtomicBoolean released = new AtomicBoolean(false);
 
   /**
    * Constructs a sample by specified attribute and audio data.
@@ -27,8 +41,37 @@ public final class Sample {
    */
   public Sample(final MovieAttribute movieAttribute,
           final byte[] audioData) {
+    this(movieAttribute, audioData, null);
+  }
+
+  /**
+   * Constructs a sample by specified attribute and audio data which is taken
+   * from the pool.
+   *
+   * @param movieAttribute The movie attribute
+   * @param audioData A byte array of audio
+   * @param samplePool The pool to recycle the audio data, or null
+   */
+  public Sample(final MovieAttribute movieAttribute,
+          final byte[] audioData, final SamplePool samplePool) {
+    this(movieAttribute, 0, audioData, samplePool);
+  }
+
+  /**
+   * Constructs a sample by specified attribute, timestamp and audio data
+   * which is taken from the pool.
+   *
+   * @param movieAttribute The movie attribute
+   * @param time The micro timestamp of first audio frame
+   * @param audioData A byte array of audio
+   * @param samplePool The pool to recycle the audio data, or null
+   */
+  public Sample(final MovieAttribute movieAttribute, final long time,
+          final byte[] audioData, final SamplePool samplePool) {
     attribute = movieAttribute;
+    timestamp = time;
     data = audioData;
+    pool = samplePool;
     if (data == null || data.length == 0) {
       throw new RuntimeException("No found of sample data");
     }
@@ -42,6 +85,13 @@ public final class Sample {
     return attribute;
   }
 
+  /**
+   * @return The micro timestamp of first audio frame in this sample
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
   /**
    * @return Audio data
    */
@@ -55,4 +105,15 @@ public final class Sample {
   public long getHeapSize() {
     return data.length;
   }
+
+  /**
+   * Gives back the audio data to pool. The audio data should not be used
+   * after this method returns. It does nothing if the audio data isn't from a
+   * pool or it has been released.
+   */
+  public void release() {
+    if (pool != null && released.compareAndSet(false, true)) {
+      pool.release(data);
+    }
+  }
 }
@@ -0,0 +1,61 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Recycles the byte arrays of decoded audio. The decoder takes a array from
+ * this pool and the speaker gives it back after the array has been written to
+ * the line. The decoded size of audio packets is usually fixed, so the steady
+ * state of playing allocates no array. The pool is bounded, a array released
+ * to a full pool is dropped for GC.
+ */
+public final class SamplePool {
+
+  /**
+   * The idle arrays.
+   */
+  private final BlockingQueue<byte[]> idle;
+
+  /**
+   * Constructs a pool with specified capacity.
+   *
+   * @param capacity The max number of idle arrays
+   */
+  public SamplePool(final int capacity) {
+    idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+  }
+
+  /**
+   * Retrieves a array with specified length. A new array is allocated if there
+   * is no idle array or the idle array has different length.
+   *
+   * @param length Array length
+   * @return A array whose content may be dirty
+   */
+  public byte[] take(final int length) {
+    byte[] data = idle.poll();
+    if (data != null && data.length == length) {
+      return data;
+    }
+    return new byte[length];
+  }
+
+  /**
+   * Gives back a array got from {@link #take(int)}.
+   *
+   * @param data The array to recycle
+   */
+  public void release(final byte[] data) {
+    if (data != null) {
+      idle.offer(data);
+    }
+  }
+
+  /**
+   * Drops all idle arrays.
+   */
+  public void clear() {
+    idle.clear();
+  }
+}
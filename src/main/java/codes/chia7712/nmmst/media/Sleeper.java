@@ -1,9 +1,19 @@
 package codes.chia7712.nmmst.media;
 
+import java.util.Arrays;
+import java.util.OptionalLong;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Controls the period between sequential frame.
+ * Controls the period between sequential frame. The due time of each frame is
+ * calculated from the start of stream, so the error isn't accumulated by the
+ * frames. The sleeper sleeps coarsely and then spins for the final
+ * microseconds because the sleep of OS may overshoot by milliseconds. The
+ * clock keeps going across the streams, so the error isn't accumulated by the
+ * streams either. The lateness of frames is recorded in a histogram. The time
+ * comes from a {@link ClusterClock}, so the nodes sharing the cluster clock
+ * can present the frames at the same time.
  */
 public final class Sleeper {
 
@@ -11,59 +21,366 @@ public final class Sleeper {
    * Scales up the time from nano to micro.
    */
   private static final long NANO_TO_MICRO = 1000;
+  /**
+   * The max nanos to park while spinning.
+   */
+  private static final long SPIN_PARK_NANOS = 50 * 1000;
+  /**
+   * The stream clock is restarted rather than continued if the first frame of
+   * next stream is later than this microtime.
+   */
+  private static final long RESYNC_MICROTIME = 1000 * 1000;
+  /**
+   * The upper bounds of histogram buckets in microseconds. The last bucket
+   * has no upper bound.
+   */
+  private static final long[] LATENESS_BOUNDS
+          = {500, 1000, 2000, 4000, 8000, 16000, 33000};
   /**
    * Tolerance time.
    */
   private final long tolerance;
+  /**
+   * The nanos to spin before the due time.
+   */
+  private final long spinNanos;
+  /**
+   * Provides the time.
+   */
+  private final ClusterClock clock;
+  /**
+   * The lateness histogram.
+   */
+  private final long[] lateness = new long[LATENESS_BOUNDS.length + 1];
+  /**
+   * Indicates whether the clock is started.
+   */
+  private boolean started = false;
   /**
    * Time of first frame.
    */
   private long streamStartTime = 0;
   /**
-   * Time of local clock.
+   * Time of local clock in nanos.
    */
   private long clockStartTime = 0;
+  /**
+   * Indicates whether the clock is continued by next stream.
+   */
+  private boolean continued = false;
+  /**
+   * The local clock for the first frame of next stream.
+   */
+  private long continuedClockTime = 0;
+  /**
+   * Indicates whether the first frame of next stream is armed.
+   */
+  private boolean armed = false;
+  /**
+   * The armed clock time for the first frame of next stream.
+   */
+  private long armedClockTime = 0;
+  /**
+   * Indicates whether the start error is being measured.
+   */
+  private boolean measuring = false;
+  /**
+   * Indicates whether the start error is measured but not polled.
+   */
+  private boolean measured = false;
+  /**
+   * The microtime between the armed time and the first presented frame.
+   */
+  private long startError = 0;
+  /**
+   * Timestamp of last frame.
+   */
+  private long lastStreamTime = 0;
+  /**
+   * The timestamp interval between the last two frames.
+   */
+  private long lastInterval = 0;
+  /**
+   * The number of restarted clock.
+   */
+  private long resyncCount = 0;
+  /**
+   * The max lateness in microseconds.
+   */
+  private long maxLateness = 0;
 
   /**
-   * Constructs a sleeper with specified tolerence time.
+   * Constructs a sleeper with specified tolerence time. It sleeps without
+   * spinning.
    *
    * @param microTolerance Tolerance time
    */
   public Sleeper(final long microTolerance) {
+    this(microTolerance, 0);
+  }
+
+  /**
+   * Constructs a sleeper with specified tolerence time and spin time.
+   *
+   * @param microTolerance Tolerance time
+   * @param spinMicrotime The microtime to spin before the due time. The zero
+   * disables the spin
+   */
+  public Sleeper(final long microTolerance, final long spinMicrotime) {
+    this(microTolerance, spinMicrotime, ClusterClock.local());
+  }
+
+  /**
+   * Constructs a sleeper with specified tolerence time, spin time and clock.
+   *
+   * @param microTolerance Tolerance time
+   * @param spinMicrotime The microtime to spin before the due time. The zero
+   * disables the spin
+   * @param clusterClock Provides the time
+   */
+  public Sleeper(final long microTolerance, final long spinMicrotime,
+          final ClusterClock clusterClock) {
     tolerance = microTolerance;
+    spinNanos = Math.max(0, spinMicrotime) * NANO_TO_MICRO;
+    clock = clusterClock;
+  }
+
+  /**
+   * Starts the clock by the first frame. The clock starts at the armed time
+   * if there is one, or it is continued from the last stream if the first
+   * frame isn't much late.
+   *
+   * @param streamCurrentTime Timestamp of first frame
+   */
+  private void start(final long streamCurrentTime) {
+    final long now = clock.nanoTime();
+    if (armed) {
+      clockStartTime = armedClockTime;
+      armed = false;
+      measuring = true;
+    } else if (continued
+            && (now - continuedClockTime) / NANO_TO_MICRO
+            <= RESYNC_MICROTIME) {
+      clockStartTime = continuedClockTime;
+    } else {
+      if (continued) {
+        ++resyncCount;
+      }
+      clockStartTime = now;
+    }
+    continued = false;
+    streamStartTime = streamCurrentTime;
+    lastStreamTime = streamCurrentTime;
+    started = true;
+  }
+
+  /**
+   * @param streamCurrentTime Timestamp of frame
+   * @return The local clock in nanos when the frame is due
+   */
+  private long getDueTime(final long streamCurrentTime) {
+    return clockStartTime
+            + (streamCurrentTime - streamStartTime - tolerance) * NANO_TO_MICRO;
+  }
+
+  /**
+   * Calculates the delay of frame without sleeping. It starts the clock if
+   * the frame is the first frame.
+   *
+   * @param streamCurrentTime Timestamp of frame
+   * @return The microtime to sleep before the frame is due. The negative
+   * value is the lateness of frame
+   */
+  public long getDelay(final long streamCurrentTime) {
+    if (!started) {
+      start(streamCurrentTime);
+    }
+    return (getDueTime(streamCurrentTime) - clock.nanoTime())
+            / NANO_TO_MICRO;
   }
 
   /**
-   * Sleeps a while according to timestamp of frame.
+   * Sleeps a while according to timestamp of frame, and then records the
+   * lateness.
    *
    * @param streamCurrentTime Timestamp of frame
-   * @return The sleep time caused by this method
+   * @return The sleep time caused by this method. The negative value is the
+   * lateness of frame before sleeping
    * @throws InterruptedException If someone breaks up the sleep
    */
   public long sleepByTimeStamp(final long streamCurrentTime)
           throws InterruptedException {
-    if (streamStartTime == 0) {
-      clockStartTime = System.nanoTime();
-      streamStartTime = streamCurrentTime;
-      return 0;
+    if (!started) {
+      start(streamCurrentTime);
+    }
+    final long due = getDueTime(streamCurrentTime);
+    final long microsecondsToSleep = (due - clock.nanoTime()) / NANO_TO_MICRO;
+    long remaining = due - clock.nanoTime();
+    if (remaining > spinNanos) {
+      TimeUnit.NANOSECONDS.sleep(remaining - spinNanos);
+    }
+    while ((remaining = due - clock.nanoTime()) > 0) {
+      if (remaining > SPIN_PARK_NANOS) {
+        LockSupport.parkNanos(SPIN_PARK_NANOS);
+      } else {
+        Thread.yield();
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    record((clock.nanoTime() - due) / NANO_TO_MICRO);
+    if (measuring) {
+      startError = (clock.nanoTime() - clockStartTime) / NANO_TO_MICRO;
+      measuring = false;
+      measured = true;
     }
-    final long clockTimeInterval
-            = (System.nanoTime() - clockStartTime) / NANO_TO_MICRO;
-    final long streamTimeInterval
-            = (streamCurrentTime - streamStartTime);
-    final long microsecondsToSleep
-            = (streamTimeInterval - (clockTimeInterval + tolerance));
-    if (microsecondsToSleep > 0) {
-      TimeUnit.MICROSECONDS.sleep(microsecondsToSleep);
+    if (streamCurrentTime > lastStreamTime) {
+      lastInterval = streamCurrentTime - lastStreamTime;
     }
+    lastStreamTime = streamCurrentTime;
     return microsecondsToSleep;
   }
 
   /**
-   * Resets all time record.
+   * Adds the lateness to histogram.
+   *
+   * @param microLateness The lateness of frame
+   */
+  private void record(final long microLateness) {
+    int index = 0;
+    while (index != LATENESS_BOUNDS.length
+            && microLateness >= LATENESS_BOUNDS[index]) {
+      ++index;
+    }
+    ++lateness[index];
+    maxLateness = Math.max(maxLateness, microLateness);
+  }
+
+  /**
+   * Continues the clock for next stream. The first frame of next stream is
+   * due one frame interval after the last frame, so the error of stream
+   * switch isn't accumulated.
+   */
+  public void continueStream() {
+    if (started) {
+      continuedClockTime = getDueTime(lastStreamTime + lastInterval)
+              + tolerance * NANO_TO_MICRO;
+      continued = true;
+    }
+    started = false;
+  }
+
+  /**
+   * Arms the clock time for the first frame of next stream. It overrides the
+   * continued clock, and it is kept by {@link #reset()}.
+   *
+   * @param microtime The clock time in microseconds
+   */
+  public void arm(final long microtime) {
+    armed = true;
+    armedClockTime = microtime * NANO_TO_MICRO;
+  }
+
+  /**
+   * Retrieves the start error of the armed stream once. The start error is
+   * the microtime between the armed time and the first presented frame, so
+   * it includes the frames dropped for catching up.
+   *
+   * @return The start error, or empty if no armed stream is started
+   */
+  public OptionalLong pollStartError() {
+    if (!measured) {
+      return OptionalLong.empty();
+    }
+    measured = false;
+    return OptionalLong.of(startError);
+  }
+
+  /**
+   * @return {@code true} if the clock is started by a frame
+   */
+  public boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Moves the clock of current stream. It is used for following a master
+   * clock, such as the audio.
+   *
+   * @param microtime The microtime to move. The positive value delays the
+   * following frames
+   */
+  public void shift(final long microtime) {
+    if (started) {
+      clockStartTime += microtime * NANO_TO_MICRO;
+    }
+  }
+
+  /**
+   * Retrieves the clock time when the timestamp zero of current stream is
+   * due. The nodes presenting the same stream have the same origin if they
+   * are in sync.
+   *
+   * @return The origin in microseconds, or zero if the clock isn't started
+   */
+  public long getOriginMicrotime() {
+    if (!started) {
+      return 0;
+    }
+    return (clockStartTime - streamStartTime * NANO_TO_MICRO) / NANO_TO_MICRO;
+  }
+
+  /**
+   * Resets all time record. The histogram is kept.
    */
   public void reset() {
+    started = false;
+    continued = false;
     clockStartTime = 0;
     streamStartTime = 0;
+    lastStreamTime = 0;
+    lastInterval = 0;
+  }
+
+  /**
+   * @return The copy of lateness histogram. The bucket i counts the frames
+   * whose lateness is smaller than {@link #getLatenessBounds()}[i], and the
+   * last bucket counts the others
+   */
+  public long[] getLatenessHistogram() {
+    return Arrays.copyOf(lateness, lateness.length);
+  }
+
+  /**
+   * @return The upper bounds of histogram buckets in microseconds
+   */
+  public static long[] getLatenessBounds() {
+    return Arrays.copyOf(LATENESS_BOUNDS, LATENESS_BOUNDS.length);
+  }
+
+  /**
+   * @return The number of streams whose clock is restarted because the first
+   * frame is too late to continue the clock
+   */
+  public long getResyncCount() {
+    return resyncCount;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder str = new StringBuilder("lateness(us)");
+    for (int i = 0; i != lateness.length; ++i) {
+      str.append(i == LATENESS_BOUNDS.length ? " >=" : " <")
+              .append(i == LATENESS_BOUNDS.length
+                      ? LATENESS_BOUNDS[i - 1] : LATENESS_BOUNDS[i])
+              .append(":")
+              .append(lateness[i]);
+    }
+    return str.append(", max : ")
+            .append(maxLateness)
+            .append(", resync : ")
+            .append(resyncCount)
+            .toString();
   }
 }
@@ -1,5 +1,7 @@
 package codes.chia7712.nmmst.media;
 
+import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.NProperties;
 import java.io.Closeable;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
@@ -12,10 +14,49 @@ import javax.sound.sampled.SourceDataLine;
  */
 public final class Speaker implements Closeable {
 
+  /**
+   * The format of decoded audio if no format is specified. The show uses
+   * the format got by {@link #getOutputFormat(NProperties)}.
+   */
+  public static final AudioFormat DEFAULT_OUTPUT_FORMAT
+          = new AudioFormat(48000, 16, 2, true, false);
+  /**
+   * The bits of a audio sample. The movies are converted to 16-bit signed
+   * samples.
+   */
+  private static final int OUTPUT_SAMPLE_BITS = 16;
+  /**
+   * Scales up the time from second to micro.
+   */
+  private static final double SECOND_TO_MICRO = 1000 * 1000;
   /**
    * Control the audio using standard java library.
    */
   private final SourceDataLine line;
+  /**
+   * The number of audio frames written to line.
+   */
+  private volatile long writtenFrames = 0;
+  /**
+   * The number of times the line ran out of data.
+   */
+  private volatile long underrunCount = 0;
+
+  /**
+   * Retrieves the format of audio line. All movies are converted to it by
+   * {@link MovieStream}, so a single line plays the whole show.
+   *
+   * @param properties NProperties provides the sample rate and channels
+   * @return The 16-bit signed little-endian format
+   */
+  public static AudioFormat getOutputFormat(final NProperties properties) {
+    return new AudioFormat(
+            properties.getInteger(NConstants.SPEAKER_SAMPLE_RATE),
+            OUTPUT_SAMPLE_BITS,
+            properties.getInteger(NConstants.SPEAKER_CHANNELS),
+            true,
+            false);
+  }
 
   /**
    * Construct a speaker by audio format.
@@ -32,16 +73,85 @@ public final class Speaker implements Closeable {
     line.start();
   }
 
+  /**
+   * Construct a speaker by audio format and the length of line buffer. The
+   * default buffer of line is used if the length isn't positive.
+   *
+   * @param audioFormat Audio format
+   * @param bufferMicrotime The length of line buffer in microseconds
+   * @throws LineUnavailableException if failed to open audio output
+   */
+  public Speaker(final AudioFormat audioFormat, final long bufferMicrotime)
+          throws LineUnavailableException {
+    DataLine.Info info
+            = new DataLine.Info(SourceDataLine.class, audioFormat);
+    line = (SourceDataLine) AudioSystem.getLine(info);
+    if (bufferMicrotime > 0) {
+      int frames = (int) (audioFormat.getFrameRate() * bufferMicrotime
+              / SECOND_TO_MICRO);
+      line.open(audioFormat, Math.max(1, frames) * audioFormat.getFrameSize());
+    } else {
+      line.open(audioFormat);
+    }
+    line.start();
+  }
+
   /**
    * Writes the audio data.
    *
    * @param data Audio data
    */
   public void write(final byte[] data) {
+    if (writtenFrames != 0 && line.available() >= line.getBufferSize()) {
+      ++underrunCount;
+    }
     int count = 0;
     while (count != data.length) {
       count += line.write(data, count, data.length - count);
     }
+    writtenFrames += data.length / Math.max(1, line.getFormat().getFrameSize());
+  }
+
+  /**
+   * @return The number of audio frames written to line
+   */
+  public long getWrittenFrames() {
+    return writtenFrames;
+  }
+
+  /**
+   * Retrieves the number of times the line ran out of data. The line is
+   * checked before each write, so the underrun which isn't followed by a
+   * write isn't counted.
+   *
+   * @return The number of underruns
+   */
+  public long getUnderrunCount() {
+    return underrunCount;
+  }
+
+  /**
+   * Retrieves the number of audio frames which have been played by the
+   * hardware. It lags the written frames by the line buffer.
+   *
+   * @return The frame position of line
+   */
+  public long getFramePosition() {
+    return line.getLongFramePosition();
+  }
+
+  /**
+   * Writes the audio data of sample, and then gives back the audio data to
+   * pool.
+   *
+   * @param sample Audio sample
+   */
+  public void write(final Sample sample) {
+    try {
+      write(sample.getData());
+    } finally {
+      sample.release();
+    }
   }
 
   /**
@@ -0,0 +1,158 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring for single producer and single consumer. The slots are
+ * preallocated, and the producer and consumer only publish their indexes, so
+ * the handoff takes no lock and allocates nothing. The waiting side parks
+ * itself and is unparked by the other side. The producer or consumer thread
+ * may be changed only if the previous one has stopped using this ring.
+ *
+ * @param <T> The element type
+ */
+final class SpscRing<T> {
+
+  /**
+   * The slots.
+   */
+  private final Object[] slots;
+  /**
+   * The mask to map a index to slot.
+   */
+  private final int mask;
+  /**
+   * The index of next element to take. It is written by consumer only.
+   */
+  private final AtomicLong head = new AtomicLong();
+  /**
+   * The index of next element to put. It is written by producer only.
+   */
+  private final AtomicLong tail = new AtomicLong();
+  /**
+   * The producer waiting for a free slot.
+   */
+  private volatile Thread waitingProducer;
+  /**
+   * The consumer waiting for a element.
+   */
+  private volatile Thread waitingConsumer;
+
+  /**
+   * Constructs a ring whose capacity is the power of two not smaller than
+   * specified capacity.
+   *
+   * @param capacity The min capacity
+   */
+  SpscRing(final int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    slots = new Object[size];
+    mask = size - 1;
+  }
+
+  /**
+   * @return The number of slots
+   */
+  int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * @return The number of elements in this ring
+   */
+  int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Inserts the element if there is a free slot.
+   *
+   * @param element The element to insert
+   * @return {@code true} if the element is inserted
+   */
+  boolean offer(final T element) {
+    final long t = tail.get();
+    if (t - head.get() == slots.length) {
+      return false;
+    }
+    slots[(int) t & mask] = element;
+    tail.set(t + 1);
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+    return true;
+  }
+
+  /**
+   * Retrieves and removes the head element if there is any.
+   *
+   * @return The head element, or null if this ring is empty
+   */
+  @SuppressWarnings("unchecked")
+  T poll() {
+    final long h = head.get();
+    if (h == tail.get()) {
+      return null;
+    }
+    final int index = (int) h & mask;
+    T element = (T) slots[index];
+    slots[index] = null;
+    head.set(h + 1);
+    Thread producer = waitingProducer;
+    if (producer != null) {
+      LockSupport.unpark(producer);
+    }
+    return element;
+  }
+
+  /**
+   * Inserts the element, waiting if necessary for a free slot.
+   *
+   * @param element The element to insert
+   * @throws InterruptedException If interrupted while waiting
+   */
+  void put(final T element) throws InterruptedException {
+    while (!offer(element)) {
+      waitingProducer = Thread.currentThread();
+      try {
+        if (offer(element)) {
+          return;
+        }
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      } finally {
+        waitingProducer = null;
+      }
+    }
+  }
+
+  /**
+   * Retrieves and removes the head element, waiting if necessary until a
+   * element is available.
+   *
+   * @return The head element
+   * @throws InterruptedException If interrupted while waiting
+   */
+  T take() throws InterruptedException {
+    T element;
+    while ((element = poll()) == null) {
+      waitingConsumer = Thread.currentThread();
+      try {
+        if ((element = poll()) != null) {
+          return element;
+        }
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      } finally {
+        waitingConsumer = null;
+      }
+    }
+    return element;
+  }
+}
@@ -0,0 +1,108 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the cluster time to present the first frame of show and the first
+ * frame of next movie. The time is sent by master ahead, so the nodes arm the
+ * panel and speaker and release them at the same time instead of when the
+ * request arrives. Each armed time is taken once.
+ */
+final class StartSchedule {
+
+  /**
+   * Scales up the time from nano to micro.
+   */
+  private static final long NANO_TO_MICRO = 1000;
+  /**
+   * Indicates whether the video start is armed.
+   */
+  private boolean videoArmed = false;
+  /**
+   * Indicates whether the audio start is armed.
+   */
+  private boolean audioArmed = false;
+  /**
+   * Indicates whether the next movie is armed.
+   */
+  private boolean nextMovieArmed = false;
+  /**
+   * The cluster time to start the show.
+   */
+  private long startTime = 0;
+  /**
+   * The cluster time to present the first frame of next movie.
+   */
+  private long nextMovieTime = 0;
+
+  /**
+   * Arms the start of show. The armed next movie is discarded.
+   *
+   * @param microtime The cluster time in microseconds
+   */
+  synchronized void armStart(final long microtime) {
+    videoArmed = true;
+    audioArmed = true;
+    nextMovieArmed = false;
+    startTime = microtime;
+  }
+
+  /**
+   * Arms the start of next movie.
+   *
+   * @param microtime The cluster time in microseconds
+   */
+  synchronized void armNextMovie(final long microtime) {
+    nextMovieArmed = true;
+    nextMovieTime = microtime;
+  }
+
+  /**
+   * @return The armed start of video, or empty if it isn't armed
+   */
+  synchronized OptionalLong takeVideoStart() {
+    if (!videoArmed) {
+      return OptionalLong.empty();
+    }
+    videoArmed = false;
+    return OptionalLong.of(startTime);
+  }
+
+  /**
+   * @return The armed start of next movie, or empty if it isn't armed
+   */
+  synchronized OptionalLong takeNextMovie() {
+    if (!nextMovieArmed) {
+      return OptionalLong.empty();
+    }
+    nextMovieArmed = false;
+    return OptionalLong.of(nextMovieTime);
+  }
+
+  /**
+   * @return The armed start of audio, or empty if it isn't armed
+   */
+  private synchronized OptionalLong takeAudioStart() {
+    if (!audioArmed) {
+      return OptionalLong.empty();
+    }
+    audioArmed = false;
+    return OptionalLong.of(startTime);
+  }
+
+  /**
+   * Waits until the armed start of audio. It returns immediately if the
+   * audio isn't armed or the time has passed.
+   *
+   * @param clock Provides the cluster time
+   * @throws InterruptedException If interrupted while waiting
+   */
+  void awaitAudioStart(final ClusterClock clock) throws InterruptedException {
+    OptionalLong time = takeAudioStart();
+    if (time.isPresent()) {
+      TimeUnit.NANOSECONDS.sleep(
+              time.getAsLong() * NANO_TO_MICRO - clock.nanoTime());
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package codes.chia7712.nmmst.media;
+
+import com.xuggle.ferry.IBuffer;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+
+/**
+ * Handles the compact planar YUV420 pixels. The Y plane has width * height
+ * bytes, and it is followed by the U and V planes which have
+ * ((width + 1) / 2) * ((height + 1) / 2) bytes respectively. The rows have no
+ * padding. The conversion to BGR uses the BT.601 limited range.
+ */
+final class Yuv420 {
+
+  /**
+   * @param width Image width
+   * @param height Image height
+   * @return The bytes of planes
+   */
+  static int size(final int width, final int height) {
+    return width * height + 2 * chromaWidth(width) * chromaHeight(height);
+  }
+
+  /**
+   * @param width Image width
+   * @return The width of chroma planes
+   */
+  static int chromaWidth(final int width) {
+    return (width + 1) / 2;
+  }
+
+  /**
+   * @param height Image height
+   * @return The height of chroma planes
+   */
+  static int chromaHeight(final int height) {
+    return (height + 1) / 2;
+  }
+
+  /**
+   * @param picture The decoded picture
+   * @return {@code true} if the picture can be copied by
+   * {@link #copy(IVideoPicture, byte[])}
+   */
+  static boolean isSupported(final IVideoPicture picture) {
+    return picture.getPixelType() == IPixelFormat.Type.YUV420P;
+  }
+
+  /**
+   * Copies the planes of picture without the row padding.
+   *
+   * @param picture The YUV420P picture
+   * @param planes The destination whose length is {@link #size(int, int)}
+   */
+  static void copy(final IVideoPicture picture, final byte[] planes) {
+    final int width = picture.getWidth();
+    final int height = picture.getHeight();
+    final int chromaWidth = chromaWidth(width);
+    final int chromaHeight = chromaHeight(height);
+    IBuffer buffer = picture.getData();
+    try {
+      int src = copyPlane(buffer, 0, picture.getDataLineSize(0),
+              planes, 0, width, height);
+      src = copyPlane(buffer, src, picture.getDataLineSize(1),
+              planes, width * height, chromaWidth, chromaHeight);
+      copyPlane(buffer, src, picture.getDataLineSize(2),
+              planes, width * height + chromaWidth * chromaHeight,
+              chromaWidth, chromaHeight);
+    } finally {
+      buffer.delete();
+    }
+  }
+
+  /**
+   * Copies a plane row by row.
+   *
+   * @param buffer The picture data
+   * @param src The position of plane in picture data
+   * @param lineSize The row size in picture data
+   * @param planes The destination
+   * @param dst The position of plane in destination
+   * @param width The plane width
+   * @param height The plane height
+   * @return The position of next plane in picture data
+   */
+  private static int copyPlane(final IBuffer buffer, final int src,
+          final int lineSize, final byte[] planes, final int dst,
+          final int width, final int height) {
+    if (lineSize == width) {
+      buffer.get(src, planes, dst, width * height);
+    } else {
+      for (int y = 0; y != height; ++y) {
+        buffer.get(src + y * lineSize, planes, dst + y * width, width);
+      }
+    }
+    return src + lineSize * height;
+  }
+
+  /**
+   * Converts the planes to BGR pixels.
+   *
+   * @param planes The YUV420 planes
+   * @param width Image width
+   * @param height Image height
+   * @param bgr The destination whose length is width * height * 3
+   */
+  static void toBgr(final byte[] planes, final int width, final int height,
+          final byte[] bgr) {
+    final int chromaWidth = chromaWidth(width);
+    final int uOffset = width * height;
+    final int vOffset = uOffset + chromaWidth * chromaHeight(height);
+    int out = 0;
+    for (int y = 0; y != height; ++y) {
+      final int chromaRow = (y / 2) * chromaWidth;
+      for (int x = 0; x != width; ++x) {
+        final int c = 298 * ((planes[y * width + x] & 0xff) - 16);
+        final int chroma = chromaRow + x / 2;
+        final int d = (planes[uOffset + chroma] & 0xff) - 128;
+        final int e = (planes[vOffset + chroma] & 0xff) - 128;
+        bgr[out++] = clip((c + 516 * d + 128) >> 8);
+        bgr[out++] = clip((c - 100 * d - 208 * e + 128) >> 8);
+        bgr[out++] = clip((c + 409 * e + 128) >> 8);
+      }
+    }
+  }
+
+  /**
+   * @param value The color value
+   * @return The value clipped to a unsigned byte
+   */
+  private static byte clip(final int value) {
+    if (value < 0) {
+      return 0;
+    }
+    if (value > 255) {
+      return (byte) 255;
+    }
+    return (byte) value;
+  }
+
+  /**
+   * Can't be instantiated with this ctor.
+   */
+  private Yuv420() {
+  }
+}
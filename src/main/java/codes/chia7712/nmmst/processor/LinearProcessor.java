@@ -19,6 +19,15 @@ import codes.chia7712.nmmst.NodeInformation;
  */
 public class LinearProcessor implements FrameProcessor {
 
+  /**
+   * The luma value of black in limited range.
+   */
+  private static final int LUMA_BLACK = 16;
+  /**
+   * The chroma value of no color.
+   */
+  private static final int CHROMA_ZERO = 128;
+
   /**
    * The start x coordinate from verical axis.
    */
@@ -209,10 +218,95 @@ public class LinearProcessor implements FrameProcessor {
     }
   }
 
+  /**
+   * Fuses the edge for specified YUV420 planes. Scaling the luma offset and
+   * chroma offsets by the weight is equal to scaling the RGB value, so the
+   * edge is same as {@link #process(BufferedImage)}. The chroma sample is
+   * shared by 2x2 pixels, so it is scaled by the weight of the even pixel.
+   *
+   * @param planes The YUV420 planes without row padding
+   * @param width Image width
+   * @param height Image height
+   */
+  public final void processYuv(final byte[] planes, final int width,
+          final int height) {
+    final int chromaWidth = (width + 1) / 2;
+    final int uOffset = width * height;
+    final int vOffset = uOffset + chromaWidth * ((height + 1) / 2);
+    //Vertical, use xEquation
+    for (int x = (int) (width * xInitV);
+            x != (int) (width * xFinalV); ++x) {
+      final double weight = xEquation.getY((double) x / (double) width);
+      if (weight >= 1.0) {
+        continue;
+      }
+      for (int y = (int) (height * yInitV);
+              y != (int) (height * yFinalV); ++y) {
+        scaleLuma(planes, x + y * width, weight);
+        if ((x & 1) == 0 && (y & 1) == 0) {
+          final int chroma = (y / 2) * chromaWidth + x / 2;
+          scaleChroma(planes, uOffset + chroma, weight);
+          scaleChroma(planes, vOffset + chroma, weight);
+        }
+      }
+    }
+    //horizontal, use yEquation
+    for (int y = (int) (height * yInitH);
+            y != (int) (height * yFinalH); ++y) {
+      final double weight = yEquation.getY((double) y / (double) height);
+      if (weight >= 1.0) {
+        continue;
+      }
+      for (int x = (int) (width * xInitH);
+              x != (int) (width * xFinalH); ++x) {
+        scaleLuma(planes, x + y * width, weight);
+        if ((x & 1) == 0 && (y & 1) == 0) {
+          final int chroma = (y / 2) * chromaWidth + x / 2;
+          scaleChroma(planes, uOffset + chroma, weight);
+          scaleChroma(planes, vOffset + chroma, weight);
+        }
+      }
+    }
+  }
+
+  /**
+   * Scales the luma offset from black level.
+   *
+   * @param planes The YUV420 planes
+   * @param index The luma index
+   * @param weight The weight for RGB value
+   */
+  private static void scaleLuma(final byte[] planes, final int index,
+          final double weight) {
+    int value = (int) (LUMA_BLACK
+            + ((planes[index] & 0xff) - LUMA_BLACK) * weight);
+    planes[index] = (byte) value;
+  }
+
+  /**
+   * Scales the chroma offset from neutral level.
+   *
+   * @param planes The YUV420 planes
+   * @param index The chroma index
+   * @param weight The weight for RGB value
+   */
+  private static void scaleChroma(final byte[] planes, final int index,
+          final double weight) {
+    int value = (int) (CHROMA_ZERO
+            + ((planes[index] & 0xff) - CHROMA_ZERO) * weight);
+    planes[index] = (byte) value;
+  }
+
   @Override
   public final Optional<Frame> postDecodeFrame(final Frame frame) {
-    if (frame != null) {
-      process(frame.getImage());
+    if (frame != null && !frame.isBlended()) {
+      byte[] planes = frame.getPlanes();
+      if (planes != null) {
+        processYuv(planes, frame.getWidth(), frame.getHeight());
+      } else {
+        process(frame.getImage());
+      }
+      frame.setBlended();
     }
     return Optional.ofNullable(frame);
   }
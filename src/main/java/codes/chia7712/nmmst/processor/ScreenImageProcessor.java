@@ -0,0 +1,74 @@
+package codes.chia7712.nmmst.processor;
+
+import java.util.Optional;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.NProperties;
+import codes.chia7712.nmmst.media.BasePanel;
+import codes.chia7712.nmmst.media.Frame;
+import codes.chia7712.nmmst.media.FramePool;
+
+/**
+ * Converts the decoded frame to the screen format at the size drawn by the
+ * panel. It runs on the decode side, so the panel only blits the image. It
+ * should be the last processor overriding the
+ * {@link FrameProcessor#postDecodeFrame(Frame)} because the edge blending
+ * works on the decoded image. The frame is unchanged if the panel has no
+ * size or the frame keeps the YUV420 planes.
+ */
+public class ScreenImageProcessor implements FrameProcessor {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(ScreenImageProcessor.class);
+
+  /**
+   * The panel to draw the frames.
+   */
+  private final BasePanel panel;
+
+  /**
+   * Constructs a processor for specified panel.
+   *
+   * @param panel The panel to draw the frames
+   */
+  public ScreenImageProcessor(final BasePanel panel) {
+    this.panel = panel;
+  }
+
+  /**
+   * Creates a processor if the {@link NConstants#FRAME_PRESCALE} is enabled.
+   * The prescale is rejected if the frames are queued in YUV420, because the
+   * screen image would undo the memory saving of YUV420 planes.
+   *
+   * @param properties NProperties provides the prescale and frame format
+   * @param panel The panel to draw the frames
+   * @return A processor, or empty if the prescale is disabled or rejected
+   */
+  public static Optional<FrameProcessor> create(final NProperties properties,
+          final BasePanel panel) {
+    if (!properties.getBoolean(NConstants.FRAME_PRESCALE)) {
+      return Optional.empty();
+    }
+    if (FramePool.Format.valueOf(properties.getString(
+            NConstants.FRAME_FORMAT).toUpperCase())
+            == FramePool.Format.YUV420) {
+      LOG.warn(NConstants.FRAME_PRESCALE + " is ignored because "
+              + NConstants.FRAME_FORMAT + " is YUV420");
+      return Optional.empty();
+    }
+    return Optional.of(new ScreenImageProcessor(panel));
+  }
+
+  @Override
+  public final Optional<Frame> postDecodeFrame(final Frame frame) {
+    if (frame != null) {
+      panel.getDrawSize(frame.getWidth(), frame.getHeight())
+              .ifPresent(size -> frame.toScreenImage(size.width, size.height));
+    }
+    return Optional.ofNullable(frame);
+  }
+}
@@ -0,0 +1,246 @@
+package codes.chia7712.nmmst.utils;
+
+import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.NProperties;
+import codes.chia7712.nmmst.NodeInformation;
+import codes.chia7712.nmmst.media.ClusterClock;
+import codes.chia7712.nmmst.threads.BaseTimer;
+import codes.chia7712.nmmst.threads.Closer;
+import codes.chia7712.nmmst.threads.Taskable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility methods provide the cluster clock. The clock of master node is the
+ * cluster clock, and the video nodes estimate the offset to it by the
+ * NTP-style probes sent to the register port of master node.
+ */
+public final class ClockUtil {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG
+          = LogFactory.getLog(ClockUtil.class);
+
+  /**
+   * Creates the cluster clock for specified node. The clock is synchronized
+   * with the master node periodically. The local clock is returned if the
+   * node is the master node. If there is no master node or the
+   * synchronization is disabled, the local clock which isn't synchronized is
+   * returned.
+   *
+   * @param closer This closer is used for stopping the synchronization
+   * @param properties NProperties provides the master node
+   * @param nodeInformation Node information
+   * @return The cluster clock
+   */
+  public static ClusterClock createClock(final Closer closer,
+          final NProperties properties,
+          final NodeInformation nodeInformation) {
+    Optional<NodeInformation> master = NodeInformation.getMasterNode(
+            properties);
+    if (master.isPresent()
+            && master.get().getLocation() == nodeInformation.getLocation()) {
+      return ClusterClock.local();
+    }
+    if (!properties.getBoolean(NConstants.CLOCK_SYNC_ENABLE)
+            || !master.isPresent()) {
+      return ClusterClock.unsynced();
+    }
+    return closer.invokeNewThread(new Synchronizer(master.get()),
+            new BaseTimer(TimeUnit.MILLISECONDS,
+                    properties.getInteger(NConstants.CLOCK_SYNC_PERIOD)));
+  }
+
+  /**
+   * A probe for estimating the clock offset. The node stamps the origin time
+   * before sending, and the master stamps the receive and transmit time.
+   */
+  public static final class Probe implements Serializable {
+
+    /**
+     * Serial version of this class.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The local time of node when the probe is sent.
+     */
+    private final long originTime;
+    /**
+     * The master time when the probe is received.
+     */
+    private final long receiveTime;
+    /**
+     * The master time when the probe is sent back.
+     */
+    private final long transmitTime;
+
+    /**
+     * @param originTime The local time of node when the probe is sent
+     * @param receiveTime The master time when the probe is received
+     * @param transmitTime The master time when the probe is sent back
+     */
+    private Probe(final long originTime, final long receiveTime,
+            final long transmitTime) {
+      this.originTime = originTime;
+      this.receiveTime = receiveTime;
+      this.transmitTime = transmitTime;
+    }
+
+    /**
+     * Stamps the receive time and transmit time by the local clock. It is
+     * called by the master node.
+     *
+     * @param receive The local time when the probe is received
+     * @return The probe to send back
+     */
+    Probe answer(final long receive) {
+      return new Probe(originTime, receive, System.nanoTime());
+    }
+  }
+
+  /**
+   * Probes the master node periodically, and provides the cluster time. The
+   * offset comes from the probe which has the min round trip time in recent
+   * probes, because its network delay is the most symmetric. The first
+   * offset is chosen from a burst of probes, and then the offset is slewed,
+   * so the presentation isn't jumped by a bad estimate.
+   */
+  private static class Synchronizer implements Taskable, ClusterClock {
+
+    /**
+     * The number of recent probes to choose the offset from.
+     */
+    private static final int PROBE_WINDOW = 8;
+    /**
+     * The max nanos of offset to change per probe.
+     */
+    private static final long MAX_SLEW_NANOS = 1000 * 1000;
+    /**
+     * Scales up the time from nano to micro.
+     */
+    private static final long NANO_TO_MICRO = 1000;
+    /**
+     * The master node.
+     */
+    private final NodeInformation master;
+    /**
+     * The recent probes. Each element has the offset and round trip time.
+     */
+    private final Deque<long[]> probes = new ArrayDeque<>(PROBE_WINDOW);
+    /**
+     * Indicates whether the offset is estimated.
+     */
+    private volatile boolean synced = false;
+    /**
+     * The offset from local clock to cluster clock in nanos.
+     */
+    private volatile long offset = 0;
+    /**
+     * The round trip time of the probe which the offset comes from.
+     */
+    private volatile long rtt = 0;
+
+    /**
+     * @param master The master node
+     */
+    Synchronizer(final NodeInformation master) {
+      this.master = master;
+    }
+
+    @Override
+    public void work() {
+      int count = synced ? 1 : PROBE_WINDOW;
+      for (int i = 0; i != count; ++i) {
+        probe();
+      }
+    }
+
+    /**
+     * Sends a probe to master node, and then updates the offset.
+     */
+    private void probe() {
+      try (SerialStream client = new SerialStream(new Socket(
+              master.getIP(), master.getRegisterPort()))) {
+        client.openOutputStream();
+        final long origin = System.nanoTime();
+        client.write(new Probe(origin, 0, 0));
+        Object obj = client.read();
+        final long destination = System.nanoTime();
+        if (obj != null && obj.getClass() == Probe.class) {
+          Probe probe = (Probe) obj;
+          update(((probe.receiveTime - origin)
+                  + (probe.transmitTime - destination)) / 2,
+                  (destination - origin)
+                  - (probe.transmitTime - probe.receiveTime));
+        }
+      } catch (IOException | ClassNotFoundException e) {
+        LOG.error("Failed to probe the clock of " + master, e);
+      }
+    }
+
+    /**
+     * Adds a probe result, and then updates the offset.
+     *
+     * @param probeOffset The offset estimated by the probe
+     * @param probeRtt The round trip time of the probe
+     */
+    private void update(final long probeOffset, final long probeRtt) {
+      if (probes.size() == PROBE_WINDOW) {
+        probes.removeFirst();
+      }
+      probes.addLast(new long[]{probeOffset, probeRtt});
+      if (!synced && probes.size() != PROBE_WINDOW) {
+        return;
+      }
+      long[] best = probes.stream()
+              .min((a, b) -> Long.compare(a[1], b[1]))
+              .get();
+      if (!synced) {
+        offset = best[0];
+        synced = true;
+        LOG.info("Synchronize the clock with " + master
+                + ", offset(us) : " + getOffsetMicrotime()
+                + ", rtt(us) : " + best[1] / NANO_TO_MICRO);
+      } else {
+        offset += Math.max(-MAX_SLEW_NANOS,
+                Math.min(MAX_SLEW_NANOS, best[0] - offset));
+      }
+      rtt = best[1];
+    }
+
+    @Override
+    public long nanoTime() {
+      return System.nanoTime() + offset;
+    }
+
+    @Override
+    public long getOffsetMicrotime() {
+      return offset / NANO_TO_MICRO;
+    }
+
+    @Override
+    public long getRttMicrotime() {
+      return rtt / NANO_TO_MICRO;
+    }
+
+    @Override
+    public boolean isSynced() {
+      return synced;
+    }
+  }
+
+  /**
+   * Can't be instantiated with this ctor.
+   */
+  private ClockUtil() {
+  }
+}
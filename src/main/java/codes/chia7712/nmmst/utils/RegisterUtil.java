@@ -7,13 +7,20 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.media.BufferListener;
 import codes.chia7712.nmmst.media.BufferMetrics;
+import codes.chia7712.nmmst.media.MovieBuffer;
 import codes.chia7712.nmmst.threads.Closer;
 import codes.chia7712.nmmst.threads.Taskable;
 import codes.chia7712.nmmst.threads.Timer;
@@ -83,33 +90,81 @@ public final class RegisterUtil {
 
   /**
    * Instantiates a Watcher for monitoring buffer status for all video nodes.
+   * The watcher polls all nodes periodically, and it also receives the
+   * metrics pushed by nodes on the register port of master node.
    *
    * @param closer This closer is used for stoping the watcher
    * @param timer Control the check period
    * @param properties NProperties
    * @param notifiable Do something after checking all node
    * @return A watcher implementation
+   * @throws IOException If failed to establish a server socket
    */
   public static Watcher createWatcher(final Closer closer, final Timer timer,
-          final NProperties properties, final Notifiable notifiable) {
-    return closer.invokeNewThread(new WatcherImpl(properties, notifiable),
-            timer);
+          final NProperties properties, final Notifiable notifiable)
+          throws IOException {
+    WatcherImpl watcher = closer.invokeNewThread(
+            new WatcherImpl(properties, notifiable), timer);
+    Optional<NodeInformation> master = NodeInformation.getMasterNode(
+            properties);
+    if (master.isPresent()) {
+      closer.invokeNewThread(new Receiver(master.get(), watcher), null);
+    }
+    return watcher;
   }
 
   /**
-   * Invokes the reporter for transfering the buffer metrics.
+   * Invokes the reporter for transfering the buffer metrics. The metrics are
+   * also pushed to master node if the buffer crosses the watermark, changes
+   * the movie index or measures the start error.
    *
    * @param closer This closer to add closeable
+   * @param properties NProperties provides the master node
    * @param nodeInformation Node information
-   * @param bufferMetrics BufferMetrics
+   * @param buffer Movie buffer
    * @throws IOException If failed to establish a server socket
    */
   public static void invokeReporter(
           final Closer closer,
+          final NProperties properties,
           final NodeInformation nodeInformation,
-          final BufferMetrics bufferMetrics) throws IOException {
-    closer.invokeNewThread(new Reporter(nodeInformation,
-            bufferMetrics), null);
+          final MovieBuffer buffer) throws IOException {
+    closer.invokeNewThread(new Reporter(nodeInformation, buffer), null);
+    Optional<NodeInformation> master = NodeInformation.getMasterNode(
+            properties);
+    if (master.isPresent()) {
+      buffer.addListener(closer.invokeNewThread(
+              new Pusher(nodeInformation, master.get(), buffer), null));
+    }
+  }
+
+  /**
+   * Calculates the presentation skew of nodes. The nodes presenting the same
+   * movie are compared by the cluster origin, and the skew of a node is the
+   * difference between its origin and the median origin of the movie.
+   *
+   * @param nodeMetrics All node metrics
+   * @return The skew in microseconds. The positive value means the node
+   * presents later than others. The node which has no origin is excluded
+   */
+  public static Map<NodeInformation, Long> getClusterSkew(
+          final Map<NodeInformation, BufferMetrics> nodeMetrics) {
+    Map<Integer, List<Long>> origins = new HashMap<>();
+    nodeMetrics.values().stream()
+            .filter(m -> m.getClusterOriginMicrotime() != 0)
+            .forEach(m -> origins.computeIfAbsent(m.getCurrentMovieIndex(),
+                    k -> new ArrayList<>())
+                    .add(m.getClusterOriginMicrotime()));
+    Map<NodeInformation, Long> skew = new HashMap<>();
+    nodeMetrics.forEach((node, m) -> {
+      List<Long> movieOrigins = origins.get(m.getCurrentMovieIndex());
+      if (m.getClusterOriginMicrotime() != 0 && movieOrigins != null) {
+        Collections.sort(movieOrigins);
+        skew.put(node, m.getClusterOriginMicrotime()
+                - movieOrigins.get((movieOrigins.size() - 1) / 2));
+      }
+    });
+    return skew;
   }
 
   /**
@@ -125,7 +180,7 @@ public final class RegisterUtil {
      * The current status of video nodes.
      */
     private final Map<NodeInformation, BufferMetrics> nodeMetrics
-            = new HashMap();
+            = new HashMap<>();
     /**
      * The lower limit for frame buffer.
      */
@@ -134,6 +189,10 @@ public final class RegisterUtil {
      * Triggers it after checking all nodes.
      */
     private final Optional<Notifiable> notifier;
+    /**
+     * The media role of nodes.
+     */
+    private final Map<NodeInformation.Location, NodeInformation.MediaRole> roles;
 
     /**
      * Instantiates a {@link Watcher}.
@@ -147,6 +206,8 @@ public final class RegisterUtil {
       lowerLimit = properties.getDouble(
               NConstants.FRAME_BUFFER_LOWERLIMIT);
       notifier = Optional.of(notifiable);
+      roles = NProperties.stringToMediaRoles(
+              properties.getString(NConstants.MEDIA_ROLE));
     }
 
     @Override
@@ -161,7 +222,8 @@ public final class RegisterUtil {
     }
 
     /**
-     * Checks the buffer status for specified node.
+     * Checks the buffer status for specified node. The node which doesn't
+     * decode video is checked by the sample buffer.
      *
      * @param node The node to check
      * @param metrics The buffer metric of specified node
@@ -169,9 +231,28 @@ public final class RegisterUtil {
      * @return {@code true} if the node has enough buffer, {@code false}
      * otherwise
      */
-    private static boolean hasLowerBuffer(final NodeInformation node,
+    private boolean hasLowerBuffer(final NodeInformation node,
             final BufferMetrics metrics,
             final double lowerLimit) {
+      NodeInformation.MediaRole role = roles.get(node.getLocation());
+      if (role != null && !role.hasVideo()) {
+        boolean isLower = metrics.getSampleNumber() == 0;
+        if (isLower) {
+          LOG.warn(node.getIP() + " has no sample buffer");
+        }
+        return isLower;
+      }
+      if (metrics.getByteBudget() > 0) {
+        final double ratio = (double) metrics.getHeapSize()
+                / (double) metrics.getByteBudget();
+        boolean isLower = ratio <= lowerLimit;
+        if (isLower) {
+          LOG.warn(node.getIP() + " has lower buffer "
+                  + metrics.getHeapSize() + "/"
+                  + metrics.getByteBudget() + " bytes");
+        }
+        return isLower;
+      }
       final double ratio = (double) metrics.getFrameNumber()
               / (double) metrics.getFrameCapacity();
       boolean isLower = ratio <= lowerLimit;
@@ -214,7 +295,7 @@ public final class RegisterUtil {
     @Override
     public void checkNow() {
       Map<NodeInformation, BufferMetrics> tmp
-              = new HashMap();
+              = new HashMap<>();
       synchronized (nodeMetrics) {
         nodeMetrics.clear();
         tmp.clear();
@@ -246,6 +327,25 @@ public final class RegisterUtil {
       });
     }
 
+    /**
+     * Saves the metrics pushed by a node, and then notifies the notifier.
+     *
+     * @param location The node location
+     * @param metrics The pushed metrics
+     */
+    void update(final NodeInformation.Location location,
+            final BufferMetrics metrics) {
+      LOG.info(location + " pushes " + metrics);
+      Map<NodeInformation, BufferMetrics> tmp = new HashMap<>();
+      synchronized (nodeMetrics) {
+        nodeInformations.stream()
+                .filter(node -> node.getLocation() == location)
+                .forEach(node -> nodeMetrics.put(node, metrics));
+        tmp.putAll(nodeMetrics);
+      }
+      notifier.ifPresent(n -> n.notify(tmp));
+    }
+
     @Override
     public boolean isConflictWithBuffer(final int index) {
       synchronized (nodeMetrics) {
@@ -303,6 +403,167 @@ public final class RegisterUtil {
     }
   }
 
+  /**
+   * Receives the metrics pushed by video nodes. It also answers the clock
+   * probes, so the video nodes share the clock of master node.
+   */
+  private static class Receiver implements Taskable {
+
+    /**
+     * The server to accept connection from the video nodes.
+     */
+    private final ServerSocket server;
+    /**
+     * Saves the received metrics.
+     */
+    private final WatcherImpl watcher;
+
+    /**
+     * Constructs a server to receive the buffer metrics.
+     *
+     * @param master The master node
+     * @param watcherImpl Saves the received metrics
+     * @throws IOException If failed to establish a server socket
+     */
+    Receiver(final NodeInformation master, final WatcherImpl watcherImpl)
+            throws IOException {
+      server = new ServerSocket(master.getRegisterPort());
+      watcher = watcherImpl;
+      LOG.info(server.getLocalSocketAddress()
+              + ":" + server.getLocalPort());
+    }
+
+    @Override
+    public void close() {
+      try {
+        server.close();
+      } catch (IOException e) {
+        LOG.error(e);
+      }
+    }
+
+    @Override
+    public void work() {
+      try (SerialStream client = new SerialStream(server.accept())) {
+        Object obj = client.read();
+        final long receiveTime = System.nanoTime();
+        if (obj != null && obj.getClass() == NodeMetrics.class) {
+          NodeMetrics pushed = (NodeMetrics) obj;
+          watcher.update(pushed.location, pushed.metrics);
+        } else if (obj != null && obj.getClass() == ClockUtil.Probe.class) {
+          client.write(((ClockUtil.Probe) obj).answer(receiveTime));
+        }
+      } catch (IOException | ClassNotFoundException e) {
+        LOG.error(e);
+      }
+    }
+  }
+
+  /**
+   * Pushes the buffer metrics to master node if the buffer crosses the
+   * watermark, changes the movie index or measures the start error. The events only signal this thread,
+   * so the buffer isn't blocked by the network.
+   */
+  private static class Pusher implements Taskable, BufferListener {
+
+    /**
+     * This video node.
+     */
+    private final NodeInformation self;
+    /**
+     * The master node.
+     */
+    private final NodeInformation master;
+    /**
+     * This video node's buffer info.
+     */
+    private final BufferMetrics metrics;
+    /**
+     * The pending events. The events are merged to a single push.
+     */
+    private final BlockingQueue<Boolean> signals
+            = new LinkedBlockingQueue<>();
+
+    /**
+     * @param self This video node
+     * @param master The master node
+     * @param metrics This video node's buffer info
+     */
+    Pusher(final NodeInformation self, final NodeInformation master,
+            final BufferMetrics metrics) {
+      this.self = self;
+      this.master = master;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void work() throws InterruptedException {
+      signals.take();
+      signals.clear();
+      try (SerialStream client = new SerialStream(new Socket(
+              master.getIP(), master.getRegisterPort()))) {
+        client.write(new NodeMetrics(self.getLocation(),
+                new SerializedBufferMetrics(metrics)));
+      } catch (IOException e) {
+        LOG.error("Failed to push the metrics to " + master, e);
+      }
+    }
+
+    @Override
+    public void onHighWatermark(final BufferMetrics bufferMetrics) {
+      signals.offer(Boolean.TRUE);
+    }
+
+    @Override
+    public void onLowWatermark(final BufferMetrics bufferMetrics) {
+      signals.offer(Boolean.TRUE);
+    }
+
+    @Override
+    public void onWriteIndexChanged(final int index) {
+      signals.offer(Boolean.TRUE);
+    }
+
+    @Override
+    public void onReadIndexChanged(final int index) {
+      signals.offer(Boolean.TRUE);
+    }
+
+    @Override
+    public void onStartMeasured(final long microtime) {
+      signals.offer(Boolean.TRUE);
+    }
+  }
+
+  /**
+   * The metrics pushed by a video node.
+   */
+  private static class NodeMetrics implements Serializable {
+
+    /**
+     * Serial version of this class.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The node location.
+     */
+    private final NodeInformation.Location location;
+    /**
+     * The buffer metrics.
+     */
+    private final SerializedBufferMetrics metrics;
+
+    /**
+     * @param location The node location
+     * @param metrics The buffer metrics
+     */
+    NodeMetrics(final NodeInformation.Location location,
+            final SerializedBufferMetrics metrics) {
+      this.location = location;
+      this.metrics = metrics;
+    }
+  }
+
   /**
    * This is a {@link BufferMetrics} wrapper which is able to be serialized.
    */
@@ -329,6 +590,10 @@ public final class RegisterUtil {
      * The heap size to include the frames and samples.
      */
     private final long heapSize;
+    /**
+     * The max bytes of frames and samples.
+     */
+    private final long byteBudget;
     /**
      * The last index from the buffer of video node.
      */
@@ -353,6 +618,66 @@ public final class RegisterUtil {
      * The duration from movie of current frame.
      */
     private final long currentDuration;
+    /**
+     * The hit count of frame pool.
+     */
+    private final long framePoolHit;
+    /**
+     * The miss count of frame pool.
+     */
+    private final long framePoolMiss;
+    /**
+     * The outstanding count of frame pool.
+     */
+    private final long framePoolOutstanding;
+    /**
+     * The off-heap size of frames.
+     */
+    private final long offHeapSize;
+    /**
+     * The used heap of JVM.
+     */
+    private final long usedHeapSize;
+    /**
+     * The GC time of current show.
+     */
+    private final long gcMillis;
+    /**
+     * The number of converted pictures.
+     */
+    private final long convertCount;
+    /**
+     * The average microtime of conversion.
+     */
+    private final long convertMicrotime;
+    /**
+     * The number of dropped frames.
+     */
+    private final long droppedCount;
+    /**
+     * The number of late frames.
+     */
+    private final long lateCount;
+    /**
+     * The number of on-time frames.
+     */
+    private final long onTimeCount;
+    /**
+     * The latest A/V offset.
+     */
+    private final long avOffset;
+    /**
+     * The cluster origin of current movie.
+     */
+    private final long clusterOrigin;
+    /**
+     * The start error of last scheduled start.
+     */
+    private final long startError;
+    /**
+     * The number of audio underruns.
+     */
+    private final long audioUnderrun;
 
     /**
      * Constructs a serialized {@link BufferMetrics}.
@@ -365,12 +690,28 @@ public final class RegisterUtil {
       frameCapacity = metrics.getFrameCapacity();
       sampleCapacity = metrics.getSampleCapacity();
       heapSize = metrics.getHeapSize();
+      byteBudget = metrics.getByteBudget();
       lastIndex = metrics.getLastMovieIndex();
       lastTimestamp = metrics.getLastTimestamp();
       lastDuration = metrics.getLastDuration();
       currentIndex = metrics.getCurrentMovieIndex();
       currentTimestamp = metrics.getCurrentTimestamp();
       currentDuration = metrics.getCurrentDuration();
+      framePoolHit = metrics.getFramePoolHitCount();
+      framePoolMiss = metrics.getFramePoolMissCount();
+      framePoolOutstanding = metrics.getFramePoolOutstanding();
+      offHeapSize = metrics.getOffHeapSize();
+      usedHeapSize = metrics.getUsedHeapSize();
+      gcMillis = metrics.getGcMillis();
+      convertCount = metrics.getConvertCount();
+      convertMicrotime = metrics.getConvertMicrotime();
+      droppedCount = metrics.getDroppedFrameCount();
+      lateCount = metrics.getLateFrameCount();
+      onTimeCount = metrics.getOnTimeFrameCount();
+      avOffset = metrics.getAvOffsetMicrotime();
+      clusterOrigin = metrics.getClusterOriginMicrotime();
+      startError = metrics.getStartErrorMicrotime();
+      audioUnderrun = metrics.getAudioUnderrunCount();
     }
 
     @Override
@@ -378,6 +719,11 @@ public final class RegisterUtil {
       return heapSize;
     }
 
+    @Override
+    public long getByteBudget() {
+      return byteBudget;
+    }
+
     @Override
     public int getFrameNumber() {
       return frameNumber;
@@ -428,6 +774,81 @@ public final class RegisterUtil {
       return currentDuration;
     }
 
+    @Override
+    public long getFramePoolHitCount() {
+      return framePoolHit;
+    }
+
+    @Override
+    public long getFramePoolMissCount() {
+      return framePoolMiss;
+    }
+
+    @Override
+    public long getFramePoolOutstanding() {
+      return framePoolOutstanding;
+    }
+
+    @Override
+    public long getOffHeapSize() {
+      return offHeapSize;
+    }
+
+    @Override
+    public long getUsedHeapSize() {
+      return usedHeapSize;
+    }
+
+    @Override
+    public long getGcMillis() {
+      return gcMillis;
+    }
+
+    @Override
+    public long getConvertCount() {
+      return convertCount;
+    }
+
+    @Override
+    public long getConvertMicrotime() {
+      return convertMicrotime;
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+      return droppedCount;
+    }
+
+    @Override
+    public long getLateFrameCount() {
+      return lateCount;
+    }
+
+    @Override
+    public long getOnTimeFrameCount() {
+      return onTimeCount;
+    }
+
+    @Override
+    public long getAvOffsetMicrotime() {
+      return avOffset;
+    }
+
+    @Override
+    public long getClusterOriginMicrotime() {
+      return clusterOrigin;
+    }
+
+    @Override
+    public long getStartErrorMicrotime() {
+      return startError;
+    }
+
+    @Override
+    public long getAudioUnderrunCount() {
+      return audioUnderrun;
+    }
+
     @Override
     public String toString() {
       StringBuilder builder = new StringBuilder();
@@ -439,6 +860,10 @@ public final class RegisterUtil {
               .append(sampleNumber)
               .append("/")
               .append(sampleCapacity)
+              .append(", heap/budget : ")
+              .append(heapSize)
+              .append("/")
+              .append(byteBudget)
               .append(", current index/timestamp/duration : ")
               .append(currentIndex)
               .append("/")
@@ -451,6 +876,36 @@ public final class RegisterUtil {
               .append(lastTimestamp)
               .append("/")
               .append(lastDuration)
+              .append(", pool hit/miss/outstanding : ")
+              .append(framePoolHit)
+              .append("/")
+              .append(framePoolMiss)
+              .append("/")
+              .append(framePoolOutstanding)
+              .append(", offheap/jvm heap/gc(ms) : ")
+              .append(offHeapSize)
+              .append("/")
+              .append(usedHeapSize)
+              .append("/")
+              .append(gcMillis)
+              .append(", convert count/microtime : ")
+              .append(convertCount)
+              .append("/")
+              .append(convertMicrotime)
+              .append(", dropped/late/on-time : ")
+              .append(droppedCount)
+              .append("/")
+              .append(lateCount)
+              .append("/")
+              .append(onTimeCount)
+              .append(", av offset(us) : ")
+              .append(avOffset)
+              .append(", cluster origin(us) : ")
+              .append(clusterOrigin)
+              .append(", start error(us) : ")
+              .append(startError)
+              .append(", audio underrun : ")
+              .append(audioUnderrun)
               .toString();
     }
   }
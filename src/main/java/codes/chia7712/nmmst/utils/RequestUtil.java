@@ -9,6 +9,7 @@ import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.OptionalLong;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import javax.imageio.ImageIO;
@@ -163,7 +164,11 @@ public final class RequestUtil {
      * WOL request.
      */
     WOL,
-    UNLOCK_IMAGE
+    UNLOCK_IMAGE,
+    /**
+     * ADJUST request.
+     */
+    ADJUST
   }
 
   /**
@@ -179,6 +184,14 @@ public final class RequestUtil {
      * Is warm up.
      */
     private final boolean isWramUp;
+    /**
+     * Indicates whether the request has the present time.
+     */
+    private final boolean scheduled;
+    /**
+     * The cluster time in microseconds to present the first frame.
+     */
+    private final long presentTime;
 
     /**
      * Constructs a request with specified type.
@@ -188,6 +201,26 @@ public final class RequestUtil {
     public Request(final RequestType requestType) {
       type = requestType;
       isWramUp = false;
+      scheduled = false;
+      presentTime = 0;
+    }
+
+    /**
+     * Constructs a request with specified type and present time. The nodes
+     * present the first frame at the present time instead of when they
+     * receive the request.
+     *
+     * @param requestType Request type
+     * @param presentMicrotime The cluster time in microseconds to present the
+     * first frame
+     * @see codes.chia7712.nmmst.media.ClusterClock
+     */
+    public Request(final RequestType requestType,
+            final long presentMicrotime) {
+      type = requestType;
+      isWramUp = false;
+      scheduled = true;
+      presentTime = presentMicrotime;
     }
 
     /**
@@ -196,6 +229,16 @@ public final class RequestUtil {
     private Request() {
       type = null;
       isWramUp = true;
+      scheduled = false;
+      presentTime = 0;
+    }
+
+    /**
+     * @return The cluster time in microseconds to present the first frame, or
+     * empty if the request should be done when it is received
+     */
+    public final OptionalLong getPresentTime() {
+      return scheduled ? OptionalLong.of(presentTime) : OptionalLong.empty();
     }
 
     /**
@@ -366,6 +409,19 @@ public final class RequestUtil {
       super(RequestType.SELECT);
       index = movieIndex;
     }
+
+    /**
+     * Constructs a SelectRequest for specified index and the present time of
+     * the first frame of selected movie.
+     *
+     * @param movieIndex The movie index
+     * @param presentMicrotime The cluster time in microseconds to present the
+     * first frame of selected movie
+     */
+    public SelectRequest(final int movieIndex, final long presentMicrotime) {
+      super(RequestType.SELECT, presentMicrotime);
+      index = movieIndex;
+    }
 //        /**
 //         * @return The movie order
 //         */
@@ -386,6 +442,46 @@ public final class RequestUtil {
     }
   }
 
+  /**
+   * This request is used for correcting the presentation clock of a node
+   * which drifts from other nodes.
+   */
+  public static class AdjustRequest extends Request {
+
+    /**
+     * Serial version of this class.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The microtime to move the presentation clock.
+     */
+    private final long microtime;
+
+    /**
+     * Constructs a AdjustRequest for specified microtime.
+     *
+     * @param adjustMicrotime The microtime to move the presentation clock. The
+     * positive value holds the current frame, and the negative value drops
+     * the late frames
+     */
+    public AdjustRequest(final long adjustMicrotime) {
+      super(RequestType.ADJUST);
+      microtime = adjustMicrotime;
+    }
+
+    /**
+     * @return The microtime to move the presentation clock
+     */
+    public final long getMicrotime() {
+      return microtime;
+    }
+
+    @Override
+    public final String toString() {
+      return String.valueOf(microtime);
+    }
+  }
+
   /**
    * Can't be instantiated with this ctor.
    */
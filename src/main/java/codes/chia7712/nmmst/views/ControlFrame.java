@@ -19,11 +19,10 @@ import codes.chia7712.nmmst.controller.StickTrigger;
 import codes.chia7712.nmmst.controller.WheelTrigger;
 import codes.chia7712.nmmst.media.BasePanel;
 import codes.chia7712.nmmst.media.BufferFactory;
-import codes.chia7712.nmmst.media.BufferMetrics;
 import codes.chia7712.nmmst.media.MediaWorker;
 import codes.chia7712.nmmst.media.MovieBuffer;
-import codes.chia7712.nmmst.media.MovieInfo;
 import codes.chia7712.nmmst.processor.FrameProcessor;
+import codes.chia7712.nmmst.processor.ScreenImageProcessor;
 import codes.chia7712.nmmst.threads.Closer;
 import codes.chia7712.nmmst.utils.Painter;
 import codes.chia7712.nmmst.utils.RegisterUtil;
@@ -111,16 +110,17 @@ public final class ControlFrame {
         processorList.add(wheelTrigger);
         triggerList.add(wheelTrigger);
       }
-      media = MediaWorker.newBuilder()
-              .setBasePanel(new BasePanel(BasePanel.Mode.FILL))
+      BasePanel panel = new BasePanel(BasePanel.Mode.FILL);
+      ScreenImageProcessor.create(getNProperties(), panel)
+              .ifPresent(processorList::add);
+      media = newMediaWorkerBuilder()
+              .setBasePanel(panel)
               .setBufferedImage(Painter.getStringImage("Coming Soon",
                       getNProperties().getInteger(NConstants.GENERATED_IMAGE_WIDTH),
                       getNProperties().getInteger(NConstants.GENERATED_IMAGE_HEIGHT),
                       getNProperties().getInteger(NConstants.GENERATED_FONT_SIZE)))
-              .setCloser(getCloser())
               .setFrameProcessor(FrameProcessor.valueOf(processorList))
               .setMovieBuffer(buffer)
-              .setMovieInfo(new MovieInfo(getNProperties()))
               .build();
       ControllerFactory.invokeTriggers(
               getNProperties(),
@@ -129,7 +129,7 @@ public final class ControlFrame {
       panelController = new MultiPanelController(
               getNProperties(), getCloser(), media.getPanel(),
               stickTrigger);
-      RegisterUtil.invokeReporter(getCloser(),
+      RegisterUtil.invokeReporter(getCloser(), getNProperties(),
               getNodeInformation(), media.getMovieBuffer());
     }
 
@@ -140,7 +140,7 @@ public final class ControlFrame {
      * @return A stick trigger or null
      */
     private static WheelTrigger createWheelTrigger(final NProperties property,
-            final Closer closer, final BufferMetrics buffer) {
+            final Closer closer, final MovieBuffer buffer) {
       if (property.getBoolean(NConstants.WHEEL_ENABLE)) {
         return new WheelTrigger(property, closer, buffer);
       }
@@ -0,0 +1,118 @@
+package codes.chia7712.nmmst.views;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.NProperties;
+import codes.chia7712.nmmst.NodeInformation;
+import codes.chia7712.nmmst.media.BufferMetrics;
+import codes.chia7712.nmmst.threads.Taskable;
+import codes.chia7712.nmmst.utils.RegisterUtil;
+import codes.chia7712.nmmst.utils.RequestUtil.AdjustRequest;
+import codes.chia7712.nmmst.utils.SerialStream;
+
+/**
+ * Corrects the drift of video nodes while the show runs. The skew of a node
+ * comes from the cluster origin reported with its buffer metrics, and the
+ * node which is ahead of or behind others by more than the threshold receives
+ * a small adjustment. A node is corrected only if it is presenting, and it
+ * isn't corrected again until it reports a new origin, so the adjustments
+ * don't pile up. The requests are sent by this thread, so the watcher isn't
+ * blocked by the network. The correction is disabled if the video is
+ * presented by the audio clock, because the A/V sync moves the same clock.
+ */
+final class DriftCorrector implements Taskable, RegisterUtil.Notifiable {
+
+  /**
+   * Log.
+   */
+  private static final Log LOG = LogFactory.getLog(DriftCorrector.class);
+  /**
+   * The max microtime of a adjustment. It is about one frame of 30 fps.
+   */
+  private static final long MAX_ADJUST_MICROTIME = 33 * 1000;
+  /**
+   * The max skew which makes sense. The larger skew comes from a node whose
+   * origin isn't comparable, so it isn't corrected.
+   */
+  private static final long MAX_SKEW_MICROTIME = 5 * 1000 * 1000;
+  /**
+   * The skew to correct. The zero disables the correction.
+   */
+  private final long threshold;
+  /**
+   * The latest node metrics to check.
+   */
+  private final BlockingQueue<Map<NodeInformation, BufferMetrics>> snapshots
+          = new LinkedBlockingQueue<>();
+  /**
+   * The timestamp of each node in last check.
+   */
+  private final Map<NodeInformation, Long> lastTimestamps = new HashMap<>();
+  /**
+   * The origin of each node when it was corrected.
+   */
+  private final Map<NodeInformation, Long> correctedOrigins = new HashMap<>();
+
+  /**
+   * @param properties NProperties provides the threshold and A/V sync
+   */
+  DriftCorrector(final NProperties properties) {
+    if (properties.getBoolean(NConstants.AV_SYNC_ENABLE)) {
+      LOG.info("The drift correction is disabled by "
+              + NConstants.AV_SYNC_ENABLE);
+      threshold = 0;
+    } else {
+      threshold = properties.getLong(NConstants.DRIFT_CORRECTION_MICROTIME);
+    }
+  }
+
+  @Override
+  public void notify(final Map<NodeInformation, BufferMetrics> nodeMetrics) {
+    if (threshold <= 0) {
+      return;
+    }
+    snapshots.clear();
+    snapshots.offer(new HashMap<>(nodeMetrics));
+  }
+
+  @Override
+  public void work() throws InterruptedException {
+    Map<NodeInformation, BufferMetrics> nodeMetrics = snapshots.take();
+    RegisterUtil.getClusterSkew(nodeMetrics).forEach((node, skew) -> {
+      BufferMetrics metrics = nodeMetrics.get(node);
+      Long lastTimestamp = lastTimestamps.put(node,
+              metrics.getCurrentTimestamp());
+      if (lastTimestamp == null
+              || lastTimestamp == metrics.getCurrentTimestamp()
+              || Math.abs(skew) <= threshold) {
+        return;
+      }
+      if (Math.abs(skew) > MAX_SKEW_MICROTIME) {
+        LOG.warn("Ignore the skew " + skew + "us of "
+                + node.getLocation());
+        return;
+      }
+      final long origin = metrics.getClusterOriginMicrotime();
+      Long correctedOrigin = correctedOrigins.get(node);
+      if (correctedOrigin != null && correctedOrigin == origin) {
+        return;
+      }
+      final long microtime = Math.max(-MAX_ADJUST_MICROTIME,
+              Math.min(MAX_ADJUST_MICROTIME, -skew));
+      try {
+        SerialStream.send(node, new AdjustRequest(microtime));
+        correctedOrigins.put(node, origin);
+        LOG.info("Adjust " + node.getLocation() + " by " + microtime
+                + "us for skew " + skew + "us");
+      } catch (InterruptedException | IOException e) {
+        LOG.error("Failed to adjust " + node, e);
+      }
+    });
+  }
+}
@@ -6,6 +6,7 @@ import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -18,9 +19,9 @@ import org.apache.commons.logging.LogFactory;
 import codes.chia7712.nmmst.NConstants;
 import codes.chia7712.nmmst.media.MediaWorker;
 import codes.chia7712.nmmst.processor.ProcessorFactory;
+import codes.chia7712.nmmst.processor.ScreenImageProcessor;
 import codes.chia7712.nmmst.media.BasePanel;
 import codes.chia7712.nmmst.media.BufferFactory;
-import codes.chia7712.nmmst.media.MovieInfo;
 import codes.chia7712.nmmst.processor.FrameProcessor;
 import codes.chia7712.nmmst.processor.LinearProcessor;
 import codes.chia7712.nmmst.utils.Painter;
@@ -64,6 +65,8 @@ public final class FusionFrame {
             NConstants.FRAME_WIDTH);
     final int height = frameData.getNProperties().getInteger(
             NConstants.FRAME_HEIGHT);
+    final boolean activeRendering = frameData.getNProperties().getBoolean(
+            NConstants.PANEL_ACTIVE_RENDERING);
     final JFrame f = new BaseFrame(frameData);
     final Point point = new Point(16, 16);
     f.setCursor(f.getToolkit().createCustomCursor(
@@ -78,6 +81,9 @@ public final class FusionFrame {
       f.setUndecorated(true);
       f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
       f.setVisible(true);
+      if (activeRendering) {
+        frameData.getMainPanel().startActiveRendering(f);
+      }
     });
   }
 
@@ -106,18 +112,20 @@ public final class FusionFrame {
       trailerProcessor = new TrailerProcessor("The End",
               getNProperties().getInteger(NConstants.GENERATED_FONT_SIZE),
               Color.WHITE);
-      media = MediaWorker.newBuilder()
-              .setBasePanel(new BasePanel(BasePanel.Mode.FILL))
+      BasePanel panel = new BasePanel(BasePanel.Mode.FILL);
+      List<FrameProcessor> processors = new ArrayList<>(Arrays.asList(
+              ProcessorFactory.createFrameProcessor(getNodeInformation().getLocation()),
+              trailerProcessor
+      ));
+      ScreenImageProcessor.create(getNProperties(), panel)
+              .ifPresent(processors::add);
+      media = newMediaWorkerBuilder()
+              .setBasePanel(panel)
               .setBufferedImage(init)
-              .setCloser(getCloser())
-              .setFrameProcessor(FrameProcessor.valueOf(Arrays.asList(
-                      ProcessorFactory.createFrameProcessor(getNodeInformation().getLocation()),
-                      trailerProcessor
-              )))
+              .setFrameProcessor(FrameProcessor.valueOf(processors))
               .setMovieBuffer(BufferFactory.createMovieBuffer(getNProperties()))
-              .setMovieInfo(new MovieInfo(getNProperties()))
               .build();
-      RegisterUtil.invokeReporter(getCloser(),
+      RegisterUtil.invokeReporter(getCloser(), getNProperties(),
               getNodeInformation(), media.getMovieBuffer());
       getFunctions().put(RequestType.FUSION_TEST,
               (FrameData data, Request previousReq, Request currentReq)
@@ -176,10 +176,15 @@ public class MasterFrameData implements FrameData {
     requestQueue = RequestUtil.createRemoteQueue(selfInformation, closer);
     panelController = new PanelController(properties, this);
     dio = DioFactory.getDefault(properties);
+    DriftCorrector corrector = closer.invokeNewThread(
+            new DriftCorrector(properties));
     watcher = RegisterUtil.createWatcher(closer,
             new BaseTimer(TimeUnit.SECONDS,
                     properties.getInteger(NConstants.SECOND_TIME_TO_REGISTER)),
-            properties, panelController);
+            properties, nodeMetrics -> {
+              panelController.notify(nodeMetrics);
+              corrector.notify(nodeMetrics);
+            });
     order = new MovieInfo(properties);
     flow = new StartFlow(properties, watcher, order, dio);
     videoNodes = NodeInformation.getVideoNodes(properties);
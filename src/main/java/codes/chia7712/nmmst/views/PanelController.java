@@ -195,11 +195,17 @@ public class PanelController implements RegisterUtil.Notifiable {
   public final void notify(
           final Map<NodeInformation, BufferMetrics> nodeMetrics) {
     StringBuilder str = new StringBuilder();
+    Map<NodeInformation, Long> skew = RegisterUtil.getClusterSkew(nodeMetrics);
     nodeMetrics.forEach((node, metrics) -> {
       str.append(node.getLocation())
               .append(":")
-              .append(metrics.getFrameNumber())
-              .append(" ");
+              .append(metrics.getFrameNumber());
+      if (skew.containsKey(node)) {
+        str.append("/")
+                .append(skew.get(node) / 1000)
+                .append("ms");
+      }
+      str.append(" ");
     });
     text.setText(str.toString());
   }
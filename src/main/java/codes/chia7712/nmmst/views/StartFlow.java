@@ -9,6 +9,7 @@ import javax.swing.JOptionPane;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import codes.chia7712.nmmst.NConstants;
+import codes.chia7712.nmmst.media.ClusterClock;
 import codes.chia7712.nmmst.media.MovieInfo;
 import codes.chia7712.nmmst.NodeInformation;
 import codes.chia7712.nmmst.utils.RegisterUtil;
@@ -153,9 +154,19 @@ public class StartFlow {
     service.execute(() -> {
       try {
         flow = info.createPlayFlow();
-        SerialStream.sendAll(NodeInformation.getVideoNodes(properties),
-                new Request(RequestType.START), true);
         final int nanoToMicro = 1000;
+        if (properties.getBoolean(NConstants.CLOCK_SYNC_ENABLE)) {
+          final long presentTime = ClusterClock.local().nanoTime()
+                  / nanoToMicro
+                  + properties.getLong(NConstants.START_LEAD_MICROTIME);
+          SerialStream.sendAll(NodeInformation.getVideoNodes(properties),
+                  new Request(RequestType.START, presentTime), true);
+          TimeUnit.MICROSECONDS.sleep(presentTime
+                  - ClusterClock.local().nanoTime() / nanoToMicro);
+        } else {
+          SerialStream.sendAll(NodeInformation.getVideoNodes(properties),
+                  new Request(RequestType.START), true);
+        }
         while (flow.hasNext()) {
           MovieAttribute attribute = flow.next();
           final long startTime = System.nanoTime();
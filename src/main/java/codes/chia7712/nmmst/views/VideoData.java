@@ -11,9 +11,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import codes.chia7712.nmmst.threads.AtomicCloser;
 import codes.chia7712.nmmst.threads.Closer;
+import codes.chia7712.nmmst.NConstants;
 import codes.chia7712.nmmst.NodeInformation;
 import codes.chia7712.nmmst.NProperties;
+import codes.chia7712.nmmst.media.MediaWorker;
+import codes.chia7712.nmmst.media.MovieInfo;
+import codes.chia7712.nmmst.media.Speaker;
+import codes.chia7712.nmmst.utils.ClockUtil;
 import codes.chia7712.nmmst.utils.RequestUtil;
+import codes.chia7712.nmmst.utils.RequestUtil.AdjustRequest;
 import codes.chia7712.nmmst.utils.RequestUtil.Request;
 import codes.chia7712.nmmst.utils.RequestUtil.RequestType;
 import codes.chia7712.nmmst.utils.RequestUtil.SelectRequest;
@@ -70,6 +76,8 @@ public abstract class VideoData implements FrameData {
     requestQueue = RequestUtil.createRemoteQueue(selfInformation, closer);
     functions.put(RequestType.START, (data, previousReq, currentReq)
             -> {
+      currentReq.getPresentTime().ifPresent(
+              data.getMediaWorker()::scheduleStart);
       data.getMediaWorker().getPanel().unlockImage();
       data.getMediaWorker().setPause(false);
     });
@@ -82,17 +90,73 @@ public abstract class VideoData implements FrameData {
       if (currentReq.getClass() == SelectRequest.class) {
         SelectRequest select
                 = (SelectRequest) currentReq;
+        select.getPresentTime().ifPresent(
+                data.getMediaWorker()::scheduleNextMovie);
         data.getMediaWorker().setNextFlow(
                 select.getIndex());
         LOG.info("set next index:" + select.getIndex());
       }
     });
+    functions.put(RequestType.ADJUST, (data, previousReq, currentReq)
+            -> {
+      if (currentReq.getClass() == AdjustRequest.class) {
+        data.getMediaWorker().adjustClock(
+                ((AdjustRequest) currentReq).getMicrotime());
+      }
+    });
     functions.put(RequestType.REBOOT, (data, previousReq, currentReq)
             -> WindowsUtil.reboot());
     functions.put(RequestType.SHUTDOWN, (data, previousReq, currentReq)
             -> WindowsUtil.shutdown());
   }
 
+  /**
+   * Creates a builder of media worker which is set by the properties of this
+   * node. The caller sets the panel, initial image, frame processor and movie
+   * buffer.
+   *
+   * @return A builder of media worker
+   * @throws IOException If failed to load the movie info
+   */
+  protected final MediaWorker.Builder newMediaWorkerBuilder()
+          throws IOException {
+    return MediaWorker.newBuilder()
+            .setCloser(closer)
+            .setMovieInfo(new MovieInfo(properties))
+            .setDecodeWorkerNumber(properties
+                    .getInteger(NConstants.DECODE_WORKER_NUMBER))
+            .setLookahead(
+                    properties.getInteger(
+                            NConstants.LOOKAHEAD_FRAME_NUMBER),
+                    properties.getLong(
+                            NConstants.LOOKAHEAD_MICROTIME))
+            .setBranchLookahead(
+                    properties.getInteger(
+                            NConstants.LOOKAHEAD_BRANCH_FRAME_NUMBER),
+                    properties.getLong(
+                            NConstants.WHEEL_ENABLE_MAX_MICROTIME_PERIOD))
+            .setLookaheadByteLimit(properties
+                    .getLong(NConstants.LOOKAHEAD_BYTE_LIMIT))
+            .setMediaRole(NodeInformation.getMediaRole(properties,
+                    selfInformation.getLocation()))
+            .setFrameCache(
+                    properties.getString(NConstants.FRAME_CACHE_DIR),
+                    selfInformation.getLocation())
+            .setFrameDropMicrotime(properties
+                    .getLong(NConstants.FRAME_DROP_MICROTIME))
+            .setPacketBufferSize(properties
+                    .getLong(NConstants.PACKET_BUFFER_SIZE))
+            .setClockSpinMicrotime(properties
+                    .getLong(NConstants.CLOCK_SPIN_MICROTIME))
+            .setAvSync(properties
+                    .getBoolean(NConstants.AV_SYNC_ENABLE))
+            .setSpeakerBufferMicrotime(properties
+                    .getLong(NConstants.SPEAKER_BUFFER_MICROTIME))
+            .setAudioFormat(Speaker.getOutputFormat(properties))
+            .setClusterClock(ClockUtil.createClock(closer,
+                    properties, selfInformation));
+  }
+
   @Override
   public final Map<RequestUtil.RequestType, RequestFunction> getFunctions() {
     return functions;
@@ -0,0 +1,103 @@
+package codes.chia7712.nmmst.media;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the lookup of {@link KeyframeIndex}. The index is loaded from a saved
+ * index file, so no movie is decoded.
+ */
+public class KeyframeIndexTest {
+
+  /**
+   * The magic of index file.
+   */
+  private static final int MAGIC = 0x4b464931;
+  /**
+   * The folder of movie and index files.
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Finds the keyframes before, on, between and after the keyframes.
+   *
+   * @throws IOException If failed to write index
+   */
+  @Test
+  public void testFloor() throws IOException {
+    KeyframeIndex index = create(new long[]{1000, 2000, 4000});
+    assertEquals(3, index.size());
+    assertEquals(1000, index.floorMicrotime(0));
+    assertEquals(1000, index.floorMicrotime(999));
+    assertEquals(1000, index.floorMicrotime(1000));
+    assertEquals(1000, index.floorMicrotime(1999));
+    assertEquals(2000, index.floorMicrotime(2000));
+    assertEquals(2000, index.floorMicrotime(3999));
+    assertEquals(4000, index.floorMicrotime(4000));
+    assertEquals(4000, index.floorMicrotime(Long.MAX_VALUE));
+    assertEquals(10, index.floorTimestamp(-1));
+    assertEquals(20, index.floorTimestamp(2001));
+    assertEquals(40, index.floorTimestamp(4000));
+  }
+
+  /**
+   * The single keyframe is the floor of all microtimes.
+   *
+   * @throws IOException If failed to write index
+   */
+  @Test
+  public void testSingleKeyframe() throws IOException {
+    KeyframeIndex index = create(new long[]{0});
+    assertEquals(0, index.floorMicrotime(-1));
+    assertEquals(0, index.floorMicrotime(0));
+    assertEquals(0, index.floorMicrotime(1000));
+  }
+
+  /**
+   * The empty index finds nothing but zero.
+   *
+   * @throws IOException If failed to write index
+   */
+  @Test
+  public void testEmpty() throws IOException {
+    KeyframeIndex index = create(new long[0]);
+    assertEquals(0, index.size());
+    assertEquals(0, index.floorMicrotime(0));
+    assertEquals(0, index.floorMicrotime(1000));
+    assertEquals(0, index.floorTimestamp(1000));
+  }
+
+  /**
+   * Creates a movie file and the index of it. The timestamp of keyframe is
+   * the microtime divided by 100.
+   *
+   * @param microtimes The sorted microtimes of keyframes
+   * @return The index loaded from the index file
+   * @throws IOException If failed to write index
+   */
+  private KeyframeIndex create(final long[] microtimes) throws IOException {
+    File movie = folder.newFile("movie.mp4");
+    try (FileOutputStream output = new FileOutputStream(movie)) {
+      output.write(new byte[128]);
+    }
+    try (DataOutputStream output = new DataOutputStream(
+            new FileOutputStream(KeyframeIndex.getIndexFile(movie)))) {
+      output.writeInt(MAGIC);
+      output.writeLong(movie.length());
+      output.writeLong(movie.lastModified());
+      output.writeInt(microtimes.length);
+      for (long microtime : microtimes) {
+        output.writeLong(microtime / 100);
+        output.writeLong(microtime);
+      }
+    }
+    return KeyframeIndex.of(movie);
+  }
+}
@@ -0,0 +1,167 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.OptionalLong;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Sleeper} by a manual clock. The frames are never early
+ * when they are slept, so no test really sleeps.
+ */
+public class SleeperTest {
+
+  /**
+   * The microtime between frames.
+   */
+  private static final long INTERVAL = 40 * 1000;
+
+  /**
+   * The first frame starts the clock, and the following frames are due by
+   * their timestamps.
+   */
+  @Test
+  public void testDelay() {
+    ManualClock clock = new ManualClock();
+    Sleeper sleeper = new Sleeper(0, 0, clock);
+    assertFalse(sleeper.isStarted());
+    assertEquals(0, sleeper.getDelay(0));
+    clock.advance(10 * 1000);
+    assertEquals(INTERVAL - 10 * 1000, sleeper.getDelay(INTERVAL));
+    assertEquals(-10 * 1000, sleeper.getDelay(0));
+  }
+
+  /**
+   * The tolerance makes the frames due earlier.
+   */
+  @Test
+  public void testTolerance() {
+    ManualClock clock = new ManualClock();
+    Sleeper sleeper = new Sleeper(1000, 0, clock);
+    assertEquals(-1000, sleeper.getDelay(0));
+    assertEquals(INTERVAL - 1000, sleeper.getDelay(INTERVAL));
+  }
+
+  /**
+   * The lateness of frames is recorded in the histogram.
+   *
+   * @throws InterruptedException If interrupted while sleeping
+   */
+  @Test
+  public void testHistogram() throws InterruptedException {
+    ManualClock clock = new ManualClock();
+    Sleeper sleeper = new Sleeper(0, 0, clock);
+    assertEquals(0, sleeper.sleepByTimeStamp(0));
+    clock.advance(INTERVAL + 4000);
+    assertEquals(-4000, sleeper.sleepByTimeStamp(INTERVAL));
+    clock.advance(INTERVAL + 1000 * 1000);
+    sleeper.sleepByTimeStamp(INTERVAL * 2);
+    long[] expected = new long[Sleeper.getLatenessBounds().length + 1];
+    expected[0] = 1;
+    expected[4] = 1;
+    expected[expected.length - 1] = 1;
+    assertArrayEquals(expected, sleeper.getLatenessHistogram());
+  }
+
+  /**
+   * The next stream is due one frame interval after the last frame if it
+   * isn't much late, otherwise the clock is restarted.
+   *
+   * @throws InterruptedException If interrupted while sleeping
+   */
+  @Test
+  public void testContinueStream() throws InterruptedException {
+    ManualClock clock = new ManualClock();
+    Sleeper sleeper = new Sleeper(0, 0, clock);
+    sleeper.sleepByTimeStamp(0);
+    clock.advance(INTERVAL);
+    sleeper.sleepByTimeStamp(INTERVAL);
+    sleeper.continueStream();
+    assertFalse(sleeper.isStarted());
+    clock.advance(5000);
+    assertEquals(INTERVAL - 5000, sleeper.getDelay(500));
+    assertEquals(0, sleeper.getResyncCount());
+
+    sleeper.continueStream();
+    clock.advance(2 * 1000 * 1000);
+    assertEquals(0, sleeper.getDelay(500));
+    assertEquals(1, sleeper.getResyncCount());
+  }
+
+  /**
+   * The armed time overrides the continued clock, and the start error is
+   * polled once.
+   *
+   * @throws InterruptedException If interrupted while sleeping
+   */
+  @Test
+  public void testArm() throws InterruptedException {
+    ManualClock clock = new ManualClock();
+    Sleeper sleeper = new Sleeper(0, 0, clock);
+    sleeper.arm(100 * 1000);
+    assertEquals(OptionalLong.empty(), sleeper.pollStartError());
+    clock.advance(100 * 1000 + 300);
+    assertEquals(-300, sleeper.sleepByTimeStamp(0));
+    assertEquals(OptionalLong.of(300), sleeper.pollStartError());
+    assertEquals(OptionalLong.empty(), sleeper.pollStartError());
+  }
+
+  /**
+   * The shift moves the clock of current stream, and the origin is the time
+   * of timestamp zero.
+   */
+  @Test
+  public void testShiftAndOrigin() {
+    ManualClock clock = new ManualClock();
+    Sleeper sleeper = new Sleeper(0, 0, clock);
+    assertEquals(0, sleeper.getOriginMicrotime());
+    clock.advance(10 * 1000);
+    assertEquals(0, sleeper.getDelay(5000));
+    assertEquals(5000, sleeper.getOriginMicrotime());
+    sleeper.shift(2000);
+    assertEquals(2000, sleeper.getDelay(5000));
+    assertEquals(7000, sleeper.getOriginMicrotime());
+    sleeper.reset();
+    assertFalse(sleeper.isStarted());
+    assertEquals(0, sleeper.getOriginMicrotime());
+  }
+
+  /**
+   * A clock which is moved by the test only.
+   */
+  private static final class ManualClock implements ClusterClock {
+
+    /**
+     * The current time in nanoseconds.
+     */
+    private long nanos = 0;
+
+    /**
+     * @param microtime The microtime to move forward
+     */
+    void advance(final long microtime) {
+      nanos += microtime * 1000;
+    }
+
+    @Override
+    public long nanoTime() {
+      return nanos;
+    }
+
+    @Override
+    public long getOffsetMicrotime() {
+      return 0;
+    }
+
+    @Override
+    public long getRttMicrotime() {
+      return 0;
+    }
+
+    @Override
+    public boolean isSynced() {
+      return true;
+    }
+  }
+}
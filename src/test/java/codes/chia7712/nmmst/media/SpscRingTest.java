@@ -0,0 +1,196 @@
+package codes.chia7712.nmmst.media;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SpscRing}.
+ */
+public class SpscRingTest {
+
+  /**
+   * The number of elements passed between producer and consumer.
+   */
+  private static final int ELEMENT_COUNT = 100 * 1000;
+  /**
+   * The max millis to wait for the other thread.
+   */
+  private static final long TIMEOUT_MILLIS = 10 * 1000;
+
+  /**
+   * The capacity is rounded up to the power of two, and it has two slots at
+   * least.
+   */
+  @Test
+  public void testCapacity() {
+    assertEquals(2, new SpscRing<>(0).capacity());
+    assertEquals(2, new SpscRing<>(1).capacity());
+    assertEquals(2, new SpscRing<>(2).capacity());
+    assertEquals(4, new SpscRing<>(3).capacity());
+    assertEquals(8, new SpscRing<>(8).capacity());
+    assertEquals(16, new SpscRing<>(9).capacity());
+  }
+
+  /**
+   * The elements keep the order after the indexes wrap around the slots.
+   */
+  @Test
+  public void testWrapAround() {
+    SpscRing<Integer> ring = new SpscRing<>(4);
+    int next = 0;
+    int expected = 0;
+    for (int round = 0; round != 10; ++round) {
+      while (ring.offer(next)) {
+        ++next;
+      }
+      assertEquals(ring.capacity(), ring.size());
+      assertFalse(ring.offer(-1));
+      for (int i = 0; i != round % ring.capacity() + 1; ++i) {
+        assertEquals(expected++, (int) ring.poll());
+      }
+    }
+    Integer element;
+    while ((element = ring.poll()) != null) {
+      assertEquals(expected++, (int) element);
+    }
+    assertEquals(next, expected);
+    assertEquals(0, ring.size());
+    assertNull(ring.poll());
+  }
+
+  /**
+   * The consumer parked on a empty ring is woken up by the producer.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+  @Test
+  public void testTakeWakeup() throws InterruptedException {
+    SpscRing<String> ring = new SpscRing<>(2);
+    AtomicReference<String> taken = new AtomicReference<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        taken.set(ring.take());
+      } catch (InterruptedException e) {
+        taken.set("interrupted");
+      }
+    });
+    consumer.start();
+    waitParked(consumer);
+    assertTrue(ring.offer("element"));
+    consumer.join(TIMEOUT_MILLIS);
+    assertFalse(consumer.isAlive());
+    assertEquals("element", taken.get());
+  }
+
+  /**
+   * The producer parked on a full ring is woken up by the consumer.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+  @Test
+  public void testPutWakeup() throws InterruptedException {
+    SpscRing<Integer> ring = new SpscRing<>(2);
+    assertTrue(ring.offer(0));
+    assertTrue(ring.offer(1));
+    Thread producer = new Thread(() -> {
+      try {
+        ring.put(2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    producer.start();
+    waitParked(producer);
+    assertEquals(2, ring.size());
+    assertEquals(0, (int) ring.poll());
+    producer.join(TIMEOUT_MILLIS);
+    assertFalse(producer.isAlive());
+    assertEquals(1, (int) ring.poll());
+    assertEquals(2, (int) ring.poll());
+  }
+
+  /**
+   * The parked consumer throws the exception if it is interrupted.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+  @Test
+  public void testInterruptTake() throws InterruptedException {
+    SpscRing<String> ring = new SpscRing<>(2);
+    AtomicReference<String> taken = new AtomicReference<>();
+    Thread consumer = new Thread(() -> {
+      try {
+        taken.set(ring.take());
+      } catch (InterruptedException e) {
+        taken.set("interrupted");
+      }
+    });
+    consumer.start();
+    waitParked(consumer);
+    consumer.interrupt();
+    consumer.join(TIMEOUT_MILLIS);
+    assertFalse(consumer.isAlive());
+    assertEquals("interrupted", taken.get());
+  }
+
+  /**
+   * One producer and one consumer pass many elements through a small ring,
+   * so both of them wait for the other side many times.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+  @Test
+  public void testProducerAndConsumer() throws InterruptedException {
+    SpscRing<Integer> ring = new SpscRing<>(4);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread producer = new Thread(() -> {
+      try {
+        for (int i = 0; i != ELEMENT_COUNT; ++i) {
+          ring.put(i);
+        }
+      } catch (Throwable e) {
+        error.compareAndSet(null, e);
+      }
+    });
+    Thread consumer = new Thread(() -> {
+      try {
+        for (int i = 0; i != ELEMENT_COUNT; ++i) {
+          int element = ring.take();
+          if (element != i) {
+            throw new AssertionError("expected:" + i + ", actual:" + element);
+          }
+        }
+      } catch (Throwable e) {
+        error.compareAndSet(null, e);
+      }
+    });
+    producer.start();
+    consumer.start();
+    producer.join(TIMEOUT_MILLIS);
+    consumer.join(TIMEOUT_MILLIS);
+    assertFalse(producer.isAlive());
+    assertFalse(consumer.isAlive());
+    assertNull(error.get());
+    assertEquals(0, ring.size());
+  }
+
+  /**
+   * Waits until the thread is parked.
+   *
+   * @param thread The thread to wait
+   * @throws InterruptedException If interrupted while waiting
+   */
+  private static void waitParked(final Thread thread)
+          throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (thread.getState() != Thread.State.WAITING) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+  }
+}
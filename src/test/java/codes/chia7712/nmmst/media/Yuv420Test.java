@@ -0,0 +1,119 @@
+package codes.chia7712.nmmst.media;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Yuv420} against the BT.601 colors.
+ */
+public class Yuv420Test {
+
+  /**
+   * The YUV of black, red, green, blue and white in BT.601 video range.
+   */
+  private static final int[][] YUV = {
+    {16, 128, 128},
+    {81, 90, 240},
+    {145, 54, 34},
+    {41, 240, 110},
+    {235, 128, 128}
+  };
+  /**
+   * The BGR of {@link #YUV}.
+   */
+  private static final int[][] BGR = {
+    {0, 0, 0},
+    {0, 0, 255},
+    {1, 255, 0},
+    {255, 0, 0},
+    {255, 255, 255}
+  };
+
+  /**
+   * The chroma planes are rounded up for the odd width and height.
+   */
+  @Test
+  public void testSize() {
+    assertEquals(4 * 2 + 2 * 2 * 1, Yuv420.size(4, 2));
+    assertEquals(3 * 3 + 2 * 2 * 2, Yuv420.size(3, 3));
+    assertEquals(1 + 2, Yuv420.size(1, 1));
+    assertEquals(2, Yuv420.chromaWidth(3));
+    assertEquals(2, Yuv420.chromaWidth(4));
+    assertEquals(3, Yuv420.chromaHeight(5));
+  }
+
+  /**
+   * Converts the single color images.
+   */
+  @Test
+  public void testKnownColors() {
+    for (int i = 0; i != YUV.length; ++i) {
+      byte[] planes = new byte[Yuv420.size(2, 2)];
+      for (int y = 0; y != 4; ++y) {
+        planes[y] = (byte) YUV[i][0];
+      }
+      planes[4] = (byte) YUV[i][1];
+      planes[5] = (byte) YUV[i][2];
+      byte[] bgr = new byte[2 * 2 * 3];
+      Yuv420.toBgr(planes, 2, 2, bgr);
+      for (int pixel = 0; pixel != 4; ++pixel) {
+        assertPixel(BGR[i], bgr, pixel);
+      }
+    }
+  }
+
+  /**
+   * Converts a 3x3 image whose 2x2 blocks have different colors, so the last
+   * column and row share the chroma of the rounded up block.
+   */
+  @Test
+  public void testOddSize() {
+    final int width = 3;
+    final int height = 3;
+    final int chromaWidth = Yuv420.chromaWidth(width);
+    final int uOffset = width * height;
+    final int vOffset = uOffset + chromaWidth * Yuv420.chromaHeight(height);
+    byte[] planes = new byte[Yuv420.size(width, height)];
+    for (int y = 0; y != height; ++y) {
+      for (int x = 0; x != width; ++x) {
+        planes[y * width + x] = (byte) YUV[block(x, y, chromaWidth)][0];
+      }
+    }
+    for (int block = 0; block != 4; ++block) {
+      planes[uOffset + block] = (byte) YUV[block][1];
+      planes[vOffset + block] = (byte) YUV[block][2];
+    }
+    byte[] bgr = new byte[width * height * 3];
+    Yuv420.toBgr(planes, width, height, bgr);
+    for (int y = 0; y != height; ++y) {
+      for (int x = 0; x != width; ++x) {
+        assertPixel(BGR[block(x, y, chromaWidth)], bgr, y * width + x);
+      }
+    }
+  }
+
+  /**
+   * @param x The column of pixel
+   * @param y The row of pixel
+   * @param chromaWidth The width of chroma plane
+   * @return The index of chroma block which the pixel belongs to
+   */
+  private static int block(final int x, final int y, final int chromaWidth) {
+    return (y / 2) * chromaWidth + x / 2;
+  }
+
+  /**
+   * @param expected The expected BGR
+   * @param bgr The converted pixels
+   * @param pixel The index of pixel to check
+   */
+  private static void assertPixel(final int[] expected, final byte[] bgr,
+          final int pixel) {
+    int[] actual = new int[3];
+    for (int i = 0; i != 3; ++i) {
+      actual[i] = bgr[pixel * 3 + i] & 0xff;
+    }
+    assertArrayEquals("pixel:" + pixel, expected, actual);
+  }
+}